@@ -0,0 +1,154 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The compression function computed with SIMD instructions through {@code jdk.incubator.vector}.
+ * Each BlaMka round mixes four independent columns and then four independent diagonals
+ * of a 4x4 matrix of words, so a round runs as four vectors of four words, the diagonals being
+ * a rotation of the rows. The rounds over the columns of the block run the same way on its transpose.
+ * Only ever loaded through {@link Argon2BlockFunction#loadVector()}.
+ */
+final class VectorBlockFunction implements Argon2BlockFunction {
+
+    private static final VectorSpecies<Long> ROUND = LongVector.SPECIES_256;
+    private static final VectorSpecies<Long> XOR = LongVector.SPECIES_PREFERRED;
+
+    private static final LongVector LOW_WORD = LongVector.broadcast(ROUND, 0xFFFFFFFFL);
+
+    private static final VectorShuffle<Long> ROTATE_1 = VectorShuffle.fromValues(ROUND, 1, 2, 3, 0);
+    private static final VectorShuffle<Long> ROTATE_2 = VectorShuffle.fromValues(ROUND, 2, 3, 0, 1);
+    private static final VectorShuffle<Long> ROTATE_3 = VectorShuffle.fromValues(ROUND, 3, 0, 1, 2);
+
+    VectorBlockFunction() {
+        if (XOR.vectorBitSize() < ROUND.vectorBitSize()) {
+            // Without 256 bit registers every vector operation would be emulated, slower than plain longs.
+            throw new UnsupportedOperationException("256 bit vectors are not supported by this CPU.");
+        }
+    }
+
+    @Override
+    public void fillBlock(final long[] memory, final int previous, final int reference, final int next,
+                          final boolean withXor, final long[] r, final long[] z) {
+        final int step = XOR.length();
+        for (int i = 0; i < BLOCK_WORDS; i += step) {
+            final LongVector block = LongVector.fromArray(XOR, memory, previous + i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(XOR, memory, reference + i));
+            block.intoArray(r, i);
+            if (withXor) {
+                block.lanewise(VectorOperators.XOR, LongVector.fromArray(XOR, memory, next + i)).intoArray(z, i);
+            } else {
+                block.intoArray(z, i);
+            }
+        }
+
+        permute(r);
+
+        for (int i = 0; i < BLOCK_WORDS; i += step) {
+            LongVector.fromArray(XOR, z, i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(XOR, r, i))
+                    .intoArray(memory, next + i);
+        }
+    }
+
+    @Override
+    public void compress(final long[] input, final long[] output, final long[] scratch) {
+        System.arraycopy(input, 0, scratch, 0, BLOCK_WORDS);
+        permute(scratch);
+        final int step = XOR.length();
+        for (int i = 0; i < BLOCK_WORDS; i += step) {
+            LongVector.fromArray(XOR, input, i)
+                    .lanewise(VectorOperators.XOR, LongVector.fromArray(XOR, scratch, i))
+                    .intoArray(output, i);
+        }
+    }
+
+    private static void permute(final long[] v) {
+        rowRounds(v);
+        transposePairs(v);
+        rowRounds(v);
+        transposePairs(v);
+    }
+
+    /**
+     * The eight rounds over the rows of the block, each row being sixteen consecutive words.
+     */
+    private static void rowRounds(final long[] v) {
+        for (int i = 0; i < BLOCK_WORDS; i += 16) {
+            LongVector a = LongVector.fromArray(ROUND, v, i);
+            LongVector b = LongVector.fromArray(ROUND, v, i + 4);
+            LongVector c = LongVector.fromArray(ROUND, v, i + 8);
+            LongVector d = LongVector.fromArray(ROUND, v, i + 12);
+
+            // The mixes of the four columns of the round, then of the four diagonals,
+            // which are lined up as columns by rotating the rows.
+            for (int step = 0; step < 2; step++) {
+                LongVector product = a.and(LOW_WORD).mul(b.and(LOW_WORD));
+                a = a.add(b).add(product).add(product);
+                d = d.lanewise(VectorOperators.XOR, a).lanewise(VectorOperators.ROR, 32);
+                product = c.and(LOW_WORD).mul(d.and(LOW_WORD));
+                c = c.add(d).add(product).add(product);
+                b = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.ROR, 24);
+                product = a.and(LOW_WORD).mul(b.and(LOW_WORD));
+                a = a.add(b).add(product).add(product);
+                d = d.lanewise(VectorOperators.XOR, a).lanewise(VectorOperators.ROR, 16);
+                product = c.and(LOW_WORD).mul(d.and(LOW_WORD));
+                c = c.add(d).add(product).add(product);
+                b = b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.ROR, 63);
+
+                if (step == 0) {
+                    b = b.rearrange(ROTATE_1);
+                    c = c.rearrange(ROTATE_2);
+                    d = d.rearrange(ROTATE_3);
+                }
+            }
+
+            a.intoArray(v, i);
+            b.rearrange(ROTATE_3).intoArray(v, i + 4);
+            c.rearrange(ROTATE_2).intoArray(v, i + 8);
+            d.rearrange(ROTATE_1).intoArray(v, i + 12);
+        }
+    }
+
+    /**
+     * Transpose the block seen as an 8x8 matrix of word pairs, in place.
+     * A round over the columns takes the same pair out of every row, in the same order
+     * a round over the rows takes the pairs of one row, so after this the column rounds
+     * are row rounds reading consecutive words.
+     */
+    private static void transposePairs(final long[] v) {
+        for (int row = 0; row < 8; row++) {
+            for (int column = row + 1; column < 8; column++) {
+                final int upper = 16 * row + 2 * column;
+                final int lower = 16 * column + 2 * row;
+                final long first = v[upper];
+                final long second = v[upper + 1];
+                v[upper] = v[lower];
+                v[upper + 1] = v[lower + 1];
+                v[lower] = first;
+                v[lower + 1] = second;
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@ import top.cmarco.lightlogin.configuration.ConfigurationFiles;
 import top.cmarco.lightlogin.configuration.LightConfiguration;
 import top.cmarco.lightlogin.data.*;
 import top.cmarco.lightlogin.database.*;
+import top.cmarco.lightlogin.encrypt.HashingManager;
 import top.cmarco.lightlogin.library.LibraryManager;
 import top.cmarco.lightlogin.listeners.ListenerManager;
 import top.cmarco.lightlogin.log.AuthLogs;
@@ -61,6 +62,7 @@ public final class LightLoginPlugin extends JavaPlugin {
     private VoidLoginManager voidLoginManager = null;
     private StartupLoginsManager startupLoginsManager = null;
     private MailManager mailManager = null;
+    private HashingManager hashingManager = null;
     private LibraryManager libraryManager = null;
     private CommandManager commandManager = null;
     private ListenerManager listenerManager = null;
@@ -80,6 +82,7 @@ public final class LightLoginPlugin extends JavaPlugin {
         this.loadLibraries();
         this.setupConfig();
         this.setupDatabase();
+        this.setupHashingManager();
         this.loadLoginWorld(); // 1
         this.setVoidLoginManager(); // 2
         this.setupAuthenticationManager();
@@ -99,6 +102,14 @@ public final class LightLoginPlugin extends JavaPlugin {
      */
     @Override
     public void onDisable() {
+        if (this.hashingManager != null) {
+            this.hashingManager.shutdown();
+        }
+
+        if (this.mailManager != null) {
+            this.mailManager.shutdown();
+        }
+
         if (this.database != null) {
             this.database.close();
         }
@@ -129,6 +140,11 @@ public final class LightLoginPlugin extends JavaPlugin {
         this.libraryManager.loadLibraries();
     }
 
+    private void setupHashingManager() {
+        this.hashingManager = new HashingManager(this);
+        this.hashingManager.start();
+    }
+
     private void setupMailManager() {
         this.mailManager = new MailManager(this);
 
@@ -284,6 +300,7 @@ public final class LightLoginPlugin extends JavaPlugin {
             case SQLITE: {this.database = new SQLiteDatabase(this); break;}
             case MYSQL: {this.database = new MySqlDatabase(this); break;}
             case POSTGRESQL: {this.database = new PostgreSQLDatabase(this); break;}
+            case EMBEDDED: {this.database = new EmbeddedDatabase(this); break;}
             default: {this.database = null; break;}
         }
 
@@ -293,6 +310,24 @@ public final class LightLoginPlugin extends JavaPlugin {
         this.database.connect();
         this.database.createTables();
 
+        if (this.lightConfiguration.isWriteBehindEnabled()) {
+            final WriteBehindPluginDatabase writeBehind = new WriteBehindPluginDatabase(this, this.database);
+            writeBehind.start();
+            this.database = writeBehind;
+        }
+
+        if (this.lightConfiguration.isSnapshotEnabled()) {
+            final SnapshotPluginDatabase snapshot = new SnapshotPluginDatabase(this, this.database);
+            snapshot.start();
+            this.database = snapshot;
+        }
+
+        // A networked database may be written by other servers, which the cache would not notice.
+        final boolean localDatabase = databaseType == DatabaseType.SQLITE || databaseType == DatabaseType.EMBEDDED;
+        if (this.lightConfiguration.isDatabaseCacheEnabled() && (localDatabase || this.lightConfiguration.isDatabaseCacheNetworked())) {
+            this.database = new CachingPluginDatabase(this, this.database);
+        }
+
         this.sendConsoleColoured(StartupLogo.getLoadingString(25) + databaseType.name() + StartupLogo.getLoadingString(26));
     }
 
@@ -322,6 +357,14 @@ public final class LightLoginPlugin extends JavaPlugin {
         return disabled;
     }
 
+    public HashingManager getHashingManager() {
+        return hashingManager;
+    }
+
+    public ListenerManager getListenerManager() {
+        return listenerManager;
+    }
+
     public AutoKickManager getAutoKickManager() {
         return autoKickManager;
     }
@@ -0,0 +1,135 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.command.base;
+
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.data.BasicAuthenticationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static top.cmarco.lightlogin.command.LightLoginCommand.colorMessage;
+
+/**
+ * Measures the authentication state operations for a given amount of online players.
+ * The lookup is what every protected event of an unauthenticated player goes through, the
+ * transitions are what joins, logins and logouts do. A separate manager is used, so the
+ * live players are not affected. The three copy-on-write sets used before the state map
+ * are measured alongside for comparison.
+ */
+public final class AuthenticationBenchmark {
+
+    private static final int LOOKUPS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    private final LightLoginPlugin plugin;
+    private final CommandSender sender;
+    private final int players;
+
+    // Keeps the lookup results alive, so that they are not optimised away.
+    private int matches = 0;
+
+    public AuthenticationBenchmark(@NotNull final LightLoginPlugin plugin, @NotNull final CommandSender sender, final int players) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.players = players;
+    }
+
+    public void start() {
+        this.sender.sendMessage(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Benchmarking authentication state with &e" + this.players + " &fplayers..."));
+
+        this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            final UUID[] uuids = new UUID[this.players];
+            for (int i = 0; i < uuids.length; i++) {
+                uuids[i] = UUID.randomUUID();
+            }
+
+            final BasicAuthenticationManager manager = new BasicAuthenticationManager(this.plugin);
+            final Set<UUID> authenticated = new CopyOnWriteArraySet<>();
+            final Set<UUID> unregistered = new CopyOnWriteArraySet<>();
+            final Set<UUID> unloginned = new CopyOnWriteArraySet<>();
+
+            // A third of the players in every state.
+            for (int i = 0; i < uuids.length; i++) {
+                switch (i % 3) {
+                    case 0: {manager.authenticate(uuids[i]); authenticated.add(uuids[i]); break;}
+                    case 1: {manager.addUnregistered(uuids[i]); unregistered.add(uuids[i]); break;}
+                    default: {manager.addUnloginned(uuids[i]); unloginned.add(uuids[i]); break;}
+                }
+            }
+
+            double mapLookup = Double.MAX_VALUE, setLookup = Double.MAX_VALUE;
+            double mapTransition = Double.MAX_VALUE, setTransition = Double.MAX_VALUE;
+            // The first rounds also warm up the code, only the best one counts.
+            for (int round = 0; round < ROUNDS; round++) {
+                mapLookup = Math.min(mapLookup, this.measureLookups(uuids, manager::isAuthenticated));
+                setLookup = Math.min(setLookup, this.measureLookups(uuids, authenticated::contains));
+                mapTransition = Math.min(mapTransition, measureTransitions(uuids, uuid -> {
+                    manager.addUnloginned(uuid);
+                    manager.authenticate(uuid);
+                }));
+                setTransition = Math.min(setTransition, measureTransitions(uuids, uuid -> {
+                    // What the previous manager did for the same two calls.
+                    unloginned.add(uuid);
+                    unregistered.remove(uuid);
+                    authenticated.remove(uuid);
+                    authenticated.add(uuid);
+                    unloginned.remove(uuid);
+                    unregistered.remove(uuid);
+                }));
+            }
+
+            final List<String> lines = new ArrayList<>();
+            lines.add(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Authentication Benchmark (" + this.players + " players):"));
+            lines.add(colorMessage(String.format(Locale.ROOT, "  ● &eState map&7: &e%.1f &7ns per lookup, &e%.1f &7ns per login", mapLookup, mapTransition)));
+            lines.add(colorMessage(String.format(Locale.ROOT, "  ● &eCopy-on-write sets&7: &e%.1f &7ns per lookup, &e%.1f &7ns per login", setLookup, setTransition)));
+
+            this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.sender.sendMessage(lines.toArray(new String[0])));
+        });
+    }
+
+    private double measureLookups(@NotNull final UUID[] uuids, @NotNull final Predicate<UUID> lookup) {
+        int found = 0;
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (lookup.test(uuids[i % uuids.length])) {
+                found++;
+            }
+        }
+        final long elapsed = System.nanoTime() - startTime;
+        this.matches += found;
+        return elapsed / (double) LOOKUPS;
+    }
+
+    private static double measureTransitions(@NotNull final UUID[] uuids, @NotNull final Consumer<UUID> transition) {
+        final long startTime = System.nanoTime();
+        for (final UUID uuid : uuids) {
+            transition.accept(uuid);
+        }
+        return (System.nanoTime() - startTime) / (double) uuids.length;
+    }
+}
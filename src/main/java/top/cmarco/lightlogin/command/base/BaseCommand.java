@@ -22,11 +22,29 @@ import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import top.cmarco.lightlogin.LightLoginPlugin;
 import top.cmarco.lightlogin.command.LightLoginCommand;
+import top.cmarco.lightlogin.database.AbstractPluginDatabase;
+import top.cmarco.lightlogin.database.CachingPluginDatabase;
+import top.cmarco.lightlogin.database.DatabaseExecutor;
+import top.cmarco.lightlogin.database.EmbeddedDatabase;
+import top.cmarco.lightlogin.database.ForwardingPluginDatabase;
+import top.cmarco.lightlogin.database.HikariPluginDatabase;
+import top.cmarco.lightlogin.database.PluginDatabase;
+import top.cmarco.lightlogin.database.SQLiteDatabase;
+import top.cmarco.lightlogin.database.SnapshotPluginDatabase;
+import top.cmarco.lightlogin.database.WriteBehindPluginDatabase;
+import top.cmarco.lightlogin.encrypt.Argon2Calibration;
+import top.cmarco.lightlogin.encrypt.Argon2Cost;
+import top.cmarco.lightlogin.encrypt.HashingManager;
+import top.cmarco.lightlogin.encrypt.worker.WorkerProcessHasher;
+import top.cmarco.lightlogin.listeners.LoginAuthenticatorListener;
 
 import java.util.Locale;
 import java.util.stream.Collectors;
 
 public final class BaseCommand extends LightLoginCommand {
+
+    private static final int MAX_BENCHMARK_REGISTRATIONS = 1000;
+
     public BaseCommand(@NotNull LightLoginPlugin plugin) {
         super(plugin, "lightlogin.admin.info", "lightlogin", true);
     }
@@ -54,6 +72,116 @@ public final class BaseCommand extends LightLoginCommand {
         sender.sendMessage(englishMessages);
     }
 
+    public static void sendHashingMetrics(@NotNull final CommandSender sender, @NotNull final HashingManager hashingManager) {
+        final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Hashing Metrics:");
+        final String s2 = colorMessage("  ● &7Workers: &e" + hashingManager.getWorkers()
+                + " &7Active: &e" + hashingManager.getActiveHashes());
+        final String s3 = colorMessage("  ● &7Queue: &e" + hashingManager.getQueueDepth() + "&7/&e" + hashingManager.getQueueSize());
+        final String s4 = colorMessage("  ● &7Memory: &e" + (hashingManager.getMemoryInUseKb() / 1024)
+                + "&7/&e" + (hashingManager.getMemoryBudgetKb() / 1024) + " &7MB");
+        final String s5 = colorMessage("  ● &7Hashes: &e" + hashingManager.getCompletedHashes()
+                + " &7completed, &e" + hashingManager.getSubmittedHashes()
+                + " &7submitted, &c" + hashingManager.getRejectedHashes() + " &7rejected");
+        final String s6 = colorMessage(String.format(Locale.ROOT, "  ● &7Latency: &e%.1f &7ms avg, &e%.1f &7ms max, &e%.1f &7ms avg wait",
+                hashingManager.getAverageHashMillis(), hashingManager.getMaxHashMillis(), hashingManager.getAverageWaitMillis()));
+
+        final WorkerProcessHasher workerProcess = hashingManager.getWorkerProcess();
+        if (workerProcess == null) {
+            sender.sendMessage(new String[]{s1, s2, s3, s4, s5, s6});
+            return;
+        }
+
+        final String s7 = colorMessage("  ● &7Worker process: " + (workerProcess.isRunning() ? "&arunning &7(pid &e" + workerProcess.getPid() + "&7)" : "&cdown")
+                + "&7, &e" + workerProcess.getRestarts() + " &7restarts, &e" + workerProcess.getFallbackHashes() + " &7hashed in the server");
+        sender.sendMessage(new String[]{s1, s2, s3, s4, s5, s6, s7});
+    }
+
+    public static void sendJoinMetrics(@NotNull final CommandSender sender, @NotNull final LoginAuthenticatorListener listener) {
+        final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Join Lookups:");
+        final String s2 = colorMessage("  ● &7Prefetched: &e" + listener.getPrefetchedJoins() + " &7Not prefetched: &e" + listener.getUnprefetchedJoins());
+        final String s3 = colorMessage(String.format(Locale.ROOT, "  ● &7Join to account: &e%.2f &7ms avg, &e%.2f &7ms max",
+                listener.getAverageLookupWaitMillis(), listener.getMaxLookupWaitMillis()));
+
+        sender.sendMessage(new String[]{s1, s2, s3});
+    }
+
+    public static void sendDatabaseMetrics(@NotNull final CommandSender sender, @NotNull final PluginDatabase database) {
+        final AbstractPluginDatabase backend = ForwardingPluginDatabase.unwrap(database, AbstractPluginDatabase.class);
+        if (backend != null) {
+            final DatabaseExecutor executor = backend.getExecutor();
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Database Threads:");
+            final String s2 = colorMessage("  ● &7" + (executor.isVirtual() ? "Concurrent queries" : "Threads") + ": &e" + executor.getThreads()
+                    + (executor.isVirtual() ? " &7(virtual threads)" : "") + " &7Active: &e" + executor.getActiveTasks()
+                    + " &7Queued: &e" + executor.getQueueDepth());
+            final String s3 = colorMessage("  ● &7Tasks: &e" + executor.getCompletedTasks() + "&7/&e" + executor.getSubmittedTasks() + " &7completed");
+            final String s4 = colorMessage(String.format(Locale.ROOT, "  ● &7Queue wait: &e%.2f &7ms avg, &e%.2f &7ms max",
+                    executor.getAverageWaitMillis(), executor.getMaxWaitMillis()));
+            sender.sendMessage(new String[]{s1, s2, s3, s4});
+        }
+
+        final HikariPluginDatabase pool = ForwardingPluginDatabase.unwrap(database, HikariPluginDatabase.class);
+        if (pool != null) {
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Connection Pool:");
+            final String s2 = colorMessage("  ● &7Connections: &e" + pool.getActiveConnections() + " &7active, &e"
+                    + pool.getIdleConnections() + " &7idle, &e" + pool.getMaximumPoolSize() + " &7max");
+            final String s3 = colorMessage("  ● &7Waiting for a connection: &e" + pool.getThreadsAwaitingConnection());
+            sender.sendMessage(new String[]{s1, s2, s3});
+        }
+
+        final SQLiteDatabase sqlite = ForwardingPluginDatabase.unwrap(database, SQLiteDatabase.class);
+        if (sqlite != null) {
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f SQLite:");
+            final String s2 = colorMessage("  ● &7Journal: &e" + (sqlite.isWalEnabled() ? "WAL" : "default") + " &7Read connections: &e"
+                    + sqlite.getOpenReadConnections() + "&7/&e" + sqlite.getMaxReadConnections());
+            final String s3 = colorMessage("  ● &7Writes: &e" + sqlite.getWrites() + " &7in &e" + sqlite.getCommits()
+                    + " &7commits, &e" + sqlite.getWriterQueueDepth() + " &7queued");
+            sender.sendMessage(new String[]{s1, s2, s3});
+        }
+
+        final EmbeddedDatabase embedded = ForwardingPluginDatabase.unwrap(database, EmbeddedDatabase.class);
+        if (embedded != null) {
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Embedded Storage:");
+            final String s2 = colorMessage("  ● &7Accounts: &e" + embedded.getAccounts() + " &7Index: &e" + (embedded.getIndexBytes() >> 10) + " &7KB");
+            final String s3 = colorMessage("  ● &7File: &e" + (embedded.getFileBytes() >> 10) + " &7KB, &e" + (embedded.getLiveBytes() >> 10)
+                    + " &7KB live, &e" + embedded.getCompactions() + " &7compactions");
+            final String s4 = colorMessage("  ● &7Writes: &e" + embedded.getWrites() + " &7in &e" + embedded.getCommits()
+                    + " &7syncs, &e" + embedded.getWriterQueueDepth() + " &7queued");
+            sender.sendMessage(new String[]{s1, s2, s3, s4});
+        }
+
+        final WriteBehindPluginDatabase writeBehind = ForwardingPluginDatabase.unwrap(database, WriteBehindPluginDatabase.class);
+        if (writeBehind != null) {
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Write-Behind Buffer:");
+            final String s2 = colorMessage("  ● &7Pending accounts: &e" + writeBehind.getPendingRows());
+            final String s3 = colorMessage("  ● &7Updates: &e" + writeBehind.getBufferedUpdates() + " &7buffered, &e"
+                    + writeBehind.getFlushedRows() + " &7rows written in &e" + writeBehind.getFlushes() + " &7flushes");
+            sender.sendMessage(new String[]{s1, s2, s3});
+        }
+
+        final SnapshotPluginDatabase snapshot = ForwardingPluginDatabase.unwrap(database, SnapshotPluginDatabase.class);
+        if (snapshot != null) {
+            final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Account Snapshot:");
+            final String s2 = colorMessage("  ● &7Accounts: &e" + snapshot.getAccounts() + " &7(&e" + snapshot.getChangedAccounts()
+                    + " &7changed since, &e" + snapshot.getSnapshotAgeSeconds() + "&7s old)");
+            final String s3 = colorMessage("  ● &7Hits: &e" + snapshot.getHits() + " &7Misses: &e" + snapshot.getMisses()
+                    + " &7Refreshes: &e" + snapshot.getRefreshes());
+            sender.sendMessage(new String[]{s1, s2, s3});
+        }
+
+        final CachingPluginDatabase cache = ForwardingPluginDatabase.unwrap(database, CachingPluginDatabase.class);
+        if (cache == null) {
+            return;
+        }
+
+        final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Account Cache:");
+        final String s2 = colorMessage("  ● &7Entries: &e" + cache.getSize() + "&7/&e" + cache.getMaxEntries());
+        final String s3 = colorMessage(String.format(Locale.ROOT, "  ● &7Hits: &e%d &7Misses: &e%d &7Hit ratio: &e%.1f%%",
+                cache.getHits(), cache.getMisses(), cache.getHitRatio() * 100D));
+        final String s4 = colorMessage("  ● &7Evictions: &e" + cache.getEvictions());
+
+        sender.sendMessage(new String[]{s1, s2, s3, s4});
+    }
+
     @Override
     protected void commandLogic(@NotNull final CommandSender sender, @NotNull final String[] args) {
 
@@ -62,6 +190,30 @@ public final class BaseCommand extends LightLoginCommand {
             return;
         }
 
+        if (args.length == 2 && args[0].toLowerCase(Locale.ROOT).startsWith("benchmark")) {
+            final int amount;
+            try {
+                amount = Integer.parseInt(args[1]);
+            } catch (NumberFormatException exception) {
+                sendColorPrefixMessages(sender, configuration.getIncorrectCommandUsage(), plugin);
+                return;
+            }
+
+            if (amount < 1 || amount > MAX_BENCHMARK_REGISTRATIONS) {
+                sendColorPrefixMessages(sender, configuration.getIncorrectCommandUsage(), plugin);
+                return;
+            }
+
+            switch (args[0].toLowerCase(Locale.ROOT)) {
+                case "benchmark": {new RegisterBenchmark(plugin, sender, amount).start(); break;}
+                case "benchmark-hash": {new HasherBenchmark(plugin, sender, amount).start(); break;}
+                case "benchmark-db": {new DatabaseBenchmark(plugin, sender, amount).start(); break;}
+                case "benchmark-auth": {new AuthenticationBenchmark(plugin, sender, amount).start(); break;}
+                default: {sendColorPrefixMessages(sender, configuration.getIncorrectCommandUsage(), plugin); break;}
+            }
+            return;
+        }
+
         if (args.length != 1) {
             sendColorPrefixMessages(sender, configuration.getIncorrectCommandUsage(), plugin);
             return;
@@ -70,6 +222,22 @@ public final class BaseCommand extends LightLoginCommand {
         if (args[0].toLowerCase(Locale.ROOT).equals("info")) {
             sendColorPrefixMessages(sender, configuration.getPluginInfo().stream().map(s ->
                     s.replaceAll("\\{VERSION}", plugin.getDescription().getVersion())).collect(Collectors.toList()), plugin);
+
+            final HashingManager hashingManager = plugin.getHashingManager();
+            final Argon2Cost cost = hashingManager.getTargetCost();
+            final Argon2Calibration calibration = hashingManager.getCalibration();
+            final long hashMillis = Math.round(calibration != null ? calibration.getHashMillis() : hashingManager.getAverageHashMillis());
+            sendColorPrefixMessages(sender, configuration.getHashingInfo().stream().map(s -> s
+                    .replace("{MEMORY}", String.valueOf(cost.getMemoryKb()))
+                    .replace("{ITERATIONS}", String.valueOf(cost.getIterations()))
+                    .replace("{PARALLELISM}", String.valueOf(cost.getParallelism()))
+                    .replace("{MILLIS}", String.valueOf(hashMillis))).collect(Collectors.toList()), plugin);
+        } else if (args[0].toLowerCase(Locale.ROOT).equals("metrics")) {
+            sendHashingMetrics(sender, plugin.getHashingManager());
+            sendDatabaseMetrics(sender, plugin.getDatabase());
+            if (plugin.getListenerManager().getListener(LoginAuthenticatorListener.NAME) instanceof LoginAuthenticatorListener listener) {
+                sendJoinMetrics(sender, listener);
+            }
         } else {
             sendColorPrefixMessages(sender, configuration.getIncorrectCommandUsage(), plugin);
         }
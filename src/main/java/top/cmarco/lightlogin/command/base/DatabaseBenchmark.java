@@ -0,0 +1,158 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.command.base;
+
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+import top.cmarco.lightlogin.database.AbstractPluginDatabase;
+import top.cmarco.lightlogin.database.CredentialPluginDatabase;
+import top.cmarco.lightlogin.database.EmbeddedDatabase;
+import top.cmarco.lightlogin.database.ForwardingPluginDatabase;
+import top.cmarco.lightlogin.database.LightLoginColumn;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+
+import static top.cmarco.lightlogin.command.LightLoginCommand.colorMessage;
+
+/**
+ * Measures the latency of the per-login queries against the database itself.
+ * The account cache and the write-behind buffer are bypassed, so the numbers include
+ * statement preparation, the round trip and the database work.
+ * The queries run on a scratch table, or a scratch file for the embedded database,
+ * holding a single temporary account, so the real accounts are never touched.
+ */
+public final class DatabaseBenchmark {
+
+    private static final String SCRATCH_FILE = "lightlogin-benchmark.db";
+
+    private final LightLoginPlugin plugin;
+    private final CommandSender sender;
+    private final int queries;
+
+    public DatabaseBenchmark(@NotNull final LightLoginPlugin plugin, @NotNull final CommandSender sender, final int queries) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.queries = queries;
+    }
+
+    public void start() {
+        final AbstractPluginDatabase backend = ForwardingPluginDatabase.unwrap(this.plugin.getDatabase(), AbstractPluginDatabase.class);
+
+        this.sender.sendMessage(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Benchmarking &e" + this.queries + " &fqueries per operation..."));
+
+        this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            final String uuid = UUID.randomUUID().toString();
+            final LightLoginDbRow row = new LightLoginDbRow(uuid, "benchmark", "benchmark", null, 0L, 0L);
+            final List<String> lines = new ArrayList<>();
+            lines.add(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Database Benchmark:"));
+
+            if (backend instanceof CredentialPluginDatabase) {
+                this.benchmarkTable((CredentialPluginDatabase) backend, row, lines);
+            } else if (backend instanceof EmbeddedDatabase) {
+                this.benchmarkFile(row, lines);
+            } else {
+                lines.add(colorMessage("  ● &cThis database cannot be benchmarked."));
+            }
+
+            this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.sender.sendMessage(lines.toArray(new String[0])));
+        });
+    }
+
+    private void benchmarkTable(@NotNull final CredentialPluginDatabase database, @NotNull final LightLoginDbRow row, @NotNull final List<String> lines) {
+        final String uuid = row.getUuid();
+
+        try {
+            database.createBenchmarkTable(row).join();
+        } catch (CompletionException exception) {
+            lines.add(colorMessage("  ● &cCould not create the benchmark table."));
+            return;
+        }
+
+        try {
+            // Warm up once, so that every statement is already prepared where the database caches them.
+            database.benchmarkLookup(uuid).join();
+            database.benchmarkUpdate(uuid, 0L).join();
+
+            lines.add(this.measure("Lookup by uuid", i -> database.benchmarkLookup(uuid).join()));
+            lines.add(this.measure("Update last login", i -> database.benchmarkUpdate(uuid, i).join()));
+        } catch (CompletionException exception) {
+            lines.add(colorMessage("  ● &cBenchmark query failed: " + exception.getCause().getLocalizedMessage()));
+        } finally {
+            database.dropBenchmarkTable().exceptionally(throwable -> null).join();
+        }
+    }
+
+    private void benchmarkFile(@NotNull final LightLoginDbRow row, @NotNull final List<String> lines) {
+        final String uuid = row.getUuid();
+        final File file = new File(this.plugin.getDataFolder(), SCRATCH_FILE);
+        // A file left behind by an interrupted run only ever holds the temporary account.
+        file.delete();
+
+        final EmbeddedDatabase database = new EmbeddedDatabase(this.plugin, SCRATCH_FILE);
+        database.connect();
+
+        try {
+            if (database.addRow(row).join() == null) {
+                lines.add(colorMessage("  ● &cCould not insert the temporary account."));
+                return;
+            }
+
+            database.searchRowFromPK(uuid).join();
+            database.updateRow(uuid, LightLoginColumn.LAST_LOGIN, 0L).join();
+
+            lines.add(this.measure("Lookup by uuid", i -> database.searchRowFromPK(uuid).join()));
+            lines.add(this.measure("Update last login", i -> database.updateRow(uuid, LightLoginColumn.LAST_LOGIN, (long) i).join()));
+        } catch (CompletionException exception) {
+            lines.add(colorMessage("  ● &cBenchmark query failed: " + exception.getCause().getLocalizedMessage()));
+        } finally {
+            database.close();
+            file.delete();
+        }
+    }
+
+    @NotNull
+    private String measure(@NotNull final String name, @NotNull final IntFunction<?> query) {
+        final long[] latencies = new long[this.queries];
+
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < this.queries; i++) {
+            final long queryStart = System.nanoTime();
+            query.apply(i);
+            latencies[i] = System.nanoTime() - queryStart;
+        }
+        final long elapsed = System.nanoTime() - startTime;
+        Arrays.sort(latencies);
+
+        final double p50 = latencies[(latencies.length - 1) / 2] / 1E6;
+        final double p99 = latencies[(int) Math.ceil(latencies.length * 0.99D) - 1] / 1E6;
+        final double perSecond = this.queries / (elapsed / 1E9);
+
+        return colorMessage(String.format(Locale.ROOT, "  ● &e%s&7: p50 &e%.3f &7ms, p99 &e%.3f &7ms, &e%.0f &7queries/s",
+                name, p50, p99, perSecond));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.command.base;
+
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.encrypt.Argon2Cost;
+import top.cmarco.lightlogin.encrypt.Argon2LanePool;
+import top.cmarco.lightlogin.encrypt.Argon2Utilities;
+import top.cmarco.lightlogin.encrypt.BouncyCastleArgon2Hasher;
+import top.cmarco.lightlogin.encrypt.PasswordHasher;
+import top.cmarco.lightlogin.encrypt.PooledArgon2Hasher;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static top.cmarco.lightlogin.command.LightLoginCommand.colorMessage;
+
+/**
+ * Compares the allocation rate and latency of the available Argon2 implementations.
+ * Hashes run one after another on a single asynchronous thread, so the numbers describe
+ * a single hash and are not affected by the hashing queue. The parallel implementations
+ * fill the lanes of that hash on extra threads, so their throughput is divided by the cores they use.
+ * The vector implementation is only measured when the server runs with the Vector API module.
+ */
+public final class HasherBenchmark {
+
+    private final LightLoginPlugin plugin;
+    private final CommandSender sender;
+    private final int hashes;
+
+    public HasherBenchmark(@NotNull final LightLoginPlugin plugin, @NotNull final CommandSender sender, final int hashes) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.hashes = hashes;
+    }
+
+    public void start() {
+        this.sender.sendMessage(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Benchmarking &e" + this.hashes + " &fhashes per implementation..."));
+
+        this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            final List<String> lines = new ArrayList<>();
+            lines.add(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Hashing Benchmark:"));
+            lines.add(this.measure(new BouncyCastleArgon2Hasher(), 1));
+            lines.add(this.measure(new PooledArgon2Hasher(1), 1));
+
+            final PooledArgon2Hasher vectorHasher = PooledArgon2Hasher.withVectorInstructions(1, null);
+            if (vectorHasher != null) {
+                lines.add(this.measure(vectorHasher, 1));
+            } else {
+                lines.add(colorMessage("  ● &eVECTOR&7: not available, start the server with &e--add-modules jdk.incubator.vector"));
+            }
+
+            final Argon2LanePool lanePool = new Argon2LanePool(Runtime.getRuntime().availableProcessors());
+            final int laneCores = Math.min(lanePool.getThreads(), Argon2Cost.LEGACY.getParallelism());
+            try {
+                lines.add(this.measure(new PooledArgon2Hasher(1, lanePool), laneCores));
+                final PooledArgon2Hasher parallelVectorHasher = PooledArgon2Hasher.withVectorInstructions(1, lanePool);
+                if (parallelVectorHasher != null) {
+                    lines.add(this.measure(parallelVectorHasher, laneCores));
+                }
+            } finally {
+                lanePool.shutdown();
+            }
+
+            this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.sender.sendMessage(lines.toArray(new String[0])));
+        });
+    }
+
+    @NotNull
+    private String measure(@NotNull final PasswordHasher hasher, final int cores) {
+        final byte[] password = "LightLogin-Benchmark".getBytes(StandardCharsets.UTF_8);
+        final byte[] salt = Argon2Utilities.generateSaltByte(0x10);
+        final long[] latencies = new long[this.hashes];
+        long totalNanos = 0L;
+
+        // Warm up once, so that the pooled implementation is measured in its steady state.
+        hasher.hash(password, salt, Argon2Cost.LEGACY);
+
+        final long allocatedBefore = allocatedBytes();
+        final long collectionsBefore = gcCollections();
+
+        for (int i = 0; i < this.hashes; i++) {
+            final long startTime = System.nanoTime();
+            hasher.hash(password, salt, Argon2Cost.LEGACY);
+            latencies[i] = System.nanoTime() - startTime;
+            totalNanos += latencies[i];
+        }
+
+        final long allocated = allocatedBytes() - allocatedBefore;
+        final long collections = gcCollections() - collectionsBefore;
+        Arrays.sort(latencies);
+
+        final double p50 = latencies[(latencies.length - 1) / 2] / 1E6;
+        final double p99 = latencies[(int) Math.ceil(latencies.length * 0.99D) - 1] / 1E6;
+        final double hashesPerCore = this.hashes / (totalNanos / 1E9) / cores;
+        final String allocatedPerHash = allocatedBefore < 0L ? "n/a" : String.format(Locale.ROOT, "%.2f", allocated / (double) this.hashes / (1024D * 1024D));
+
+        return colorMessage(String.format(Locale.ROOT, "  ● &e%s&7: p50 &e%.1f &7ms, p99 &e%.1f &7ms, &e%.2f &7hashes/s per core, &e%s &7MB allocated/hash, &e%d &7GCs",
+                hasher.getName(), p50, p99, hashesPerCore, allocatedPerHash, collections));
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean sunThreadMXBean && sunThreadMXBean.isThreadAllocatedMemorySupported()) {
+            return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+
+    private static long gcCollections() {
+        long collections = 0L;
+        for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0L, garbageCollector.getCollectionCount());
+        }
+        return collections;
+    }
+}
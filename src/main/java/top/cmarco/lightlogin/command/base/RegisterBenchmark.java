@@ -0,0 +1,126 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.command.base;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.encrypt.HashingManager;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static top.cmarco.lightlogin.command.LightLoginCommand.colorMessage;
+
+/**
+ * Measures the server tick time while a number of simultaneous registrations are processed.
+ * Every simulated registration runs the same off-thread work as /register (same address count,
+ * primary key lookup and password hashing) but never inserts a row, so it is safe to run on a live server.
+ */
+public final class RegisterBenchmark {
+
+    private static final long TICK_NANOS = 50_000_000L;
+
+    private final LightLoginPlugin plugin;
+    private final CommandSender sender;
+    private final int registrations;
+
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private BukkitTask tickSampler = null;
+    private long lastTick = 0L;
+    private long ticks = 0L;
+    private long totalTickNanos = 0L;
+    private long maxTickNanos = 0L;
+    private long overloadedTicks = 0L;
+
+    public RegisterBenchmark(@NotNull final LightLoginPlugin plugin, @NotNull final CommandSender sender, final int registrations) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.registrations = registrations;
+    }
+
+    /**
+     * Start the benchmark, must be called from the server thread.
+     */
+    public void start() {
+        this.sender.sendMessage(colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Benchmarking &e" + this.registrations + " &fsimultaneous registrations..."));
+
+        this.lastTick = System.nanoTime();
+        this.tickSampler = this.plugin.getServer().getScheduler().runTaskTimer(this.plugin, this::sampleTick, 1L, 1L);
+
+        final long startTime = System.nanoTime();
+        final HashingManager hashingManager = this.plugin.getHashingManager();
+        final CompletableFuture<?>[] pipelines = new CompletableFuture<?>[this.registrations];
+
+        for (int i = 0; i < this.registrations; i++) {
+            final String uuid = UUID.randomUUID().toString();
+            final String password = UUID.randomUUID().toString();
+
+            pipelines[i] = this.plugin.getDatabase().countRowsByIp(0L)
+                    .thenCombine(this.plugin.getDatabase().searchRowFromPK(uuid), (sameIp, row) -> row)
+                    .thenCompose(row -> hashingManager.hash(password))
+                    .handle((hash, throwable) -> {
+                        if (throwable != null) {
+                            (HashingManager.isRejected(throwable) ? this.rejected : this.failed).incrementAndGet();
+                        }
+                        return null;
+                    });
+        }
+
+        CompletableFuture.allOf(pipelines).whenComplete((v, t) -> {
+            final long elapsed = System.nanoTime() - startTime;
+            this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.finish(elapsed));
+        });
+    }
+
+    private void sampleTick() {
+        final long now = System.nanoTime();
+        final long tickNanos = now - this.lastTick;
+        this.lastTick = now;
+
+        this.ticks++;
+        this.totalTickNanos += tickNanos;
+        this.maxTickNanos = Math.max(this.maxTickNanos, tickNanos);
+        if (tickNanos > TICK_NANOS + (TICK_NANOS / 2)) {
+            this.overloadedTicks++;
+        }
+    }
+
+    private void finish(final long elapsedNanos) {
+        this.tickSampler.cancel();
+
+        final double averageTick = this.ticks == 0 ? 0d : (this.totalTickNanos / (double) this.ticks) / 1E6;
+        final int completed = this.registrations - this.rejected.get() - this.failed.get();
+
+        final String s1 = colorMessage("&6&l★&r&eLightLogin&6&l★&r&f Registration Benchmark:");
+        final String s2 = colorMessage("  ● &7Registrations: &e" + completed + " &7completed, &c"
+                + this.rejected.get() + " &7rejected, &c" + this.failed.get() + " &7failed");
+        final String s3 = colorMessage(String.format(Locale.ROOT, "  ● &7Elapsed: &e%.1f &7ms", elapsedNanos / 1E6));
+        final String s4 = colorMessage(String.format(Locale.ROOT, "  ● &7Tick time: &e%.2f &7ms avg, &e%.2f &7ms max over &e%d &7ticks",
+                averageTick, this.maxTickNanos / 1E6, this.ticks));
+        final String s5 = colorMessage("  ● &7Ticks over 75ms: &e" + this.overloadedTicks);
+
+        this.sender.sendMessage(new String[]{s1, s2, s3, s4, s5});
+    }
+}
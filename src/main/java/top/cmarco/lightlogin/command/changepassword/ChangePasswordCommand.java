@@ -26,9 +26,11 @@ import top.cmarco.lightlogin.command.LightLoginCommand;
 import top.cmarco.lightlogin.command.utils.CommandUtils;
 import top.cmarco.lightlogin.database.LightLoginColumn;
 import top.cmarco.lightlogin.database.PluginDatabase;
-import top.cmarco.lightlogin.encrypt.Argon2Utilities;
+import top.cmarco.lightlogin.encrypt.Argon2Hash;
+import top.cmarco.lightlogin.encrypt.HashingManager;
 
-import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class ChangePasswordCommand extends LightLoginCommand {
     public ChangePasswordCommand(@NotNull LightLoginPlugin plugin) {
@@ -82,41 +84,70 @@ public class ChangePasswordCommand extends LightLoginCommand {
                         return;
                     }
 
-                    final String previousSaltBase64 = row.getPasswordSalt();
-                    final String previousPasswordHashBase64 = row.getPasswordHash();
-                    final byte[] rowSalt = Base64.getDecoder().decode(previousSaltBase64);
+                    final Argon2Hash storedHash = Argon2Hash.fromBinary(row.getBinaryPassword(), row.getBinarySalt());
 
-                    final String oldPasswordHashed = Argon2Utilities.encryptArgon2(oldPassword, rowSalt);
-
-                    final boolean matchedPassword = oldPasswordHashed.equals(previousPasswordHashBase64);
-
-                    if (!matchedPassword) {
+                    if (storedHash == null) {
+                        plugin.getLogger().warning("Malformed password hash stored for player " + player.getName());
                         if (player.isOnline()) {
-                            sendColorPrefixMessages(player, configuration.getChangepasswordWrongOldPassword(), plugin);
+                            sendColorPrefixMessages(player, configuration.getRegisterError(), plugin);
                         }
                         return;
                     }
 
-                    final String newPasswordHashOldSalt = Argon2Utilities.encryptArgon2(newPassword, rowSalt);
+                    final HashingManager hashingManager = plugin.getHashingManager();
 
-                    database.updateRow(player.getUniqueId().toString(), LightLoginColumn.PASSWORD, newPasswordHashOldSalt)
-                            .whenCompleteAsync((v, th) -> {
+                    hashingManager.verify(oldPassword, storedHash).thenCompose(matchedPassword -> {
 
-                                if (th != null) {
-                                    plugin.getLogger().warning(th.getLocalizedMessage());
-                                    if (player.isOnline()) {
-                                        sendColorPrefixMessages(player, configuration.getRegisterError(), plugin);
+                        if (!matchedPassword) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+
+                        return hashingManager.hash(newPassword);
+
+                    }).whenComplete((newPasswordHash, hashThrowable) -> {
+
+                        if (hashThrowable != null) {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, HashingManager.isRejected(hashThrowable)
+                                        ? configuration.getHashingBusy()
+                                        : configuration.getRegisterError(), plugin);
+                            }
+                            if (!HashingManager.isRejected(hashThrowable)) {
+                                plugin.getLogger().warning(hashThrowable.getLocalizedMessage());
+                            }
+                            return;
+                        }
+
+                        if (newPasswordHash == null) {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, configuration.getChangepasswordWrongOldPassword(), plugin);
+                            }
+                            return;
+                        }
+
+                        final String uuid = player.getUniqueId().toString();
+                        database.updateColumns(uuid, Map.of(
+                                        LightLoginColumn.PASSWORD, newPasswordHash.encode(),
+                                        LightLoginColumn.SALT, newPasswordHash.getSaltBase64()))
+                                .whenCompleteAsync((v, th) -> {
+
+                                    if (th != null) {
+                                        plugin.getLogger().warning(th.getLocalizedMessage());
+                                        if (player.isOnline()) {
+                                            sendColorPrefixMessages(player, configuration.getRegisterError(), plugin);
+                                        }
+                                        return;
                                     }
-                                    return;
-                                }
 
-                                super.plugin.getPlaintextPasswordManager().setPassword(player, args[2]);
+                                    super.plugin.getPlaintextPasswordManager().setPassword(player, args[2]);
+
+                                    if (player.isOnline()) {
+                                        sendColorPrefixMessages(player, configuration.getChangePasswordUpdated(), plugin);
+                                    }
 
-                                if (player.isOnline()) {
-                                    sendColorPrefixMessages(player, configuration.getChangePasswordUpdated(), plugin);
-                                }
+                                });
 
-                            });
+                    });
 
                 });
     }
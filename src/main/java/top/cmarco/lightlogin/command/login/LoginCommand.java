@@ -31,10 +31,11 @@ import top.cmarco.lightlogin.command.temppassword.TempPasswordManager;
 import top.cmarco.lightlogin.data.AuthenticationManager;
 import top.cmarco.lightlogin.database.LightLoginColumn;
 import top.cmarco.lightlogin.database.PluginDatabase;
-import top.cmarco.lightlogin.encrypt.Argon2Utilities;
+import top.cmarco.lightlogin.encrypt.Argon2Hash;
+import top.cmarco.lightlogin.encrypt.HashingManager;
 
-import java.util.Base64;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -124,53 +125,100 @@ public final class LoginCommand extends LightLoginCommand {
                         return;
                     }
 
-                    final byte[] dbSalt = Base64.getDecoder().decode(row.getPasswordSalt());
-                    final String hashAttempt = Argon2Utilities.encryptArgon2(password, dbSalt);
-                    final String databaseHash = row.getPasswordHash();
-
-                    if (databaseHash.equals(hashAttempt)) {
+                    final Argon2Hash storedHash = Argon2Hash.fromBinary(row.getBinaryPassword(), row.getBinarySalt());
 
+                    if (storedHash == null) {
+                        super.plugin.getLogger().warning("Malformed password hash stored for player " + player.getName());
                         if (player.isOnline()) {
-                            sendColorPrefixMessages(player, super.configuration.getLoginSuccess(), super.plugin);
+                            sendColorPrefixMessages(player, super.configuration.getLoginError(), super.plugin);
                         }
+                        return;
+                    }
 
-                        plugin.getPlaintextPasswordManager().setPassword(player, password);
+                    final HashingManager hashingManager = plugin.getHashingManager();
 
-                        plugin.getServer().getScheduler().runTask(plugin, () -> {
-                            PlayerAuthenticateEvent playerAuthenticateEvent = new PlayerAuthenticateEvent(player, AuthenticationCause.COMMAND);
-                            this.plugin.getServer().getPluginManager().callEvent(playerAuthenticateEvent);
-                        });
+                    hashingManager.verify(password, storedHash).whenComplete((matchedPassword, hashThrowable) -> {
 
-                        authManager.authenticate(player);
-                        database.updateRow(uuid.toString(), LightLoginColumn.LAST_LOGIN, System.currentTimeMillis());
+                        if (hashThrowable != null) {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, HashingManager.isRejected(hashThrowable)
+                                        ? super.configuration.getHashingBusy()
+                                        : super.configuration.getLoginError(), super.plugin);
+                            }
+                            if (!HashingManager.isRejected(hashThrowable)) {
+                                super.plugin.getLogger().warning(hashThrowable.getLocalizedMessage());
+                            }
+                            return;
+                        }
 
-                    } else {
+                        if (matchedPassword) {
 
-                        if (player.isOnline()) {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, super.configuration.getLoginSuccess(), super.plugin);
+                            }
 
-                            plugin.getServer().getScheduler()
-                                    .runTask(plugin, () -> {
-                                        PlayerWrongPasswordEvent event = new PlayerWrongPasswordEvent(player);
-                                        plugin.getServer().getPluginManager().callEvent(event);
-                                    });
+                            plugin.getPlaintextPasswordManager().setPassword(player, password);
 
-                            sendColorPrefixMessages(player, super.configuration.getLoginWrongPassword(), super.plugin);
+                            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                                PlayerAuthenticateEvent playerAuthenticateEvent = new PlayerAuthenticateEvent(player, AuthenticationCause.COMMAND);
+                                this.plugin.getServer().getPluginManager().callEvent(playerAuthenticateEvent);
+                            });
 
-                            if (plugin.getLightConfiguration().isSoundsEnabled()) {
-                                player.playSound(player.getEyeLocation(), Sound.valueOf(plugin.getLightConfiguration().getWrongPasswordSound()), 1f, 1f);
-                            }
-                        }
+                            authManager.authenticate(player);
+                            database.updateRow(uuid.toString(), LightLoginColumn.LAST_LOGIN, System.currentTimeMillis());
 
-                        int currentAttempts = this.failedAttempts.get(uuid);
+                            if (super.configuration.isRehashOnLogin() && hashingManager.needsRehash(storedHash)) {
+                                this.rehash(player, password, database);
+                            }
 
-                        if (currentAttempts >= super.configuration.getMaxFailedAttempts() + 1) {
-                            super.plugin.getServer().getScheduler().runTask(super.plugin, () -> super.configuration.getBruteforcePunishment().forEach(cmd -> super.plugin.getServer().dispatchCommand(super.plugin.getServer().getConsoleSender(), cmd.replace("{PLAYER}", player.getName()))));
                         } else {
-                            this.failedAttempts.put(uuid, currentAttempts + 1);
+
+                            if (player.isOnline()) {
+
+                                plugin.getServer().getScheduler()
+                                        .runTask(plugin, () -> {
+                                            PlayerWrongPasswordEvent event = new PlayerWrongPasswordEvent(player);
+                                            plugin.getServer().getPluginManager().callEvent(event);
+                                        });
+
+                                sendColorPrefixMessages(player, super.configuration.getLoginWrongPassword(), super.plugin);
+
+                                if (plugin.getLightConfiguration().isSoundsEnabled()) {
+                                    player.playSound(player.getEyeLocation(), Sound.valueOf(plugin.getLightConfiguration().getWrongPasswordSound()), 1f, 1f);
+                                }
+                            }
+
+                            int currentAttempts = this.failedAttempts.get(uuid);
+
+                            if (currentAttempts >= super.configuration.getMaxFailedAttempts() + 1) {
+                                super.plugin.getServer().getScheduler().runTask(super.plugin, () -> super.configuration.getBruteforcePunishment().forEach(cmd -> super.plugin.getServer().dispatchCommand(super.plugin.getServer().getConsoleSender(), cmd.replace("{PLAYER}", player.getName()))));
+                            } else {
+                                this.failedAttempts.put(uuid, currentAttempts + 1);
+                            }
                         }
-                    }
+
+                    });
 
                 });
 
     }
+
+    /**
+     * Store the password again with the current hashing parameters,
+     * only possible right after a successful login as the plaintext is needed.
+     */
+    private void rehash(@NotNull final Player player, @NotNull final String password, @NotNull final PluginDatabase database) {
+        final String uuid = player.getUniqueId().toString();
+
+        super.plugin.getHashingManager().hash(password)
+                .thenCompose(newHash -> database.updateColumns(uuid, Map.of(
+                        LightLoginColumn.PASSWORD, newHash.encode(),
+                        LightLoginColumn.SALT, newHash.getSaltBase64())))
+                .whenComplete((v, throwable) -> {
+                    // A rejected rehash is simply retried on the next login.
+                    if (throwable != null && !HashingManager.isRejected(throwable)) {
+                        super.plugin.getLogger().warning("Could not rehash password of " + player.getName() + ": " + throwable.getLocalizedMessage());
+                    }
+                });
+    }
 }
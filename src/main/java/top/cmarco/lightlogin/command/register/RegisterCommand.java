@@ -29,10 +29,10 @@ import top.cmarco.lightlogin.command.LightLoginCommand;
 import top.cmarco.lightlogin.command.utils.CommandUtils;
 import top.cmarco.lightlogin.data.LightLoginDbRow;
 import top.cmarco.lightlogin.database.PluginDatabase;
-import top.cmarco.lightlogin.encrypt.Argon2Utilities;
+import top.cmarco.lightlogin.encrypt.HashingManager;
 import top.cmarco.lightlogin.network.NetworkUtilities;
 
-import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 
 public final class RegisterCommand extends LightLoginCommand {
 
@@ -62,72 +62,99 @@ public final class RegisterCommand extends LightLoginCommand {
             return;
         }
 
-        PluginDatabase database = super.plugin.getDatabase();
+        final PluginDatabase database = super.plugin.getDatabase();
+        final String uuid = player.getUniqueId().toString();
+        final long lastIpv4 = NetworkUtilities.convertInetSocketAddressToLong(player.getAddress());
 
-        database.searchRowsPredicate(row -> row.getLastIpv4() == NetworkUtilities.convertInetSocketAddressToLong(player.getAddress()))
-                .thenAcceptBothAsync(database.searchRowFromPK(player.getUniqueId().toString()), (list, row) -> {
+        // Everything up to the row insertion runs off the server thread, only the events go back to it.
+        database.countRowsByIp(lastIpv4)
+                .thenCombine(database.searchRowFromPK(uuid), (sameIp, row) -> {
 
-                    final int sameIpCount = list.size();
-                    if (sameIpCount > configuration.getRegisterSameIp()) {
-                        sendColorPrefixMessages(sender, configuration.getCannotRegisterTooManyIp(), plugin);
-                        return;
+                    if (sameIp == null) {
+                        return RegisterOutcome.ERROR;
                     }
 
-                    super.plugin.getServer().getScheduler().runTask(super.plugin, () -> {
+                    if (sameIp > configuration.getRegisterSameIp()) {
+                        return RegisterOutcome.TOO_MANY_IP;
+                    }
 
-                        if (row != null) {
-                            sendColorPrefixMessages(player, super.configuration.getAlreadyRegisteredMessage(), super.plugin);
-                        } else {
-                            final String uuid = player.getUniqueId().toString();
-                            final byte[] salt = Argon2Utilities.generateSaltByte(0x10);
-                            final String password = Argon2Utilities.encryptArgon2(args[1], salt);
-                            final long lastLogin = System.currentTimeMillis();
-                            final long lastIpv4 = NetworkUtilities.convertInetSocketAddressToLong(player.getAddress());
+                    return row != null ? RegisterOutcome.ALREADY_REGISTERED : null;
+                })
+                .thenCompose(outcome -> {
+
+                    if (outcome != null) {
+                        return CompletableFuture.completedFuture(outcome);
+                    }
 
+                    return super.plugin.getHashingManager().hash(args[1]).thenCompose(password ->
                             database.addRow(new LightLoginDbRow(uuid,
-                                    password,
-                                    Base64.getEncoder().encodeToString(salt),
+                                    password.encode(),
+                                    password.getSaltBase64(),
                                     null,
-                                    lastLogin,
-                                    lastIpv4)
-                            ).whenCompleteAsync((addedRow, throwable2) -> {
-
-                                if (addedRow == null || throwable2 != null) {
-                                    if (player.isOnline()) {
-                                        sendColorPrefixMessages(player, super.configuration.getRegisterError(), super.plugin);
-                                    }
-                                    if (addedRow == null) {
-                                        this.plugin.getLogger().warning("WARNING! Error registering player: " + player.getName());
-                                    }
-                                    if (throwable2 == null) {
-                                        this.plugin.getLogger().warning("WARNING! Throwable received registering player: " + throwable2.getLocalizedMessage());
-                                    }
-                                    return;
-                                }
-
-                                plugin.getServer().getScheduler().runTask(plugin, () -> {
-                                    PlayerAuthenticateEvent playerAuthenticateEvent = new PlayerAuthenticateEvent(player, AuthenticationCause.COMMAND);
-                                    this.plugin.getServer().getPluginManager().callEvent(playerAuthenticateEvent);
-                                });
-
-                                super.plugin.getAuthenticationManager().authenticate(player);
-
-                                if (!player.isOnline()) return;
-
-                                super.plugin.getPlaintextPasswordManager().setPassword(player, args[1]);
-
-                                sendColorPrefixMessages(player, super.configuration.getRegisterSuccessMessage(), super.plugin);
-
-                                final PlayerRegisterEvent playerRegisterEvent = new PlayerRegisterEvent(player);
-                                super.plugin.getServer().getScheduler().runTask(super.plugin, () -> {
-                                    super.plugin.getServer().getPluginManager().callEvent(playerRegisterEvent);
-                                });
-                            });
+                                    System.currentTimeMillis(),
+                                    lastIpv4))
+                    ).thenApply(addedRow -> addedRow == null ? RegisterOutcome.ERROR : RegisterOutcome.REGISTERED);
+                })
+                .whenComplete((outcome, throwable) -> {
+
+                    if (throwable != null) {
+                        if (HashingManager.isRejected(throwable)) {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, super.configuration.getHashingBusy(), super.plugin);
+                            }
+                            return;
                         }
+                        this.plugin.getLogger().warning("WARNING! Throwable received registering player: " + throwable.getLocalizedMessage());
+                        outcome = RegisterOutcome.ERROR;
+                    }
 
-                    });
-
+                    switch (outcome) {
+                        case TOO_MANY_IP: {
+                            sendColorPrefixMessages(player, configuration.getCannotRegisterTooManyIp(), plugin);
+                            break;
+                        }
+                        case ALREADY_REGISTERED: {
+                            sendColorPrefixMessages(player, super.configuration.getAlreadyRegisteredMessage(), super.plugin);
+                            break;
+                        }
+                        case REGISTERED: {
+                            this.completeRegistration(player, args[1]);
+                            break;
+                        }
+                        default: {
+                            if (player.isOnline()) {
+                                sendColorPrefixMessages(player, super.configuration.getRegisterError(), super.plugin);
+                            }
+                            this.plugin.getLogger().warning("WARNING! Error registering player: " + player.getName());
+                            break;
+                        }
+                    }
                 });
 
     }
+
+    private void completeRegistration(@NotNull final Player player, @NotNull final String password) {
+        super.plugin.getAuthenticationManager().authenticate(player);
+
+        super.plugin.getServer().getScheduler().runTask(super.plugin, () -> {
+            final PlayerAuthenticateEvent playerAuthenticateEvent = new PlayerAuthenticateEvent(player, AuthenticationCause.COMMAND);
+            super.plugin.getServer().getPluginManager().callEvent(playerAuthenticateEvent);
+
+            if (!player.isOnline()) return;
+
+            super.plugin.getPlaintextPasswordManager().setPassword(player, password);
+
+            sendColorPrefixMessages(player, super.configuration.getRegisterSuccessMessage(), super.plugin);
+
+            final PlayerRegisterEvent playerRegisterEvent = new PlayerRegisterEvent(player);
+            super.plugin.getServer().getPluginManager().callEvent(playerRegisterEvent);
+        });
+    }
+
+    private enum RegisterOutcome {
+        TOO_MANY_IP,
+        ALREADY_REGISTERED,
+        REGISTERED,
+        ERROR
+    }
 }
@@ -85,7 +85,12 @@ public final class UnregisterCommand extends LightLoginCommand {
 
                         if (!(sender instanceof Player) || ((Player) sender).isOnline()) {
                             sendColorPrefixMessages(sender, super.configuration.getUnregisteredSuccess(), plugin);
-                            authManager.addUnregistered(finalPlayerUUID);
+                        }
+
+                        // Only track the unregistered player if they are still online, onLeave would never forget them otherwise.
+                        final Player target = super.plugin.getServer().getPlayer(finalPlayerUUID);
+                        if (target != null && target.isOnline()) {
+                            authManager.addUnregistered(target);
                         }
 
                     } else {
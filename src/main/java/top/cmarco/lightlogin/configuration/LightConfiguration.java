@@ -98,10 +98,131 @@ public final class LightConfiguration {
         return this.configuration.getString("database.db-name");
     }
 
+    public int getDatabaseFetchSize() {
+        return this.configuration.getInt("database.fetch-size", 500);
+    }
+
+    public boolean isDatabaseBinarySchema() {
+        return this.configuration.getBoolean("database.binary-schema", false);
+    }
+
+    public int getDatabaseThreads() {
+        return this.configuration.getInt("database.threads", 0);
+    }
+
+    public int getDatabasePoolMaxSize() {
+        return this.configuration.getInt("database.pool.max-size", 10);
+    }
+
+    public int getDatabasePoolMinIdle() {
+        return this.configuration.getInt("database.pool.min-idle", 2);
+    }
+
+    public long getDatabasePoolConnectionTimeoutMillis() {
+        return this.configuration.getLong("database.pool.connection-timeout-millis", 5000L);
+    }
+
+    public long getDatabasePoolValidationTimeoutMillis() {
+        return this.configuration.getLong("database.pool.validation-timeout-millis", 3000L);
+    }
+
+    public long getDatabasePoolMaxLifetimeMillis() {
+        return this.configuration.getLong("database.pool.max-lifetime-millis", 1800000L);
+    }
+
+    public long getDatabasePoolKeepaliveMillis() {
+        return this.configuration.getLong("database.pool.keepalive-millis", 120000L);
+    }
+
+    public long getDatabasePoolLeakDetectionMillis() {
+        return this.configuration.getLong("database.pool.leak-detection-millis", 0L);
+    }
+
+    public boolean isSqliteWal() {
+        return this.configuration.getBoolean("database.sqlite.wal", true);
+    }
+
+    @NotNull
+    public String getSqliteSynchronous() {
+        return this.configuration.getString("database.sqlite.synchronous", "NORMAL");
+    }
+
+    public int getSqliteMmapSizeMb() {
+        return this.configuration.getInt("database.sqlite.mmap-size-mb", 64);
+    }
+
+    public int getSqliteCacheSizeMb() {
+        return this.configuration.getInt("database.sqlite.cache-size-mb", 16);
+    }
+
+    public int getSqliteReadConnections() {
+        return this.configuration.getInt("database.sqlite.read-connections", 2);
+    }
+
+    public int getSqliteGroupCommitMax() {
+        return this.configuration.getInt("database.sqlite.group-commit-max", 64);
+    }
+
+    public boolean isEmbeddedSync() {
+        return this.configuration.getBoolean("database.embedded.sync", true);
+    }
+
+    public int getEmbeddedGroupCommitMax() {
+        return this.configuration.getInt("database.embedded.group-commit-max", 256);
+    }
+
+    public double getEmbeddedCompactRatio() {
+        return this.configuration.getDouble("database.embedded.compact-ratio", 1.0D);
+    }
+
+    public int getEmbeddedCompactMinMb() {
+        return this.configuration.getInt("database.embedded.compact-min-mb", 8);
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return this.configuration.getBoolean("database.write-behind.enabled", true);
+    }
+
+    public long getWriteBehindFlushIntervalMillis() {
+        return this.configuration.getLong("database.write-behind.flush-interval-millis", 1000L);
+    }
+
+    public int getWriteBehindMaxPending() {
+        return this.configuration.getInt("database.write-behind.max-pending", 500);
+    }
+
+    public boolean isSnapshotEnabled() {
+        return this.configuration.getBoolean("database.snapshot.enabled", false);
+    }
+
+    public int getSnapshotRefreshSeconds() {
+        return this.configuration.getInt("database.snapshot.refresh-seconds", 300);
+    }
+
+    public boolean isDatabaseCacheEnabled() {
+        return this.configuration.getBoolean("database.cache.enabled", true);
+    }
+
+    public boolean isDatabaseCacheNetworked() {
+        return this.configuration.getBoolean("database.cache.networked", false);
+    }
+
+    public int getDatabaseCacheTtlSeconds() {
+        return this.configuration.getInt("database.cache.ttl-seconds", 1800);
+    }
+
+    public int getDatabaseCacheMaxEntries() {
+        return this.configuration.getInt("database.cache.max-entries", 5000);
+    }
+
     public boolean isCrashShutdown() {
         return this.configuration.getBoolean("crash-shutdown", false);
     }
 
+    public boolean isVirtualThreadsEnabled() {
+        return this.configuration.getBoolean("virtual-threads", true);
+    }
+
     @NotNull
     public List<String> getAllowedCommands() {
         return this.configuration.getStringList("login.allowed-commands");
@@ -455,4 +576,68 @@ public final class LightConfiguration {
     public List<String> getCannotRegisterTooManyIp() {
         return this.configuration.getStringList("messages.cannot-register-too-many-ip");
     }
+
+    public int getHashingThreads() {
+        return this.configuration.getInt("hashing.threads", 0);
+    }
+
+    public String getHashingEngine() {
+        return this.configuration.getString("hashing.engine", "POOLED");
+    }
+
+    public String getHashingLaneScheduling() {
+        return this.configuration.getString("hashing.lane-scheduling", "THROUGHPUT");
+    }
+
+    public boolean isHashingWorkerProcessEnabled() {
+        return this.configuration.getBoolean("hashing.worker-process", false);
+    }
+
+    public int getHashingQueueSize() {
+        return this.configuration.getInt("hashing.queue-size", 64);
+    }
+
+    public int getHashingMaxMemoryMb() {
+        return this.configuration.getInt("hashing.max-memory-mb", 512);
+    }
+
+    public int getArgon2MemoryKb() {
+        return this.configuration.getInt("hashing.argon2.memory-kb", 65536);
+    }
+
+    public int getArgon2Iterations() {
+        return this.configuration.getInt("hashing.argon2.iterations", 3);
+    }
+
+    public int getArgon2Parallelism() {
+        return this.configuration.getInt("hashing.argon2.parallelism", 4);
+    }
+
+    public boolean isHashingCalibrationEnabled() {
+        return this.configuration.getBoolean("hashing.calibration.enabled", false);
+    }
+
+    public int getCalibrationConcurrentLogins() {
+        return this.configuration.getInt("hashing.calibration.concurrent-logins", 20);
+    }
+
+    public int getCalibrationWindowMillis() {
+        return this.configuration.getInt("hashing.calibration.window-millis", 1000);
+    }
+
+    public int getCalibrationMaxLatencyMillis() {
+        return this.configuration.getInt("hashing.calibration.max-latency-millis", 500);
+    }
+
+    public List<String> getHashingInfo() {
+        return this.configuration.getStringList("messages.hashing-info");
+    }
+
+    public boolean isRehashOnLogin() {
+        return this.configuration.getBoolean("hashing.rehash-on-login", true);
+    }
+
+    public List<String> getHashingBusy() {
+        return this.configuration.getStringList("messages.hashing-busy");
+    }
 }
@@ -64,4 +64,13 @@ public interface AuthenticationManager {
     }
 
     void unauthenticate(@NotNull UUID playerUuid);
+
+    default void forget(@NotNull Player player) {
+        this.forget(player.getUniqueId());
+    }
+
+    /**
+     * Stops tracking a player, whatever state they are in.
+     */
+    void forget(@NotNull UUID playerUuid);
 }
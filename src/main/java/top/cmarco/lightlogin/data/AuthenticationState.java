@@ -0,0 +1,41 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.data;
+
+/**
+ * Where a player is in the authentication process.
+ * A player without any state is not tracked, for example because they are not online.
+ */
+public enum AuthenticationState {
+
+    /**
+     * Logged in or registered in this session.
+     */
+    AUTHENTICATED,
+
+    /**
+     * Has no account yet and must register.
+     */
+    UNREGISTERED,
+
+    /**
+     * Has an account and must log in.
+     */
+    UNLOGINNED
+}
@@ -24,18 +24,47 @@ import org.jetbrains.annotations.NotNull;
 import top.cmarco.lightlogin.LightLoginPlugin;
 import top.cmarco.lightlogin.command.LightLoginCommand;
 
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.UUID;
 
+/**
+ * Kicks players who do not authenticate within the configured time.
+ * Only players still waiting to authenticate are tracked, ordered by the moment they have to be kicked,
+ * so every run only looks at the players whose time is up and never at the rest of the server.
+ * A player's entry is replaced when their timeout starts again; the replaced entry stays in the queue
+ * until its time comes and is then skipped. Must only be used from the server thread.
+ */
 public final class AutoKickManager {
 
     private final LightLoginPlugin plugin;
-    private final Map<UUID, Long> joinedMap = new HashMap<>();
+    private final Map<UUID, PendingLogin> pendingLogins = new HashMap<>();
+    private final PriorityQueue<PendingLogin> deadlines = new PriorityQueue<>(Comparator.comparingLong(PendingLogin::getKickAt));
     private final LoginTimeoutBarManager timeoutBarManager;
     private BukkitTask bukkitTask = null;
 
+    /**
+     * A player waiting to authenticate.
+     */
+    private static final class PendingLogin {
+        private final Player player;
+        private final long joinedAt;
+        private final long kickAt;
+
+        private PendingLogin(@NotNull final Player player, final long joinedAt, final long kickAt) {
+            this.player = player;
+            this.joinedAt = joinedAt;
+            this.kickAt = kickAt;
+        }
+
+        private long getKickAt() {
+            return kickAt;
+        }
+    }
+
     public AutoKickManager(@NotNull final LightLoginPlugin plugin) {
         this.plugin = plugin;
         this.timeoutBarManager = new LoginTimeoutBarManager(plugin.getLightConfiguration());
@@ -46,37 +75,48 @@ public final class AutoKickManager {
             stopAutoKickTask();
         }
 
+        // Players already online, for example after a reload, get their full time from now on.
         final AuthenticationManager authenticationManager = plugin.getAuthenticationManager();
-        double ticks = plugin.getLightConfiguration().getKickAfterSeconds() * 1E3;
-        this.bukkitTask = plugin.getServer().getScheduler().runTaskTimer(plugin, ()-> {
-
-
-            final Collection<? extends Player> onlinePlayers = plugin.getServer().getOnlinePlayers();
-            for (final Player onlinePlayer : onlinePlayers) {
+        for (final Player onlinePlayer : plugin.getServer().getOnlinePlayers()) {
+            if (!authenticationManager.isAuthenticated(onlinePlayer)) {
+                addEntered(onlinePlayer);
+            }
+        }
 
-                if (!joinedMap.containsKey(onlinePlayer.getUniqueId())) {
-                    addEntered(onlinePlayer);
-                    continue;
-                }
+        this.bukkitTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 20L);
+    }
 
-                final long lastEnter = joinedMap.get(onlinePlayer.getUniqueId());
-                final boolean compareTo = (System.currentTimeMillis() - lastEnter) >= ticks;
+    private void tick() {
+        final AuthenticationManager authenticationManager = plugin.getAuthenticationManager();
+        final long now = System.currentTimeMillis();
 
-                if (authenticationManager.isAuthenticated(onlinePlayer)) {
-                    return;
-                }
+        PendingLogin expired;
+        while ((expired = this.deadlines.peek()) != null && expired.kickAt <= now) {
+            this.deadlines.poll();
+            if (!this.pendingLogins.remove(expired.player.getUniqueId(), expired)) {
+                continue;
+            }
 
-                if (!compareTo && plugin.getLightConfiguration().isLoginAnimationEnabled()) {
-                    timeoutBarManager.sendBar(onlinePlayer, lastEnter);
-                    timeoutBarManager.sendSound(onlinePlayer);
-                    return;
-                }
+            if (expired.player.isOnline() && !authenticationManager.isAuthenticated(expired.player)) {
+                expired.player.kickPlayer(LightLoginCommand.colorAndReplace(plugin.getLightConfiguration().getLoginTookTooMuchTime(), plugin));
+            }
+        }
 
-                onlinePlayer.kickPlayer(LightLoginCommand.colorAndReplace(plugin.getLightConfiguration().getLoginTookTooMuchTime(), plugin));
+        if (!plugin.getLightConfiguration().isLoginAnimationEnabled()) {
+            return;
+        }
 
+        final Iterator<PendingLogin> iterator = this.pendingLogins.values().iterator();
+        while (iterator.hasNext()) {
+            final PendingLogin pendingLogin = iterator.next();
+            if (!pendingLogin.player.isOnline() || authenticationManager.isAuthenticated(pendingLogin.player)) {
+                iterator.remove();
+                continue;
             }
 
-        }, 1L, 20L);
+            timeoutBarManager.sendBar(pendingLogin.player, pendingLogin.joinedAt);
+            timeoutBarManager.sendSound(pendingLogin.player);
+        }
     }
 
     public void stopAutoKickTask() {
@@ -88,11 +128,25 @@ public final class AutoKickManager {
         bukkitTask = null;
     }
 
+    /**
+     * Start the login timeout of a player, from the beginning if it was already running.
+     */
     public void addEntered(@NotNull final Player player) {
-        this.joinedMap.put(player.getUniqueId(), System.currentTimeMillis());
+        if (!player.isOnline()) {
+            this.pendingLogins.remove(player.getUniqueId());
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final PendingLogin pendingLogin = new PendingLogin(player, now, now + plugin.getLightConfiguration().getKickAfterSeconds() * 1000L);
+        this.pendingLogins.put(player.getUniqueId(), pendingLogin);
+        this.deadlines.add(pendingLogin);
     }
 
+    /**
+     * Stop tracking a player, because they authenticated or left.
+     */
     public void cleanPlayerData(@NotNull final Player player) {
-        this.joinedMap.remove(player.getUniqueId());
+        this.pendingLogins.remove(player.getUniqueId());
     }
 }
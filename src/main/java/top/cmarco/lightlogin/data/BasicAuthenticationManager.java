@@ -21,23 +21,25 @@ package top.cmarco.lightlogin.data;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import top.cmarco.lightlogin.LightLoginPlugin;
-import top.cmarco.lightlogin.api.AuthenticationCause;
-import top.cmarco.lightlogin.api.PlayerAuthenticateEvent;
 import top.cmarco.lightlogin.command.LightLoginCommand;
 
-import java.util.HashSet;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArraySet;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the authentication state of every tracked player in a single map,
+ * so that a player is always in exactly one state and every transition is a single atomic map operation.
+ * Removing a state only succeeds if the player is still in that state, so a late removal
+ * can never undo a transition that happened in the meantime.
+ */
 public class BasicAuthenticationManager implements AuthenticationManager {
 
     protected final LightLoginPlugin plugin;
 
-    protected final Set<UUID> authenticatedSet = new CopyOnWriteArraySet<>();
-    protected final Set<UUID> unregisteredSet = new CopyOnWriteArraySet<>();
-    protected final Set<UUID> unloginnedSet = new CopyOnWriteArraySet<>();
+    protected final ConcurrentMap<UUID, AuthenticationState> states = new ConcurrentHashMap<>();
 
     private BukkitTask loginMsg = null, registerMsg = null;
 
@@ -54,7 +56,7 @@ public class BasicAuthenticationManager implements AuthenticationManager {
 
         this.loginMsg = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
             plugin.getServer().getOnlinePlayers().stream()
-                    .filter(p -> unloginnedSet.contains(p.getUniqueId()))
+                    .filter(p -> states.get(p.getUniqueId()) == AuthenticationState.UNLOGINNED)
                     .forEach(p -> LightLoginCommand.sendColorPrefixMessages(p, plugin.getLightConfiguration().getLoginMessages(), plugin));
             }
         , 1L, 20L*5L);
@@ -69,7 +71,7 @@ public class BasicAuthenticationManager implements AuthenticationManager {
 
         this.registerMsg = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
                     plugin.getServer().getOnlinePlayers().stream()
-                            .filter(p -> unregisteredSet.contains(p.getUniqueId()))
+                            .filter(p -> states.get(p.getUniqueId()) == AuthenticationState.UNREGISTERED)
                             .forEach(p -> LightLoginCommand.sendColorPrefixMessages(p, plugin.getLightConfiguration().getRegisterMessage(), plugin));
                 }
                 , 1L, 20L*5L);
@@ -77,14 +79,20 @@ public class BasicAuthenticationManager implements AuthenticationManager {
 
     @Override
     public boolean isAuthenticated(@NotNull UUID playerUuid) {
-        return this.authenticatedSet.contains(playerUuid);
+        return this.states.get(playerUuid) == AuthenticationState.AUTHENTICATED;
+    }
+
+    /**
+     * @return The current state of a player, or null if the player is not tracked.
+     */
+    @Nullable
+    public AuthenticationState getState(@NotNull UUID playerUuid) {
+        return this.states.get(playerUuid);
     }
 
     @Override
     public void authenticate(@NotNull UUID playerUuid) {
-        this.authenticatedSet.add(playerUuid);
-        removeUnloginned(playerUuid);
-        removeUnregistered(playerUuid);
+        this.states.put(playerUuid, AuthenticationState.AUTHENTICATED);
     }
 
     @Override
@@ -114,30 +122,31 @@ public class BasicAuthenticationManager implements AuthenticationManager {
 
     @Override
     public void addUnregistered(UUID uuid) {
-        this.unregisteredSet.add(uuid);
-        removeUnloginned(uuid);
-        unauthenticate(uuid);
+        this.states.put(uuid, AuthenticationState.UNREGISTERED);
     }
 
     @Override
     public void removeUnregistered(UUID uuid) {
-        this.unregisteredSet.remove(uuid);
+        this.states.remove(uuid, AuthenticationState.UNREGISTERED);
     }
 
     @Override
     public void addUnloginned(UUID uuid) {
-        this.unloginnedSet.add(uuid);
-        removeUnregistered(uuid);
-        unauthenticate(uuid);
+        this.states.put(uuid, AuthenticationState.UNLOGINNED);
     }
 
     @Override
     public void removeUnloginned(UUID uuid) {
-        this.unloginnedSet.remove(uuid);
+        this.states.remove(uuid, AuthenticationState.UNLOGINNED);
     }
 
     @Override
     public void unauthenticate(@NotNull UUID playerUuid) {
-        this.authenticatedSet.remove(playerUuid);
+        this.states.remove(playerUuid, AuthenticationState.AUTHENTICATED);
+    }
+
+    @Override
+    public void forget(@NotNull UUID playerUuid) {
+        this.states.remove(playerUuid);
     }
 }
@@ -20,16 +20,30 @@ package top.cmarco.lightlogin.data;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.database.LightLoginColumn;
+import top.cmarco.lightlogin.encrypt.Argon2Hash;
 
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * An account as stored in the lightlogin table.
+ * The uuid is kept as two longs and the password and salt in their binary form
+ * (see {@link Argon2Hash#toBinaryPassword(String)}), the text of these columns is only
+ * rebuilt when it is asked for.
+ */
 public class LightLoginDbRow {
-    @NotNull
-    private final String uuid;
+    private final long uuidMost;
 
-    @NotNull
-    private final String passwordHash;
+    private final long uuidLeast;
 
-    @NotNull
-    private final String passwordSalt;
+    // Only set for uuids not in the canonical form, which the two longs cannot give back.
+    @Nullable
+    private final String uuidText;
+
+    private final byte[] password;
+
+    private final byte[] salt;
 
     @Nullable
     private final String email;
@@ -44,27 +58,113 @@ public class LightLoginDbRow {
                            @Nullable String email,
                            long lastLogin,
                            long last_ipv4) {
-        this.uuid = uuid;
-        this.passwordHash = passwordHash;
-        this.passwordSalt = passwordSalt;
+        this(parseUuid(uuid), uuid, Argon2Hash.toBinaryPassword(passwordHash), Argon2Hash.toBinarySalt(passwordSalt), email, lastLogin, last_ipv4);
+    }
+
+    /**
+     * Create a row from its compact form, the arrays are used as they are and must not be changed afterwards.
+     */
+    public LightLoginDbRow(long uuidMost,
+                           long uuidLeast,
+                           byte[] binaryPassword,
+                           byte[] binarySalt,
+                           @Nullable String email,
+                           long lastLogin,
+                           long last_ipv4) {
+        this.uuidMost = uuidMost;
+        this.uuidLeast = uuidLeast;
+        this.uuidText = null;
+        this.password = binaryPassword;
+        this.salt = binarySalt;
         this.email = email;
         this.lastLogin = lastLogin;
         this.last_ipv4 = last_ipv4;
     }
 
+    private LightLoginDbRow(@Nullable UUID parsed,
+                            @NotNull String uuid,
+                            byte[] binaryPassword,
+                            byte[] binarySalt,
+                            @Nullable String email,
+                            long lastLogin,
+                            long last_ipv4) {
+        this.uuidMost = parsed == null ? 0L : parsed.getMostSignificantBits();
+        this.uuidLeast = parsed == null ? 0L : parsed.getLeastSignificantBits();
+        this.uuidText = parsed == null ? uuid : null;
+        this.password = binaryPassword;
+        this.salt = binarySalt;
+        this.email = email;
+        this.lastLogin = lastLogin;
+        this.last_ipv4 = last_ipv4;
+    }
+
+    /**
+     * @return The uuid, or null if it is not written in the canonical lower case form.
+     */
+    @Nullable
+    public static UUID parseUuid(@NotNull String uuid) {
+        if (uuid.length() != 36) {
+            return null;
+        }
+        for (int i = 0; i < 36; i++) {
+            final char c = uuid.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23 ? c != '-' : !((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return null;
+            }
+        }
+        return UUID.fromString(uuid);
+    }
+
     @NotNull
     public String getUuid() {
-        return uuid;
+        return uuidText != null ? uuidText : new UUID(uuidMost, uuidLeast).toString();
+    }
+
+    /**
+     * @return The uuid, or null if this row holds something that is not a uuid.
+     */
+    @Nullable
+    public UUID getUniqueId() {
+        return uuidText != null ? null : new UUID(uuidMost, uuidLeast);
+    }
+
+    public long getUuidMost() {
+        return uuidMost;
+    }
+
+    public long getUuidLeast() {
+        return uuidLeast;
+    }
+
+    /**
+     * @return Whether the uuid is fully held by {@link #getUuidMost()} and {@link #getUuidLeast()}.
+     */
+    public boolean hasCompactUuid() {
+        return uuidText == null;
     }
 
     @NotNull
     public String getPasswordHash() {
-        return passwordHash;
+        return Argon2Hash.passwordText(password);
     }
 
     @NotNull
     public String getPasswordSalt() {
-        return passwordSalt;
+        return Argon2Hash.saltText(salt);
+    }
+
+    /**
+     * @return The binary form of the password column, must not be changed.
+     */
+    public byte[] getBinaryPassword() {
+        return password;
+    }
+
+    /**
+     * @return The binary form of the salt column, must not be changed.
+     */
+    public byte[] getBinarySalt() {
+        return salt;
     }
 
     @Nullable
@@ -80,9 +180,54 @@ public class LightLoginDbRow {
         return last_ipv4;
     }
 
+    /**
+     * @param column The column to read.
+     * @return The value of the column in this row, of the column type.
+     */
+    @Nullable
+    public Object get(@NotNull LightLoginColumn column) {
+        switch (column) {
+            case UUID: return getUuid();
+            case PASSWORD: return getPasswordHash();
+            case SALT: return getPasswordSalt();
+            case EMAIL: return email;
+            case LAST_LOGIN: return lastLogin;
+            case LAST_IPV4: return last_ipv4;
+            default: throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    /**
+     * Copy this row with a single column changed.
+     *
+     * @param column The column to change.
+     * @param value The new value, of the column type.
+     * @return The changed copy.
+     */
+    @NotNull
+    public LightLoginDbRow with(@NotNull LightLoginColumn column, @Nullable Object value) {
+        switch (column) {
+            case UUID: return new LightLoginDbRow((String) Objects.requireNonNull(value), getPasswordHash(), getPasswordSalt(), email, lastLogin, last_ipv4);
+            case PASSWORD: return this.copy(Argon2Hash.toBinaryPassword((String) Objects.requireNonNull(value)), salt, email, lastLogin, last_ipv4);
+            case SALT: return this.copy(password, Argon2Hash.toBinarySalt((String) Objects.requireNonNull(value)), email, lastLogin, last_ipv4);
+            case EMAIL: return this.copy(password, salt, (String) value, lastLogin, last_ipv4);
+            case LAST_LOGIN: return this.copy(password, salt, email, (Long) Objects.requireNonNull(value), last_ipv4);
+            case LAST_IPV4: return this.copy(password, salt, email, lastLogin, (Long) Objects.requireNonNull(value));
+            default: throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    @NotNull
+    private LightLoginDbRow copy(byte[] password, byte[] salt, @Nullable String email, long lastLogin, long last_ipv4) {
+        if (uuidText != null) {
+            return new LightLoginDbRow(null, uuidText, password, salt, email, lastLogin, last_ipv4);
+        }
+        return new LightLoginDbRow(uuidMost, uuidLeast, password, salt, email, lastLogin, last_ipv4);
+    }
+
     @Override
     public String toString() {
-        return "{" + uuid + ", " + passwordHash + ", " + passwordSalt + ", " +
+        return "{" + getUuid() + ", " + getPasswordHash() + ", " + getPasswordSalt() + ", " +
                 (email != null ? email + ", " : "") + lastLogin + ", " + last_ipv4 + "}";
     }
 }
@@ -26,6 +26,9 @@ package top.cmarco.lightlogin.database;
 import org.jetbrains.annotations.NotNull;
 import top.cmarco.lightlogin.LightLoginPlugin;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * An abstract implementation for PluginDatabase.
  */
@@ -33,11 +36,48 @@ public abstract class AbstractPluginDatabase implements PluginDatabase {
 
     protected final LightLoginPlugin plugin;
     protected final DatabaseType databaseType;
+    protected final DatabaseExecutor executor;
 
     protected AbstractPluginDatabase(final @NotNull LightLoginPlugin plugin,
                                      final @NotNull DatabaseType databaseType) {
         this.plugin = plugin;
         this.databaseType = databaseType;
+        final int configuredThreads = plugin.getLightConfiguration().getDatabaseThreads();
+        this.executor = new DatabaseExecutor(configuredThreads > 0 ? configuredThreads : this.defaultThreads(),
+                plugin.getLightConfiguration().isVirtualThreadsEnabled());
+    }
+
+    /**
+     * @return The amount of database threads when the configuration leaves it automatic.
+     */
+    protected int defaultThreads() {
+        return 1;
+    }
+
+    /**
+     * @return The columns of an update that can be written, in declaration order.
+     */
+    @NotNull
+    protected Map<LightLoginColumn, Object> checkColumns(@NotNull Map<LightLoginColumn, Object> columns) {
+        final Map<LightLoginColumn, Object> checked = new EnumMap<>(LightLoginColumn.class);
+        for (final Map.Entry<LightLoginColumn, Object> column : columns.entrySet()) {
+            if (column.getKey() == LightLoginColumn.UUID
+                    || (column.getValue() == null ? column.getKey() != LightLoginColumn.EMAIL : !column.getKey().getColumnType().isInstance(column.getValue()))) {
+                this.plugin.getLogger().warning("WARNING! Passed illegal value type for " + column.getKey() + " equal to " + column.getValue());
+                continue;
+            }
+            checked.put(column.getKey(), column.getValue());
+        }
+        return checked;
+    }
+
+    /**
+     * Finish the queued database work, then close the connection.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        PluginDatabase.super.close();
     }
 
     @Override
@@ -54,6 +94,10 @@ public abstract class AbstractPluginDatabase implements PluginDatabase {
         }
     }
 
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
+
     public DatabaseType getDatabaseType() {
         return databaseType;
     }
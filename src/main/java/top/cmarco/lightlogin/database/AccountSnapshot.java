@@ -0,0 +1,293 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only file of accounts with fixed-width records sorted by uuid, mapped in memory.
+ * Finding an account is a binary search over the mapping, so lookups are served straight
+ * from the page cache without copying the file and without any query.
+ * Passwords and salts are stored in their binary form, so reading a record parses no text.
+ * Accounts that do not fit the fixed fields are simply left out of the file.
+ */
+final class AccountSnapshot {
+
+    static final int RECORD_BYTES = 320;
+
+    private static final int MAGIC = 0x4C4C534E;
+    // Version 2 stores the binary form of the password and salt columns.
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES;
+
+    private static final int MSB = 0;
+    private static final int LSB = 8;
+    private static final int LAST_LOGIN = 16;
+    private static final int LAST_IPV4 = 24;
+    private static final int PASSWORD_LENGTH = 32;
+    private static final int SALT_LENGTH = 34;
+    private static final int EMAIL_LENGTH = 36;
+    private static final int PASSWORD = 40;
+    private static final int SALT = 192;
+    private static final int EMAIL = 256;
+    private static final int NULL_EMAIL = 0xFFFF;
+    private static final byte[] ZEROS = new byte[RECORD_BYTES];
+
+    private static final AccountSnapshot EMPTY = new AccountSnapshot(null, 0, 0L);
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long createdAt;
+
+    private AccountSnapshot(@Nullable final MappedByteBuffer buffer, final int count, final long createdAt) {
+        this.buffer = buffer;
+        this.count = count;
+        this.createdAt = createdAt;
+    }
+
+    @NotNull
+    static AccountSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Map an existing snapshot file.
+     *
+     * @return The snapshot, null if there is no file.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    @Nullable
+    static AccountSnapshot open(@NotNull final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size: " + size);
+            }
+
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+            final int count = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || count < 0
+                    || HEADER_BYTES + (long) count * RECORD_BYTES != size) {
+                throw new IOException("Invalid snapshot file: " + path.getFileName());
+            }
+            // The mapping stays valid after the channel is closed.
+            return new AccountSnapshot(buffer, count, buffer.getLong(16));
+        }
+    }
+
+    int size() {
+        return this.count;
+    }
+
+    long getCreatedAt() {
+        return this.createdAt;
+    }
+
+    /**
+     * @return The index of the account, -1 if it is not in the snapshot.
+     */
+    int find(final long msb, final long lsb) {
+        int low = 0;
+        int high = this.count - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compare(this.msb(middle), this.lsb(middle), msb, lsb);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    long msb(final int index) {
+        return this.buffer.getLong(offset(index) + MSB);
+    }
+
+    long lsb(final int index) {
+        return this.buffer.getLong(offset(index) + LSB);
+    }
+
+    @NotNull
+    LightLoginDbRow read(final int index) {
+        final int offset = offset(index);
+        final int emailLength = Short.toUnsignedInt(this.buffer.getShort(offset + EMAIL_LENGTH));
+        return new LightLoginDbRow(
+                this.buffer.getLong(offset + MSB),
+                this.buffer.getLong(offset + LSB),
+                this.bytes(offset + PASSWORD, Short.toUnsignedInt(this.buffer.getShort(offset + PASSWORD_LENGTH))),
+                this.bytes(offset + SALT, Short.toUnsignedInt(this.buffer.getShort(offset + SALT_LENGTH))),
+                emailLength == NULL_EMAIL ? null : new String(this.bytes(offset + EMAIL, emailLength), StandardCharsets.UTF_8),
+                this.buffer.getLong(offset + LAST_LOGIN),
+                this.buffer.getLong(offset + LAST_IPV4));
+    }
+
+    private byte[] bytes(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        this.buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    private static int offset(final int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    /**
+     * Order of the records, the uuid as an unsigned 128 bit number.
+     */
+    static int compare(final long msb, final long lsb, final long otherMsb, final long otherLsb) {
+        final int comparison = Long.compareUnsigned(msb, otherMsb);
+        return comparison != 0 ? comparison : Long.compareUnsigned(lsb, otherLsb);
+    }
+
+    /**
+     * Write an account as a record.
+     *
+     * @param record A buffer of {@link #RECORD_BYTES} bytes, overwritten entirely.
+     * @return false if the account does not fit a record, the buffer is then left unspecified.
+     */
+    static boolean encode(final long msb, final long lsb, @NotNull final LightLoginDbRow row, @NotNull final ByteBuffer record) {
+        final byte[] password = row.getBinaryPassword();
+        final byte[] salt = row.getBinarySalt();
+        final byte[] email = row.getEmail() == null ? null : row.getEmail().getBytes(StandardCharsets.UTF_8);
+        if (password.length > SALT - PASSWORD || salt.length > EMAIL - SALT || (email != null && email.length > RECORD_BYTES - EMAIL)) {
+            return false;
+        }
+
+        record.clear();
+        record.put(ZEROS).clear();
+        record.putLong(MSB, msb).putLong(LSB, lsb)
+                .putLong(LAST_LOGIN, row.getLastLogin()).putLong(LAST_IPV4, row.getLastIpv4())
+                .putShort(PASSWORD_LENGTH, (short) password.length)
+                .putShort(SALT_LENGTH, (short) salt.length)
+                .putShort(EMAIL_LENGTH, (short) (email == null ? NULL_EMAIL : email.length));
+        record.put(PASSWORD, password).put(SALT, salt);
+        if (email != null) {
+            record.put(EMAIL, email);
+        }
+        return true;
+    }
+
+    /**
+     * @return A view of the record at the index, without copying it.
+     */
+    @NotNull
+    ByteBuffer record(final int index) {
+        return this.buffer.slice(offset(index), RECORD_BYTES);
+    }
+
+    /**
+     * Writes a new snapshot file next to the target and moves it in place once complete,
+     * so a crash while writing never leaves a broken snapshot behind.
+     * The target should not be a file that is currently mapped, not every platform can replace one.
+     * Records must be appended in uuid order.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final ByteBuffer output = ByteBuffer.allocate(RECORD_BYTES * 256);
+        private int count = 0;
+
+        Writer(@NotNull final Path target) throws IOException {
+            this.target = target;
+            this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            this.channel = FileChannel.open(this.temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.output.position(HEADER_BYTES);
+        }
+
+        void append(@NotNull final ByteBuffer record) throws IOException {
+            if (this.count == MAX_RECORDS) {
+                throw new IOException("Too many accounts for a snapshot file.");
+            }
+            if (this.output.remaining() < RECORD_BYTES) {
+                this.drain();
+            }
+            this.output.put(record.duplicate().clear());
+            this.count++;
+        }
+
+        private void drain() throws IOException {
+            this.output.flip();
+            while (this.output.hasRemaining()) {
+                this.channel.write(this.output);
+            }
+            this.output.clear();
+        }
+
+        /**
+         * Finish the file, move it to the target and map it.
+         */
+        @NotNull
+        AccountSnapshot commit() throws IOException {
+            this.drain();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).putInt(this.count).putInt(0).putLong(System.currentTimeMillis());
+            header.clear();
+            this.channel.write(header, 0L);
+            this.channel.force(true);
+            this.channel.close();
+
+            try {
+                Files.move(this.temporary, this.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(this.temporary, this.target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return AccountSnapshot.open(this.target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.channel.isOpen()) {
+                this.channel.close();
+                Files.deleteIfExists(this.temporary);
+            }
+        }
+    }
+}
@@ -0,0 +1,609 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Accounts stored as an append-only log of records, with an in-memory index from uuid to
+ * the offset of the latest record of that account.
+ * Every change appends a whole record, so a crash can at most tear the last record, which is
+ * detected by its checksum and cut off on the next start. A damaged record anywhere else is never
+ * cut off, the log refuses to open instead. Replaced and deleted records stay in
+ * the file until it is compacted, that is rewritten with only the live records.
+ * Record layout: length, crc32, type, uuid (two longs), then for accounts last login,
+ * last address and the password, salt and email strings.
+ * Appending, deleting and compacting must only be done by one thread at a time.
+ */
+final class AppendOnlyLog {
+
+    private static final int MAGIC = 0x4C4C4B56;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    // Offsets inside a record body, which starts right after the length field.
+    private static final int BODY_TYPE = 4;
+    private static final int BODY_MSB = 5;
+    private static final int BODY_LSB = 13;
+    private static final int BODY_LAST_LOGIN = 21;
+    private static final int BODY_LAST_IPV4 = 29;
+    private static final int BODY_STRINGS = 37;
+    private static final int DELETE_BODY_BYTES = BODY_LAST_LOGIN;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private final Path path;
+    private final Path compactPath;
+    private final Logger logger;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Held by scans, so compaction never replaces the file while it is being walked.
+    private final ReentrantReadWriteLock scanLock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> ipCounts = new HashMap<>();
+    private final AtomicLong compactions = new AtomicLong();
+
+    private FileChannel channel = null;
+    private UuidIndex index = new UuidIndex(0);
+    private volatile long end = HEADER_BYTES;
+    private volatile long liveBytes = 0L;
+
+    AppendOnlyLog(@NotNull final Path path, @NotNull final Logger logger) {
+        this.path = path;
+        this.compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        this.logger = logger;
+    }
+
+    /**
+     * Open the log and build the index from it, cutting off a torn last record.
+     *
+     * @throws IOException if a record before the end of the file is damaged.
+     */
+    void open() throws IOException {
+        Files.deleteIfExists(this.compactPath);
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (this.channel.size() < HEADER_BYTES) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            this.channel.truncate(0L);
+            writeFully(this.channel, header, 0L);
+            this.channel.force(true);
+            this.end = HEADER_BYTES;
+            return;
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(this.channel, header, 0L);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unknown file format: " + this.path);
+        }
+
+        final long valid = forEachRecord(this.channel, Long.MAX_VALUE, (position, body) -> {
+            if (body.get(BODY_TYPE) == PUT) {
+                this.index.put(body.getLong(BODY_MSB), body.getLong(BODY_LSB), position);
+            } else {
+                this.index.remove(body.getLong(BODY_MSB), body.getLong(BODY_LSB));
+            }
+        });
+
+        // A second sequential pass over the live records is cheaper than a random read per replaced one.
+        final long[] liveBytes = {0L};
+        forEachRecord(this.channel, valid, (position, body) -> {
+            if (body.get(BODY_TYPE) == PUT && this.index.get(body.getLong(BODY_MSB), body.getLong(BODY_LSB)) == position) {
+                this.ipCounts.merge(body.getLong(BODY_LAST_IPV4), 1, Integer::sum);
+                liveBytes[0] += Integer.BYTES + body.capacity();
+            }
+        });
+        this.liveBytes = liveBytes[0];
+
+        final long size = this.channel.size();
+        if (valid < size) {
+            if (!isTornTail(this.channel, valid, size)) {
+                this.channel.close();
+                this.channel = null;
+                throw new IOException("Damaged record at offset " + valid + " of " + this.path.getFileName()
+                        + ", followed by " + (size - valid) + " more bytes. The file was left untouched, restore it from a backup.");
+            }
+            this.logger.warning("WARNING! Discarding " + (size - valid) + " bytes of an incomplete write at the end of " + this.path.getFileName());
+            this.channel.truncate(valid);
+            this.channel.force(true);
+        }
+        this.end = valid;
+    }
+
+    @Nullable
+    LightLoginDbRow read(final long msb, final long lsb) throws IOException {
+        this.lock.readLock().lock();
+        try {
+            final long offset = this.index.get(msb, lsb);
+            return offset < 0L ? null : decodeRow(this.readBody(offset));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append a record replacing the account, or adding it if it is new.
+     */
+    void put(final long msb, final long lsb, @NotNull final LightLoginDbRow row) throws IOException {
+        final ByteBuffer record = encodeRow(msb, lsb, row);
+        final int length = record.remaining();
+        final long previous = this.offsetOf(msb, lsb);
+        final ByteBuffer previousFixed = previous < 0L ? null : this.readFixed(previous);
+
+        final long offset = this.end;
+        writeFully(this.channel, record, offset);
+        this.end = offset + length;
+
+        this.lock.writeLock().lock();
+        try {
+            this.index.put(msb, lsb, offset);
+            if (previousFixed != null) {
+                this.decrementIp(previousFixed.getLong(Integer.BYTES + BODY_LAST_IPV4));
+                this.liveBytes -= Integer.BYTES + previousFixed.getInt(0);
+            }
+            this.ipCounts.merge(row.getLastIpv4(), 1, Integer::sum);
+            this.liveBytes += length;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a record deleting the account.
+     *
+     * @return false if there was no such account.
+     */
+    boolean delete(final long msb, final long lsb) throws IOException {
+        final long previous = this.offsetOf(msb, lsb);
+        if (previous < 0L) {
+            return false;
+        }
+        final ByteBuffer previousFixed = this.readFixed(previous);
+
+        final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + DELETE_BODY_BYTES);
+        record.putInt(DELETE_BODY_BYTES).putInt(0).put(DELETE).putLong(msb).putLong(lsb);
+        sign(record);
+        record.flip();
+
+        final long offset = this.end;
+        final int length = record.remaining();
+        writeFully(this.channel, record, offset);
+        this.end = offset + length;
+
+        this.lock.writeLock().lock();
+        try {
+            this.index.remove(msb, lsb);
+            this.decrementIp(previousFixed.getLong(Integer.BYTES + BODY_LAST_IPV4));
+            this.liveBytes -= Integer.BYTES + previousFixed.getInt(0);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Make every appended record durable.
+     */
+    void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    private long offsetOf(final long msb, final long lsb) {
+        this.lock.readLock().lock();
+        try {
+            return this.index.get(msb, lsb);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void decrementIp(final long ipv4) {
+        this.ipCounts.computeIfPresent(ipv4, (ip, count) -> count > 1 ? count - 1 : null);
+    }
+
+    int countByIp(final long ipv4) {
+        this.lock.readLock().lock();
+        try {
+            return this.ipCounts.getOrDefault(ipv4, 0);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.index.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walk every live account in file order, reading the file sequentially.
+     * The accounts are the ones live when the scan starts, an account changed while it runs
+     * is still visited once, with the content it had before.
+     *
+     * @return The amount of visited accounts.
+     */
+    long scan(@NotNull final Consumer<? super LightLoginDbRow> consumer) throws IOException {
+        this.scanLock.readLock().lock();
+        try (final FileChannel reader = FileChannel.open(this.path, StandardOpenOption.READ)) {
+            final long[] live;
+            final long end;
+            this.lock.readLock().lock();
+            try {
+                live = this.index.offsets();
+                end = this.end;
+            } finally {
+                this.lock.readLock().unlock();
+            }
+            Arrays.sort(live);
+
+            // Compaction waits for the scan, so the captured offsets stay valid while the file is walked.
+            final int[] next = new int[1];
+            forEachRecord(reader, end, (position, body) -> {
+                if (next[0] < live.length && live[next[0]] == position) {
+                    consumer.accept(decodeRow(body));
+                    next[0]++;
+                }
+            });
+            return next[0];
+        } finally {
+            this.scanLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the replaced and deleted records take more room than allowed.
+     */
+    boolean shouldCompact(final double ratio, final long minBytes) {
+        final long end = this.end;
+        final long dead = end - HEADER_BYTES - this.liveBytes;
+        return end >= minBytes && dead > this.liveBytes * ratio;
+    }
+
+    /**
+     * Rewrite the file with only the live records and replace the old one with it.
+     *
+     * @return false if a scan is running, the compaction should be tried again later.
+     */
+    boolean compact() throws IOException {
+        if (!this.scanLock.writeLock().tryLock()) {
+            return false;
+        }
+
+        try {
+            final UuidIndex compacted = new UuidIndex(this.size());
+            final long[] position = {HEADER_BYTES};
+
+            try (final FileChannel source = FileChannel.open(this.path, StandardOpenOption.READ);
+                 final FileChannel target = FileChannel.open(this.compactPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(target, header, 0L);
+
+                forEachRecord(source, this.end, (offset, body) -> {
+                    final long msb = body.getLong(BODY_MSB);
+                    final long lsb = body.getLong(BODY_LSB);
+                    if (body.get(BODY_TYPE) != PUT || this.offsetOf(msb, lsb) != offset) {
+                        return;
+                    }
+                    final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + body.capacity());
+                    record.putInt(body.capacity()).put(body.duplicate().clear());
+                    record.flip();
+                    writeFully(target, record, position[0]);
+                    compacted.put(msb, lsb, position[0]);
+                    position[0] += record.capacity();
+                });
+                target.force(true);
+            }
+
+            this.lock.writeLock().lock();
+            try {
+                this.channel.close();
+                try {
+                    try {
+                        Files.move(this.compactPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException exception) {
+                        Files.move(this.compactPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } finally {
+                    this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                this.index = compacted;
+                this.end = position[0];
+                this.liveBytes = position[0] - HEADER_BYTES;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            syncDirectory(this.path.toAbsolutePath().getParent());
+            this.compactions.incrementAndGet();
+            return true;
+        } finally {
+            this.scanLock.writeLock().unlock();
+        }
+    }
+
+    void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.channel != null) {
+                this.channel.force(true);
+                this.channel.close();
+                this.channel = null;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    long getFileBytes() {
+        return this.end;
+    }
+
+    long getLiveBytes() {
+        return this.liveBytes;
+    }
+
+    long getIndexBytes() {
+        this.lock.readLock().lock();
+        try {
+            return this.index.getRetainedBytes();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    long getCompactions() {
+        return this.compactions.get();
+    }
+
+    /* ------------------------------ */
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long position, @NotNull ByteBuffer body) throws IOException;
+    }
+
+    /**
+     * Tell whether the bytes after the last complete record are a write that was cut short, rather
+     * than a damaged record with more records behind it. That is the case when the record there does
+     * not fit in the file, ends right at its end, or when only zeroes follow, as left by a file
+     * system that grew the file before the data reached the disk.
+     */
+    private static boolean isTornTail(@NotNull final FileChannel source, final long position, final long size) throws IOException {
+        if (size - position < Integer.BYTES) {
+            return true;
+        }
+
+        final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(source, length, position);
+        final int bodyLength = length.getInt(0);
+        if (bodyLength >= DELETE_BODY_BYTES && bodyLength <= MAX_RECORD_BYTES) {
+            return position + Integer.BYTES + bodyLength >= size;
+        }
+
+        final ByteBuffer tail = ByteBuffer.allocate(1 << 16);
+        for (long offset = position; offset < size; offset += tail.capacity()) {
+            tail.clear().limit((int) Math.min(tail.capacity(), size - offset));
+            readFully(source, tail, offset);
+            for (int i = 0; i < tail.limit(); i++) {
+                if (tail.get(i) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the records of a file one after another, until the limit or the first torn record.
+     *
+     * @return The position right after the last complete record.
+     */
+    private static long forEachRecord(@NotNull final FileChannel source, final long limit, @NotNull final RecordVisitor visitor) throws IOException {
+        long position = HEADER_BYTES;
+        source.position(HEADER_BYTES);
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(source), 1 << 16));
+        final CRC32 crc = new CRC32();
+
+        while (position < limit) {
+            final byte[] body;
+            try {
+                final int length = input.readInt();
+                if (length < DELETE_BODY_BYTES || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                body = new byte[length];
+                input.readFully(body);
+            } catch (EOFException exception) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(body, Integer.BYTES, body.length - Integer.BYTES);
+            final ByteBuffer buffer = ByteBuffer.wrap(body);
+            if (buffer.getInt(0) != (int) crc.getValue()) {
+                break;
+            }
+
+            visitor.visit(position, buffer);
+            position += Integer.BYTES + body.length;
+        }
+        return position;
+    }
+
+    /**
+     * @return The length field and the fixed size fields of the record at the offset.
+     */
+    @NotNull
+    private ByteBuffer readFixed(final long offset) throws IOException {
+        final ByteBuffer fixed = ByteBuffer.allocate(Integer.BYTES + BODY_STRINGS);
+        readFully(this.channel, fixed, offset);
+        return fixed;
+    }
+
+    @NotNull
+    private ByteBuffer readBody(final long offset) throws IOException {
+        final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(this.channel, length, offset);
+        final int bodyLength = length.getInt(0);
+        if (bodyLength < DELETE_BODY_BYTES || bodyLength > MAX_RECORD_BYTES) {
+            throw new IOException("Corrupted record at offset " + offset);
+        }
+
+        final ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        readFully(this.channel, body, offset + Integer.BYTES);
+        final CRC32 crc = new CRC32();
+        crc.update(body.array(), Integer.BYTES, bodyLength - Integer.BYTES);
+        if (body.getInt(0) != (int) crc.getValue()) {
+            throw new IOException("Corrupted record at offset " + offset);
+        }
+        return body;
+    }
+
+    @NotNull
+    private static ByteBuffer encodeRow(final long msb, final long lsb, @NotNull final LightLoginDbRow row) {
+        final byte[] password = row.getPasswordHash().getBytes(StandardCharsets.UTF_8);
+        final byte[] salt = row.getPasswordSalt().getBytes(StandardCharsets.UTF_8);
+        final byte[] email = row.getEmail() == null ? null : row.getEmail().getBytes(StandardCharsets.UTF_8);
+
+        final int bodyLength = BODY_STRINGS + 3 * Short.BYTES + password.length + salt.length + (email == null ? 0 : email.length);
+        final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bodyLength);
+        record.putInt(bodyLength).putInt(0).put(PUT).putLong(msb).putLong(lsb)
+                .putLong(row.getLastLogin()).putLong(row.getLastIpv4());
+        putString(record, password);
+        putString(record, salt);
+        putString(record, email);
+        sign(record);
+        record.flip();
+        return record;
+    }
+
+    @NotNull
+    private static LightLoginDbRow decodeRow(@NotNull final ByteBuffer body) {
+        final String uuid = new UUID(body.getLong(BODY_MSB), body.getLong(BODY_LSB)).toString();
+        final long lastLogin = body.getLong(BODY_LAST_LOGIN);
+        final long lastIpv4 = body.getLong(BODY_LAST_IPV4);
+        final ByteBuffer strings = body.duplicate().position(BODY_STRINGS);
+        final String password = getString(strings);
+        final String salt = getString(strings);
+        final String email = getString(strings);
+        return new LightLoginDbRow(uuid, password == null ? "" : password, salt == null ? "" : salt, email, lastLogin, lastIpv4);
+    }
+
+    private static void putString(@NotNull final ByteBuffer buffer, @Nullable final byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) NULL_STRING);
+            return;
+        }
+        if (value.length >= NULL_STRING) {
+            throw new IllegalArgumentException("Value too long to be stored: " + value.length + " bytes");
+        }
+        buffer.putShort((short) value.length).put(value);
+    }
+
+    @Nullable
+    private static String getString(@NotNull final ByteBuffer buffer) {
+        final int length = Short.toUnsignedInt(buffer.getShort());
+        if (length == NULL_STRING) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the checksum of a record that is still being written, right after its length.
+     */
+    private static void sign(@NotNull final ByteBuffer record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, record.position() - 2 * Integer.BYTES);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+    }
+
+    private static void readFully(@NotNull final FileChannel channel, @NotNull final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(@NotNull final FileChannel channel, @NotNull final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Make a rename in the directory durable, where the platform allows opening a directory.
+     */
+    private static void syncDirectory(@Nullable final Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException exception) {
+            // Not supported on every platform, the rename is still done.
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-through cache of account rows in front of another PluginDatabase.
+ * Rows are kept for the configured time since their last access, so a player
+ * rejoining shortly after leaving is served without any database round-trip.
+ * Writes go to the cache and the backend at the same time, concurrent lookups of the
+ * same account share a single backend query, and unregistered accounts are never cached.
+ */
+public final class CachingPluginDatabase extends ForwardingPluginDatabase {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final ConcurrentHashMap<String, CachedRow> rows = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<LightLoginDbRow>> loading = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingPluginDatabase(@NotNull final LightLoginPlugin plugin, @NotNull final PluginDatabase delegate) {
+        super(delegate);
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        this.ttlMillis = Math.max(1L, configuration.getDatabaseCacheTtlSeconds()) * 1000L;
+        this.maxEntries = Math.max(16, configuration.getDatabaseCacheMaxEntries());
+    }
+
+    private static final class CachedRow {
+        private final LightLoginDbRow row;
+        private volatile long lastAccess;
+
+        private CachedRow(@NotNull final LightLoginDbRow row, final long lastAccess) {
+            this.row = row;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        final long now = System.currentTimeMillis();
+        final CachedRow cached = this.rows.get(uuid);
+
+        if (cached != null) {
+            if (now - cached.lastAccess <= this.ttlMillis) {
+                cached.lastAccess = now;
+                this.hits.incrementAndGet();
+                return CompletableFuture.completedFuture(cached.row);
+            }
+            if (this.rows.remove(uuid, cached)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+
+        this.misses.incrementAndGet();
+
+        final CompletableFuture<LightLoginDbRow> created = new CompletableFuture<>();
+        final CompletableFuture<LightLoginDbRow> pending = this.loading.putIfAbsent(uuid, created);
+        if (pending != null) {
+            return pending;
+        }
+
+        super.delegate.searchRowFromPK(uuid).whenComplete((row, throwable) -> {
+            // A write for this account while loading removes the pending load, the loaded row is stale then.
+            if (this.loading.remove(uuid, created) && throwable == null && row != null) {
+                this.cache(row);
+            }
+
+            if (throwable != null) {
+                created.completeExceptionally(throwable);
+            } else {
+                created.complete(row);
+            }
+        });
+
+        return created;
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
+        final String uuid = row.getUuid();
+        this.loading.remove(uuid);
+        this.rows.remove(uuid);
+
+        return super.delegate.addRow(row).thenApply(addedRow -> {
+            if (addedRow != null) {
+                this.cache(addedRow);
+            }
+            return addedRow;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+        this.applyUpdate(uuid, Map.of(column, columnValue));
+
+        return super.delegate.updateRow(uuid, column, columnValue).whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                this.rows.remove(uuid);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        this.applyUpdate(uuid, columns);
+
+        return super.delegate.updateColumns(uuid, columns).whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                this.rows.remove(uuid);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        updates.forEach(this::applyUpdate);
+
+        return super.delegate.updateRows(updates).whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                updates.keySet().forEach(this.rows::remove);
+            }
+        });
+    }
+
+    /**
+     * Apply a write to the cached row, or drop the row when the write cannot be applied.
+     */
+    private void applyUpdate(@NotNull final String uuid, @NotNull final Map<LightLoginColumn, Object> columns) {
+        this.loading.remove(uuid);
+        this.rows.computeIfPresent(uuid, (key, cached) -> {
+            LightLoginDbRow row = cached.row;
+            for (final Map.Entry<LightLoginColumn, Object> column : columns.entrySet()) {
+                if (!column.getKey().getColumnType().isInstance(column.getValue())) {
+                    return null;
+                }
+                row = row.with(column.getKey(), column.getValue());
+            }
+            return new CachedRow(row, cached.lastAccess);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        this.loading.remove(uuid);
+        this.rows.remove(uuid);
+        return super.delegate.deleteRow(uuid);
+    }
+
+    /**
+     * Forget a cached account, the next lookup will query the database.
+     *
+     * @param uuid The account uuid.
+     */
+    public void invalidate(@NotNull final String uuid) {
+        this.loading.remove(uuid);
+        this.rows.remove(uuid);
+    }
+
+    public void invalidateAll() {
+        this.loading.clear();
+        this.rows.clear();
+    }
+
+    private void cache(@NotNull final LightLoginDbRow row) {
+        this.rows.put(row.getUuid(), new CachedRow(row, System.currentTimeMillis()));
+
+        if (this.rows.size() > this.maxEntries && this.evictionLock.tryLock()) {
+            try {
+                this.evict();
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drop the expired rows, then the least recently used ones until the cache
+     * is back to 90% of its capacity, so that eviction does not run on every insert.
+     */
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        final List<EvictionCandidate> alive = new ArrayList<>(this.rows.size());
+
+        for (final Map.Entry<String, CachedRow> entry : this.rows.entrySet()) {
+            final CachedRow cached = entry.getValue();
+            final long lastAccess = cached.lastAccess;
+            if (now - lastAccess > this.ttlMillis) {
+                if (this.rows.remove(entry.getKey(), cached)) {
+                    this.evictions.incrementAndGet();
+                }
+            } else {
+                alive.add(new EvictionCandidate(entry.getKey(), cached, lastAccess));
+            }
+        }
+
+        final int target = (this.maxEntries * 9) / 10;
+        if (alive.size() <= target) {
+            return;
+        }
+
+        // Sorted on a snapshot of the access time, as it keeps changing while we sort.
+        alive.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+        for (int i = 0; i < alive.size() - target; i++) {
+            final EvictionCandidate candidate = alive.get(i);
+            if (this.rows.remove(candidate.uuid, candidate.cached)) {
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class EvictionCandidate {
+        private final String uuid;
+        private final CachedRow cached;
+        private final long lastAccess;
+
+        private EvictionCandidate(@NotNull final String uuid, @NotNull final CachedRow cached, final long lastAccess) {
+            this.uuid = uuid;
+            this.cached = cached;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    public int getSize() {
+        return this.rows.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRatio() {
+        final long hits = this.hits.get();
+        final long total = hits + this.misses.get();
+        return total == 0L ? 0d : hits / (double) total;
+    }
+}
@@ -28,10 +28,31 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import top.cmarco.lightlogin.LightLoginPlugin;
 import top.cmarco.lightlogin.configuration.LightConfiguration;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+import top.cmarco.lightlogin.encrypt.Argon2Hash;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 public abstract class CredentialPluginDatabase extends AbstractPluginDatabase {
 
@@ -42,6 +63,8 @@ public abstract class CredentialPluginDatabase extends AbstractPluginDatabase {
     protected final String address;
     protected final String databaseName;
     protected final int port;
+    protected final int fetchSize;
+    protected final boolean binarySchema;
 
     /* ------------------------------ */
 
@@ -56,6 +79,8 @@ public abstract class CredentialPluginDatabase extends AbstractPluginDatabase {
         this.address = conf.getAddress();
         this.databaseName = conf.getDatabaseName();
         this.port = conf.getPort();
+        this.fetchSize = Math.max(1, conf.getDatabaseFetchSize());
+        this.binarySchema = conf.isDatabaseBinarySchema();
     }
 
 
@@ -91,6 +116,708 @@ public abstract class CredentialPluginDatabase extends AbstractPluginDatabase {
         }
     }
 
+    /**
+     * A unit of work that needs a database connection.
+     */
+    @FunctionalInterface
+    protected interface ConnectionFunction<T> {
+        T apply(@NotNull Connection connection) throws SQLException;
+    }
+
+    /**
+     * Run an operation with a connection to the database.
+     * This implementation shares the single connection opened by {@link #connect()},
+     * pooled databases override it to borrow a connection for the duration of the operation.
+     *
+     * @param function The operation, must not keep the connection after returning.
+     * @return The result of the operation.
+     * @throws SQLException If there is no connection or the operation failed.
+     */
+    protected <T> T withConnection(@NotNull ConnectionFunction<T> function) throws SQLException {
+        final Connection connection = this.connection;
+        if (connection == null) {
+            throw new SQLException("Not connected to the database.");
+        }
+        return function.apply(connection);
+    }
+
+    /**
+     * A unit of work that runs a prepared statement.
+     */
+    @FunctionalInterface
+    protected interface StatementFunction<T> {
+        T apply(@NotNull PreparedStatement statement) throws SQLException;
+    }
+
+    /**
+     * Run an operation with a prepared statement for the given SQL.
+     * This implementation prepares it on a connection from {@link #withConnection(ConnectionFunction)}
+     * and closes it afterwards, which lets pooled drivers reuse their own per-connection statement cache.
+     * Databases owning a long lived connection may override it to keep their statements prepared.
+     *
+     * @param sql The statement SQL.
+     * @param function The operation, must not keep the statement after returning.
+     * @return The result of the operation.
+     * @throws SQLException If there is no connection or the operation failed.
+     */
+    protected <T> T withStatement(@NotNull String sql, @NotNull StatementFunction<T> function) throws SQLException {
+        return this.withConnection(connection -> {
+            try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+                return function.apply(statement);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #withStatement(String, StatementFunction)}, for statements that only read.
+     * Databases with dedicated read connections override it to keep lookups away from writes.
+     */
+    protected <T> T withReadStatement(@NotNull String sql, @NotNull StatementFunction<T> function) throws SQLException {
+        return this.withStatement(sql, function);
+    }
+
+    /**
+     * Run a query that only reads, off the calling thread.
+     */
+    @NotNull
+    protected <T> CompletableFuture<T> supplyRead(@NotNull Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, this.executor);
+    }
+
+    /**
+     * Run a query that changes data, off the calling thread.
+     * The returned future completes once the change is committed.
+     */
+    @NotNull
+    protected <T> CompletableFuture<T> supplyWrite(@NotNull Supplier<T> update) {
+        return CompletableFuture.supplyAsync(update, this.executor);
+    }
+
+    private final static String SELECT_WHERE = "SELECT * FROM lightlogin WHERE uuid=?;";
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        return this.supplyRead(() -> {
+            try {
+                return this.withReadStatement(SELECT_WHERE, statement -> {
+                    bindColumn(statement, 1, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? readRow(resultSet, this.binarySchema) : null;
+                    }
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database search for " + uuid);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    // Every UPDATE this class can issue, built once instead of on every call.
+    private static final Map<LightLoginColumn, String> UPDATE_COLUMN = new EnumMap<>(LightLoginColumn.class);
+    private static final Map<Set<LightLoginColumn>, String> UPDATE_COLUMNS = new HashMap<>();
+
+    static {
+        final LightLoginColumn[] columns = LightLoginColumn.values();
+        for (int mask = 1; mask < (1 << columns.length); mask++) {
+            final Set<LightLoginColumn> set = EnumSet.noneOf(LightLoginColumn.class);
+            for (int i = 0; i < columns.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    set.add(columns[i]);
+                }
+            }
+            if (set.contains(LightLoginColumn.UUID)) {
+                continue;
+            }
+            final String sql = buildUpdateColumnsSql(set);
+            UPDATE_COLUMNS.put(set, sql);
+            if (set.size() == 1) {
+                UPDATE_COLUMN.put(set.iterator().next(), sql);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+
+        if (!column.getColumnType().isInstance(columnValue)) {
+            super.plugin.getLogger().warning("WARNING! Passed illegal value type for " + column + "equal to " + columnValue);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final String sql = UPDATE_COLUMN.get(column);
+        if (sql == null) {
+            super.plugin.getLogger().warning("WARNING! Illegal lightlogin column value passed.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.supplyWrite(() -> {
+            try {
+                this.withStatement(sql, statement -> {
+                    bindColumn(statement, 1, column, columnValue, this.binarySchema);
+                    bindColumn(statement, 2, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    return statement.executeUpdate();
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database update for ");
+                super.plugin.getLogger().warning("uuid=" + uuid + " column="+column + " value=" + columnValue);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        final Map<LightLoginColumn, Object> checked = this.checkColumns(columns);
+        if (checked.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.supplyWrite(() -> {
+            try {
+                this.withStatement(updateColumnsSql(checked.keySet()), statement -> {
+                    int index = 1;
+                    for (final Map.Entry<LightLoginColumn, Object> column : checked.entrySet()) {
+                        bindColumn(statement, index++, column.getKey(), column.getValue(), this.binarySchema);
+                    }
+                    bindColumn(statement, index, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    return statement.executeUpdate();
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database update for ");
+                super.plugin.getLogger().warning("uuid=" + uuid + " columns=" + checked.keySet());
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        if (updates.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Rows changing the same columns share one prepared statement and are sent as a single batch.
+        final Map<Set<LightLoginColumn>, Map<String, Map<LightLoginColumn, Object>>> groups = new HashMap<>();
+        for (final Map.Entry<String, ? extends Map<LightLoginColumn, Object>> update : updates.entrySet()) {
+            final Map<LightLoginColumn, Object> columns = this.checkColumns(update.getValue());
+            if (!columns.isEmpty()) {
+                groups.computeIfAbsent(EnumSet.copyOf(columns.keySet()), key -> new HashMap<>()).put(update.getKey(), columns);
+            }
+        }
+
+        return this.supplyWrite(() -> {
+            try {
+                this.withConnection(connection -> {
+                    // Inside a transaction that is already open, only this batch is rolled back on failure.
+                    final boolean autoCommit = connection.getAutoCommit();
+                    final Savepoint savepoint = autoCommit ? null : connection.setSavepoint();
+                    connection.setAutoCommit(false);
+                    try {
+                        for (final Map.Entry<Set<LightLoginColumn>, Map<String, Map<LightLoginColumn, Object>>> group : groups.entrySet()) {
+                            try (final PreparedStatement statement = connection.prepareStatement(updateColumnsSql(group.getKey()))) {
+                                for (final Map.Entry<String, Map<LightLoginColumn, Object>> row : group.getValue().entrySet()) {
+                                    int index = 1;
+                                    for (final Map.Entry<LightLoginColumn, Object> column : row.getValue().entrySet()) {
+                                        bindColumn(statement, index++, column.getKey(), column.getValue(), this.binarySchema);
+                                    }
+                                    bindColumn(statement, index, LightLoginColumn.UUID, row.getKey(), this.binarySchema);
+                                    statement.addBatch();
+                                }
+                                statement.executeBatch();
+                            }
+                        }
+                        if (savepoint == null) {
+                            connection.commit();
+                        } else {
+                            connection.releaseSavepoint(savepoint);
+                        }
+                    } catch (SQLException exception) {
+                        if (savepoint == null) {
+                            connection.rollback();
+                        } else {
+                            connection.rollback(savepoint);
+                        }
+                        throw exception;
+                    } finally {
+                        connection.setAutoCommit(autoCommit);
+                    }
+                    return null;
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database batch update of " + updates.size() + " rows!");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return An UPDATE statement setting the given columns, in their declaration order, for one uuid.
+     */
+    @NotNull
+    protected static String updateColumnsSql(@NotNull Set<LightLoginColumn> columns) {
+        final String sql = UPDATE_COLUMNS.get(columns);
+        return sql != null ? sql : buildUpdateColumnsSql(columns);
+    }
+
+    @NotNull
+    private static String buildUpdateColumnsSql(@NotNull Set<LightLoginColumn> columns) {
+        final StringBuilder builder = new StringBuilder("UPDATE lightlogin SET ");
+        boolean first = true;
+        for (final LightLoginColumn column : columns) {
+            if (!first) {
+                builder.append(", ");
+            }
+            builder.append(column.getName()).append("=?");
+            first = false;
+        }
+        return builder.append(" WHERE uuid=?;").toString();
+    }
+
+    /**
+     * Set a column value on a statement, converting it to its binary form for the binary schema.
+     *
+     * @throws SQLException If the value cannot be stored, like a uuid that is not one in the binary schema.
+     */
+    protected static void bindColumn(@NotNull PreparedStatement statement, int index, @NotNull LightLoginColumn column,
+                                     @Nullable Object value, boolean binary) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else if (column.getColumnType() == Long.class) {
+            statement.setLong(index, (Long) value);
+        } else if (!binary) {
+            statement.setString(index, (String) value);
+        } else {
+            switch (column) {
+                case UUID: {statement.setBytes(index, uuidBytes((String) value)); break;}
+                case PASSWORD: {statement.setBytes(index, Argon2Hash.toBinaryPassword((String) value)); break;}
+                case SALT: {statement.setBytes(index, Argon2Hash.toBinarySalt((String) value)); break;}
+                default: {statement.setString(index, (String) value); break;}
+            }
+        }
+    }
+
+    /**
+     * Set all the columns of a row on a statement, in table order.
+     *
+     * @return The index after the last column.
+     */
+    protected static int bindRow(@NotNull PreparedStatement statement, int index, @NotNull LightLoginDbRow row, boolean binary) throws SQLException {
+        bindRowUuid(statement, index, row, binary);
+        return bindRowValues(statement, index + 1, row, binary);
+    }
+
+    private static void bindRowUuid(@NotNull PreparedStatement statement, int index, @NotNull LightLoginDbRow row, boolean binary) throws SQLException {
+        if (binary && row.hasCompactUuid()) {
+            statement.setBytes(index, uuidBytes(row.getUuidMost(), row.getUuidLeast()));
+        } else {
+            bindColumn(statement, index, LightLoginColumn.UUID, row.getUuid(), binary);
+        }
+    }
+
+    /**
+     * Set all the columns of a row but the uuid on a statement, in table order.
+     *
+     * @return The index after the last column.
+     */
+    protected static int bindRowValues(@NotNull PreparedStatement statement, int index, @NotNull LightLoginDbRow row, boolean binary) throws SQLException {
+        if (binary) {
+            statement.setBytes(index++, row.getBinaryPassword());
+            statement.setBytes(index++, row.getBinarySalt());
+        } else {
+            statement.setString(index++, row.getPasswordHash());
+            statement.setString(index++, row.getPasswordSalt());
+        }
+        statement.setString(index++, row.getEmail());
+        statement.setLong(index++, row.getLastLogin());
+        statement.setLong(index++, row.getLastIpv4());
+        return index;
+    }
+
+    private static byte[] uuidBytes(@NotNull String uuid) throws SQLException {
+        try {
+            final UUID parsed = UUID.fromString(uuid);
+            return uuidBytes(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+        } catch (IllegalArgumentException exception) {
+            throw new SQLException("The binary schema only stores uuids, got " + uuid);
+        }
+    }
+
+    /**
+     * @return The uuid as 16 big endian bytes, which sort like its text form.
+     */
+    private static byte[] uuidBytes(long most, long least) {
+        final byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (most >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (least >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    private static long uuidHalf(byte[] bytes, int offset) {
+        long half = 0L;
+        for (int i = 0; i < 8; i++) {
+            half = (half << 8) | (bytes[offset + i] & 0xFFL);
+        }
+        return half;
+    }
+
+    private static final String DELETE_ROW = "DELETE FROM lightlogin WHERE uuid=?;";
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        return this.supplyWrite(() -> {
+            try {
+                return this.withStatement(DELETE_ROW, statement -> {
+                    bindColumn(statement, 1, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    return statement.executeUpdate() != 0;
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database delete row for " + uuid);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    private static final String SEARCH_CRITERIA = "SELECT * FROM lightlogin";
+    private static final String COUNT_CRITERIA = "SELECT COUNT(*) FROM lightlogin";
+
+    // The criteria SQL is the same on every supported database, so these are shared.
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRows(@NotNull RowCriteria criteria) {
+        return this.supplyRead(() -> {
+            final List<LightLoginDbRow> list = new ArrayList<>();
+            try {
+                this.selectRows(criteria, list::add);
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database search with criteria failed: " + criteria.toSql());
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                return null;
+            }
+            return list;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
+        final List<LightLoginDbRow> list = new ArrayList<>();
+        return this.forEachRow(RowCriteria.where(), row -> {
+            if (predicate.test(row)) {
+                list.add(row);
+            }
+        }).thenApply(visited -> visited == null ? null : list);
+    }
+
+    @Override
+    public CompletableFuture<Long> forEachRow(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer) {
+        return this.supplyRead(() -> {
+            final LightLoginDbRow[] last = new LightLoginDbRow[1];
+            long visited = 0L;
+
+            try {
+                while (true) {
+                    final RowCriteria page = criteria.copyConditions();
+                    if (last[0] != null) {
+                        page.greaterThan(LightLoginColumn.UUID, last[0].getUuid());
+                    }
+                    page.orderBy(LightLoginColumn.UUID, true).limit(this.fetchSize);
+
+                    final int read = this.selectRows(page, row -> {
+                        last[0] = row;
+                        consumer.accept(row);
+                    });
+
+                    visited += read;
+                    if (read < this.fetchSize) {
+                        return visited;
+                    }
+                }
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database row iteration failed after " + visited + " rows!");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Run a criteria query on the calling thread, handing each row over as soon as it is read.
+     *
+     * @return The amount of rows read.
+     */
+    private int selectRows(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer) throws SQLException {
+        return this.withReadStatement(SEARCH_CRITERIA + criteria.toSql() + ";", statement -> {
+            statement.setFetchSize(this.fetchSize);
+            criteria.bind(statement, 1, this::bindValue);
+            int read = 0;
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    consumer.accept(readRow(resultSet, this.binarySchema));
+                    read++;
+                }
+            }
+            return read;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> countRows(@NotNull RowCriteria criteria) {
+        final String query = COUNT_CRITERIA + criteria.toWhereSql() + ";";
+        return this.supplyRead(() -> {
+            try {
+                return this.withReadStatement(query, statement -> {
+                    criteria.bind(statement, 1, this::bindValue);
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? resultSet.getInt(1) : 0;
+                    }
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database count with criteria failed: " + query);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    private static final String BENCHMARK_TABLE = "lightlogin_benchmark";
+    private static final String BENCHMARK_SELECT = "SELECT * FROM " + BENCHMARK_TABLE + " WHERE uuid=?;";
+    private static final String BENCHMARK_UPDATE = "UPDATE " + BENCHMARK_TABLE + " SET last_login=? WHERE uuid=?;";
+    private static final String BENCHMARK_INSERT = "INSERT INTO " + BENCHMARK_TABLE + "(uuid, password, salt, email, last_login, last_ipv4) VALUES (?, ?, ?, ?, ?, ?);";
+
+    /**
+     * Create a scratch table with the schema of lightlogin holding only the given row, for benchmarks.
+     * A table left behind by an interrupted run is dropped first, the accounts are never touched.
+     *
+     * @return A future completed exceptionally if the table could not be created.
+     */
+    public CompletableFuture<Void> createBenchmarkTable(@NotNull LightLoginDbRow row) {
+        return this.supplyWrite(() -> {
+            try {
+                this.withConnection(connection -> {
+                    try (final Statement statement = connection.createStatement()) {
+                        statement.execute("DROP TABLE IF EXISTS " + BENCHMARK_TABLE + ";");
+                        statement.execute(this.createTableSql(BENCHMARK_TABLE, this.binarySchema));
+                    }
+                    return null;
+                });
+                this.withStatement(BENCHMARK_INSERT, statement -> {
+                    bindRow(statement, 1, row, this.binarySchema);
+                    return statement.executeUpdate();
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Could not create the " + BENCHMARK_TABLE + " table.");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The lookup of {@link #searchRowFromPK(String)}, against the benchmark table.
+     */
+    public CompletableFuture<LightLoginDbRow> benchmarkLookup(@NotNull String uuid) {
+        return this.supplyRead(() -> {
+            try {
+                return this.withReadStatement(BENCHMARK_SELECT, statement -> {
+                    bindColumn(statement, 1, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    try (final ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? readRow(resultSet, this.binarySchema) : null;
+                    }
+                });
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+        });
+    }
+
+    /**
+     * The last login update of {@link #updateRow(String, LightLoginColumn, Object)}, against the benchmark table.
+     */
+    public CompletableFuture<Void> benchmarkUpdate(@NotNull String uuid, long lastLogin) {
+        return this.supplyWrite(() -> {
+            try {
+                this.withStatement(BENCHMARK_UPDATE, statement -> {
+                    statement.setLong(1, lastLogin);
+                    bindColumn(statement, 2, LightLoginColumn.UUID, uuid, this.binarySchema);
+                    return statement.executeUpdate();
+                });
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Drop the table created by {@link #createBenchmarkTable(LightLoginDbRow)}.
+     */
+    public CompletableFuture<Void> dropBenchmarkTable() {
+        return this.supplyWrite(() -> {
+            try {
+                this.withConnection(connection -> {
+                    try (final Statement statement = connection.createStatement()) {
+                        statement.execute("DROP TABLE IF EXISTS " + BENCHMARK_TABLE + ";");
+                    }
+                    return null;
+                });
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Could not drop the " + BENCHMARK_TABLE + " table.");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                throw new CompletionException(exception);
+            }
+            return null;
+        });
+    }
+
+    private void bindValue(@NotNull PreparedStatement statement, int index, @NotNull LightLoginColumn column, @NotNull Object value) throws SQLException {
+        bindColumn(statement, index, column, value, this.binarySchema);
+    }
+
+    /**
+     * Read the row the result set currently points at.
+     *
+     * @param binary Whether the row comes from a table with the binary schema.
+     */
+    @NotNull
+    protected static LightLoginDbRow readRow(@NotNull ResultSet resultSet, boolean binary) throws SQLException {
+        if (binary) {
+            final byte[] uuid = resultSet.getBytes(1);
+            final byte[] password = resultSet.getBytes(2);
+            final byte[] salt = resultSet.getBytes(3);
+            if (uuid == null || uuid.length != 16 || password == null || password.length == 0 || salt == null || salt.length == 0) {
+                throw new SQLException("Invalid binary row in the lightlogin table.");
+            }
+            return new LightLoginDbRow(uuidHalf(uuid, 0), uuidHalf(uuid, 8), password, salt,
+                    resultSet.getString(4), resultSet.getLong(5), resultSet.getLong(6));
+        }
+
+        final String uuid = resultSet.getString(1);
+        final String hash = resultSet.getString(2);
+        final String salt = resultSet.getString(3);
+        final String email = resultSet.getString(4);
+        final long lastLogin = resultSet.getLong(5);
+        final long lastIpv4 = resultSet.getLong(6);
+        return new LightLoginDbRow(uuid, hash, salt, email, lastLogin, lastIpv4);
+    }
+
+    /**
+     * @param table The name of the table to create.
+     * @param binary Whether to create it with the binary schema, where the uuid, password and salt
+     *               columns hold bytes instead of text.
+     * @return The CREATE TABLE statement of the lightlogin table on this database.
+     */
+    @NotNull
+    protected abstract String createTableSql(@NotNull String table, boolean binary);
+
+    /**
+     * @return The statements putting the migrated table in place of lightlogin, which is renamed to the backup.
+     * The last_ipv4 index is dropped first, as index names are shared by the whole schema on most databases.
+     */
+    @NotNull
+    protected List<String> swapTablesSql(@NotNull String migrated, @NotNull String backup) {
+        return List.of("DROP INDEX IF EXISTS idx_lightlogin_last_ipv4;",
+                "ALTER TABLE lightlogin RENAME TO " + backup + ";",
+                "ALTER TABLE " + migrated + " RENAME TO lightlogin;");
+    }
+
+    private static final String MIGRATION_TABLE = "lightlogin_migration";
+
+    /**
+     * Convert the lightlogin table to the configured schema when it was created with the other one.
+     * The rows are copied into a new table that then takes the place of the old one, which is kept
+     * as lightlogin_text_backup or lightlogin_binary_backup.
+     * Must be called after the table is created and before its indexes.
+     */
+    protected void migrateSchema(@NotNull Connection connection) throws SQLException {
+        final Boolean binary = isBinaryTable(connection);
+        if (binary == null || binary == this.binarySchema) {
+            return;
+        }
+
+        final String backup = binary ? "lightlogin_binary_backup" : "lightlogin_text_backup";
+        super.plugin.getLogger().info("Converting the lightlogin table to the " + (this.binarySchema ? "binary" : "text") + " schema...");
+
+        final boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + MIGRATION_TABLE + ";");
+            statement.execute(this.createTableSql(MIGRATION_TABLE, this.binarySchema));
+            final long copied = this.copyRows(connection, binary);
+            statement.execute("DROP TABLE IF EXISTS " + backup + ";");
+            for (final String sql : this.swapTablesSql(MIGRATION_TABLE, backup)) {
+                statement.execute(sql);
+            }
+            connection.commit();
+            super.plugin.getLogger().info("Converted " + copied + " accounts, the previous table is kept as " + backup + ".");
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * @return Whether the existing lightlogin table has the binary schema, null if there is no table.
+     */
+    @Nullable
+    private static Boolean isBinaryTable(@NotNull Connection connection) throws SQLException {
+        try (final ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), connection.getSchema(), "lightlogin", "uuid")) {
+            if (!columns.next()) {
+                return null;
+            }
+            final String type = columns.getString("TYPE_NAME").toUpperCase(Locale.ROOT);
+            return type.contains("BINARY") || type.contains("BYTEA") || type.contains("BLOB");
+        }
+    }
+
+    /**
+     * Copy every row of lightlogin into the migration table, one page at a time in uuid order.
+     *
+     * @return The amount of rows copied.
+     */
+    private long copyRows(@NotNull Connection connection, boolean fromBinary) throws SQLException {
+        final String insert = "INSERT INTO " + MIGRATION_TABLE + "(uuid, password, salt, email, last_login, last_ipv4) VALUES (?, ?, ?, ?, ?, ?);";
+        final String firstPage = "SELECT * FROM lightlogin ORDER BY uuid ASC LIMIT " + this.fetchSize + ";";
+        final String nextPage = "SELECT * FROM lightlogin WHERE uuid>? ORDER BY uuid ASC LIMIT " + this.fetchSize + ";";
+
+        long copied = 0L;
+        LightLoginDbRow last = null;
+        try (final PreparedStatement insertStatement = connection.prepareStatement(insert)) {
+            while (true) {
+                int read = 0;
+                try (final PreparedStatement select = connection.prepareStatement(last == null ? firstPage : nextPage)) {
+                    if (last != null) {
+                        bindRowUuid(select, 1, last, fromBinary);
+                    }
+                    try (final ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            last = readRow(resultSet, fromBinary);
+                            bindRow(insertStatement, 1, last, this.binarySchema);
+                            insertStatement.addBatch();
+                            read++;
+                        }
+                    }
+                }
+
+                insertStatement.executeBatch();
+                copied += read;
+                if (read < this.fetchSize) {
+                    return copied;
+                }
+            }
+        }
+    }
+
     public String getUsername() {
         return username;
     }
@@ -0,0 +1,175 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.thread.VirtualThreads;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The threads that run the blocking JDBC calls of a database.
+ * Keeping them apart from the common ForkJoinPool means a slow database cannot starve
+ * parallel streams or other plugins, and the other way around.
+ * On Java 21 and newer every task can get its own virtual thread instead, with a semaphore
+ * keeping the same limit on concurrent queries, so waiting tasks cost almost no memory.
+ * Tasks are never refused: once the executor is shut down they run on the calling thread,
+ * so writes issued while the server stops still reach the database.
+ */
+public final class DatabaseExecutor implements Executor {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10L;
+
+    private final int threads;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    private final AtomicLong submittedTasks = new AtomicLong();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param threads The maximum amount of concurrently running tasks.
+     * @param virtual Whether to run tasks on virtual threads, ignored when the JVM does not support them.
+     */
+    public DatabaseExecutor(final int threads, final boolean virtual) {
+        this.threads = Math.max(1, threads);
+
+        final ExecutorService virtualExecutor = virtual ? VirtualThreads.newThreadPerTaskExecutor("LightLogin-Database-") : null;
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.permits = new Semaphore(this.threads, true);
+            return;
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "LightLogin-Database-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        final ThreadPoolExecutor platformExecutor = new ThreadPoolExecutor(this.threads, this.threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                threadFactory);
+        platformExecutor.allowCoreThreadTimeOut(true);
+        this.executor = platformExecutor;
+        this.permits = null;
+    }
+
+    @Override
+    public void execute(@NotNull final Runnable task) {
+        final long queuedAt = System.nanoTime();
+        this.submittedTasks.incrementAndGet();
+        try {
+            this.executor.execute(() -> this.run(task, queuedAt));
+        } catch (RejectedExecutionException exception) {
+            this.run(task, queuedAt);
+        }
+    }
+
+    private void run(@NotNull final Runnable task, final long queuedAt) {
+        if (this.permits != null) {
+            this.permits.acquireUninterruptibly();
+        }
+
+        final long waited = System.nanoTime() - queuedAt;
+        this.totalWaitNanos.addAndGet(waited);
+        this.maxWaitNanos.accumulateAndGet(waited, Math::max);
+        try {
+            task.run();
+        } finally {
+            this.completedTasks.incrementAndGet();
+            if (this.permits != null) {
+                this.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting new work on the database threads and wait for the queued tasks to finish.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isVirtual() {
+        return this.permits != null;
+    }
+
+    public int getQueueDepth() {
+        if (this.permits != null) {
+            return this.permits.getQueueLength();
+        }
+        return ((ThreadPoolExecutor) this.executor).getQueue().size();
+    }
+
+    public int getActiveTasks() {
+        if (this.permits != null) {
+            return this.threads - this.permits.availablePermits();
+        }
+        return ((ThreadPoolExecutor) this.executor).getActiveCount();
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks.get();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    public double getAverageWaitMillis() {
+        final long completed = this.completedTasks.get();
+        return completed == 0 ? 0d : (this.totalWaitNanos.get() / (double) completed) / 1E6;
+    }
+
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1E6;
+    }
+}
@@ -33,7 +33,9 @@ public enum DatabaseType {
 
     SQLITE("sqlite", "org.sqlite.JDBC"),
     MYSQL("mysql", "com.mysql.jdbc.Driver"),
-    POSTGRESQL("postgresql", "org.postgresql.Driver")
+    POSTGRESQL("postgresql", "org.postgresql.Driver"),
+    // Stored by the plugin itself, there is no driver to load.
+    EMBEDDED("embedded", null)
     ;
 
     private final String name;
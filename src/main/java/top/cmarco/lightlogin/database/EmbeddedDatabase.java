@@ -0,0 +1,430 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Accounts stored by the plugin itself in an append-only log, without JDBC nor SQL.
+ * The whole uuid index lives in memory as primitive arrays, so finding an account costs
+ * a hash table probe and a single positional read of its record.
+ * Writes go through one writer thread that syncs the file once per group of writes,
+ * and the file is compacted in the background once most of it holds replaced records.
+ * Only meant for a single server, the file cannot be shared.
+ */
+public final class EmbeddedDatabase extends AbstractPluginDatabase {
+
+    private static final String FILE_NAME = "lightlogin.db";
+
+    private final AppendOnlyLog log;
+    private final boolean sync;
+    private final int groupCommitMax;
+    private final double compactRatio;
+    private final long compactMinBytes;
+
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private volatile GroupCommitWriter writer = null;
+
+    public EmbeddedDatabase(final @NotNull LightLoginPlugin plugin) {
+        this(plugin, FILE_NAME);
+    }
+
+    /**
+     * @param fileName The database file in the plugin folder, other than the accounts one for scratch databases.
+     */
+    public EmbeddedDatabase(final @NotNull LightLoginPlugin plugin, final @NotNull String fileName) {
+        super(plugin, DatabaseType.EMBEDDED);
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        this.log = new AppendOnlyLog(new File(plugin.getDataFolder(), fileName).toPath(), plugin.getLogger());
+        this.sync = configuration.isEmbeddedSync();
+        this.groupCommitMax = Math.max(1, configuration.getEmbeddedGroupCommitMax());
+        this.compactRatio = Math.max(0.1D, configuration.getEmbeddedCompactRatio());
+        this.compactMinBytes = Math.max(0L, configuration.getEmbeddedCompactMinMb()) * 1024L * 1024L;
+    }
+
+    /**
+     * Lookups are positional reads of the file, they do not block each other.
+     */
+    @Override
+    protected int defaultThreads() {
+        return 2;
+    }
+
+    @Override
+    public void loadDriverClass() {
+    }
+
+    @Override
+    public void connect() {
+        if (this.writer != null) {
+            return;
+        }
+
+        try {
+            super.plugin.getDataFolder().mkdirs();
+            this.log.open();
+        } catch (IOException exception) {
+            super.plugin.getLogger().warning("WARNING! Could not open the database file.");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            super.plugin.setDisabled(true);
+            if (super.plugin.getLightConfiguration().isCrashShutdown()) {
+                super.plugin.getLogger().warning("Shutting the server down!");
+                super.plugin.getServer().shutdown();
+            }
+            return;
+        }
+
+        this.writer = new GroupCommitWriter("LightLogin-Embedded-Writer", new GroupCommitWriter.Transaction() {
+            @Override
+            public void begin() {
+            }
+
+            @Override
+            public void commit() throws IOException {
+                if (EmbeddedDatabase.this.sync) {
+                    EmbeddedDatabase.this.log.sync();
+                }
+                EmbeddedDatabase.this.scheduleCompaction();
+            }
+
+            @Override
+            public void rollback() {
+            }
+        }, this.groupCommitMax, super.plugin.getLogger());
+    }
+
+    /**
+     * The log is created when connecting, there are no tables.
+     */
+    @Override
+    public void createTables() {
+    }
+
+    @Override
+    public @Nullable Connection getConnection() {
+        return null;
+    }
+
+    private void scheduleCompaction() {
+        if (!this.log.shouldCompact(this.compactRatio, this.compactMinBytes) || !this.compactionQueued.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.write(() -> {
+            try {
+                if (this.log.compact()) {
+                    super.plugin.getLogger().info("Compacted the database file to " + (this.log.getFileBytes() >> 10) + " KB.");
+                }
+            } catch (IOException exception) {
+                super.plugin.getLogger().warning("WARNING! Error compacting the database file.");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            } finally {
+                this.compactionQueued.set(false);
+            }
+            return null;
+        });
+    }
+
+    @NotNull
+    private <T> CompletableFuture<T> write(@NotNull Supplier<T> update) {
+        final GroupCommitWriter writer = this.writer;
+        if (writer == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return writer.submit(update);
+    }
+
+    /**
+     * @return The uuid, null if the string is not one.
+     */
+    @Nullable
+    private UUID parse(@NotNull String uuid) {
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException exception) {
+            super.plugin.getLogger().warning("WARNING! Invalid account uuid " + uuid);
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        final UUID key = this.parse(uuid);
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.log.read(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            } catch (IOException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database search for " + uuid);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        }, this.executor);
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
+        final UUID key = this.parse(row.getUuid());
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.write(() -> {
+            try {
+                this.log.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), row);
+                return row;
+            } catch (IOException | IllegalArgumentException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database insert for " + row);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+        return this.updateColumns(uuid, Map.of(column, columnValue));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        final UUID key = this.parse(uuid);
+        final Map<LightLoginColumn, Object> checked = this.checkColumns(columns);
+        if (key == null || checked.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.write(() -> {
+            this.update(key, checked);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        final Map<UUID, Map<LightLoginColumn, Object>> checked = new HashMap<>();
+        for (final Map.Entry<String, ? extends Map<LightLoginColumn, Object>> update : updates.entrySet()) {
+            final UUID key = this.parse(update.getKey());
+            final Map<LightLoginColumn, Object> columns = this.checkColumns(update.getValue());
+            if (key != null && !columns.isEmpty()) {
+                checked.put(key, columns);
+            }
+        }
+        if (checked.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.write(() -> {
+            checked.forEach(this::update);
+            return null;
+        });
+    }
+
+    /**
+     * Append the new version of an account, on the writer thread.
+     *
+     * @throws CompletionException if the account could not be written, so the write future fails.
+     */
+    private void update(@NotNull UUID key, @NotNull Map<LightLoginColumn, Object> columns) {
+        try {
+            LightLoginDbRow row = this.log.read(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            if (row == null) {
+                return;
+            }
+            for (final Map.Entry<LightLoginColumn, Object> column : columns.entrySet()) {
+                row = row.with(column.getKey(), column.getValue());
+            }
+            this.log.put(key.getMostSignificantBits(), key.getLeastSignificantBits(), row);
+        } catch (IOException | IllegalArgumentException exception) {
+            super.plugin.getLogger().warning("WARNING! Error database update for ");
+            super.plugin.getLogger().warning("uuid=" + key + " columns=" + columns.keySet());
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            throw new CompletionException(exception);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        final UUID key = this.parse(uuid);
+        if (key == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return this.write(() -> {
+            try {
+                return this.log.delete(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            } catch (IOException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database delete row for " + uuid);
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
+        final List<LightLoginDbRow> list = new ArrayList<>();
+        return this.forEachRow(RowCriteria.where(), row -> {
+            if (predicate.test(row)) {
+                list.add(row);
+            }
+        }).thenApply(visited -> visited == null ? null : list);
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRows(@NotNull RowCriteria criteria) {
+        final List<LightLoginDbRow> list = new ArrayList<>();
+        return this.forEachRow(criteria, list::add).thenApply(visited -> {
+            if (visited == null) {
+                return null;
+            }
+            final LightLoginColumn orderColumn = criteria.getOrderColumn();
+            if (orderColumn != null) {
+                final Comparator<LightLoginDbRow> comparator = Comparator.comparing(row -> columnKey(row, orderColumn),
+                        Comparator.nullsFirst(Comparator.naturalOrder()));
+                list.sort(criteria.isAscending() ? comparator : comparator.reversed());
+            }
+            final int limit = criteria.getLimit();
+            return limit >= 0 && list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+        });
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> columnKey(@NotNull LightLoginDbRow row, @NotNull LightLoginColumn column) {
+        return (Comparable<Object>) row.get(column);
+    }
+
+    /**
+     * Rows are visited in file order, not by uuid, reading the file sequentially.
+     */
+    @Override
+    public CompletableFuture<Long> forEachRow(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final long[] matched = new long[1];
+                this.log.scan(row -> {
+                    if (criteria.test(row)) {
+                        consumer.accept(row);
+                        matched[0]++;
+                    }
+                });
+                return matched[0];
+            } catch (IOException exception) {
+                super.plugin.getLogger().warning("WARNING! Error database row iteration failed!");
+                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            }
+            return null;
+        }, this.executor);
+    }
+
+    @Override
+    public CompletableFuture<Integer> countRows(@NotNull RowCriteria criteria) {
+        final int[] count = new int[1];
+        return this.forEachRow(criteria, row -> count[0]++).thenApply(visited -> visited == null ? null : count[0]);
+    }
+
+    /**
+     * Answered from the address counts kept next to the index, no record is read.
+     */
+    @Override
+    public CompletableFuture<Integer> countRowsByIp(long ipv4) {
+        return CompletableFuture.completedFuture(this.log.countByIp(ipv4));
+    }
+
+    @Override
+    public void close() {
+        final GroupCommitWriter writer = this.writer;
+        if (writer != null) {
+            writer.shutdown();
+        }
+
+        super.close();
+        try {
+            this.log.close();
+        } catch (IOException exception) {
+            super.plugin.getLogger().warning("WARNING! Error closing the database file.");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
+    }
+
+    public int getAccounts() {
+        return this.log.size();
+    }
+
+    public long getFileBytes() {
+        return this.log.getFileBytes();
+    }
+
+    public long getLiveBytes() {
+        return this.log.getLiveBytes();
+    }
+
+    public long getIndexBytes() {
+        return this.log.getIndexBytes();
+    }
+
+    public long getCompactions() {
+        return this.log.getCompactions();
+    }
+
+    public int getWriterQueueDepth() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getQueueDepth() : 0;
+    }
+
+    public long getWrites() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getWrites() : 0L;
+    }
+
+    public long getCommits() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getCommits() : 0L;
+    }
+}
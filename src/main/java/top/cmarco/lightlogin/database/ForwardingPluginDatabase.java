@@ -0,0 +1,150 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A PluginDatabase that forwards every call to another one.
+ * Used as base for decorators that add behaviour, such as caching, in front of the real backend.
+ */
+public abstract class ForwardingPluginDatabase implements PluginDatabase {
+
+    protected final PluginDatabase delegate;
+
+    protected ForwardingPluginDatabase(@NotNull final PluginDatabase delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Find a database of the given type in this chain of decorators.
+     *
+     * @param database The outermost database.
+     * @param type The wanted type.
+     * @return The first database of that type, or null if there is none.
+     */
+    @Nullable
+    public static <T> T unwrap(@NotNull final PluginDatabase database, @NotNull final Class<T> type) {
+        PluginDatabase current = database;
+        while (true) {
+            if (type.isInstance(current)) {
+                return type.cast(current);
+            }
+            if (!(current instanceof ForwardingPluginDatabase forwarding)) {
+                return null;
+            }
+            current = forwarding.delegate;
+        }
+    }
+
+    @NotNull
+    public PluginDatabase getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void loadDriverClass() {
+        this.delegate.loadDriverClass();
+    }
+
+    @Override
+    public void connect() {
+        this.delegate.connect();
+    }
+
+    @Override
+    public void createTables() {
+        this.delegate.createTables();
+    }
+
+    @Override
+    public @Nullable Connection getConnection() {
+        return this.delegate.getConnection();
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        return this.delegate.searchRowFromPK(uuid);
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
+        return this.delegate.addRow(row);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+        return this.delegate.updateRow(uuid, column, columnValue);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        return this.delegate.updateColumns(uuid, columns);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        return this.delegate.updateRows(updates);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        return this.delegate.deleteRow(uuid);
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
+        return this.delegate.searchRowsPredicate(predicate);
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRows(@NotNull RowCriteria criteria) {
+        return this.delegate.searchRows(criteria);
+    }
+
+    @Override
+    public CompletableFuture<Long> forEachRow(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer) {
+        return this.delegate.forEachRow(criteria, consumer);
+    }
+
+    @Override
+    public CompletableFuture<Integer> countRows(@NotNull RowCriteria criteria) {
+        return this.delegate.countRows(criteria);
+    }
+
+    @Override
+    public void close() {
+        this.delegate.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * The only thread writing to a storage that allows a single writer at a time.
+ * Instead of letting several threads fight over the storage lock, writes are queued here
+ * and run one after another. Whatever queued up while the previous batch ran is committed
+ * together (group commit), so a burst of writes costs one disk sync instead of one per write.
+ * Futures complete only after the commit covering their write.
+ */
+final class GroupCommitWriter {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000L;
+
+    /**
+     * How a batch of writes is made durable.
+     */
+    interface Transaction {
+        void begin() throws Exception;
+
+        void commit() throws Exception;
+
+        void rollback() throws Exception;
+    }
+
+    private final Transaction transaction;
+    private final int maxBatch;
+    private final Logger logger;
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final Object lock = new Object();
+    private final Object stateLock = new Object();
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    GroupCommitWriter(@NotNull final String name, @NotNull final Transaction transaction, final int maxBatch, @NotNull final Logger logger) {
+        this.transaction = transaction;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.logger = logger;
+        this.thread = new Thread(this::loop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a write. Once the writer is shut down the write runs on the calling thread instead,
+     * so changes made while the server stops still reach the storage.
+     */
+    @NotNull
+    <T> CompletableFuture<T> submit(@NotNull final Supplier<T> update) {
+        final Write<T> write = new Write<>(update);
+        synchronized (this.stateLock) {
+            if (this.running) {
+                this.queue.add(write);
+                return write.future;
+            }
+        }
+
+        synchronized (this.lock) {
+            this.runBatch(Collections.singletonList(write));
+        }
+        return write.future;
+    }
+
+    private void loop() {
+        final List<Write<?>> batch = new ArrayList<>();
+        while (true) {
+            try {
+                final Write<?> first = this.queue.poll(100L, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!this.running && this.queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                this.queue.drainTo(batch, this.maxBatch - 1);
+            } catch (InterruptedException exception) {
+                continue;
+            }
+
+            synchronized (this.lock) {
+                this.runBatch(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void runBatch(@NotNull final List<Write<?>> batch) {
+        try {
+            this.transaction.begin();
+            for (final Write<?> write : batch) {
+                write.run();
+            }
+            this.transaction.commit();
+        } catch (Exception exception) {
+            try {
+                this.transaction.rollback();
+            } catch (Exception rollbackException) {
+                this.logger.warning(rollbackException.getLocalizedMessage());
+            }
+
+            if (batch.size() == 1) {
+                this.logger.warning("WARNING! Error committing a write.");
+                this.logger.warning(exception.getLocalizedMessage());
+                batch.get(0).future.completeExceptionally(exception);
+                return;
+            }
+
+            this.logger.warning("WARNING! Error committing " + batch.size() + " grouped writes, retrying them one by one.");
+            this.logger.warning(exception.getLocalizedMessage());
+            for (final Write<?> write : batch) {
+                this.runBatch(Collections.singletonList(write));
+            }
+            return;
+        }
+
+        this.writes.addAndGet(batch.size());
+        this.commits.incrementAndGet();
+        batch.forEach(Write::complete);
+    }
+
+    /**
+     * Stop accepting writes and wait for the queued ones to be committed.
+     */
+    void shutdown() {
+        synchronized (this.stateLock) {
+            this.running = false;
+        }
+        try {
+            this.thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    long getWrites() {
+        return this.writes.get();
+    }
+
+    long getCommits() {
+        return this.commits.get();
+    }
+
+    private static final class Write<T> {
+
+        private final Supplier<T> update;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result = null;
+        private Throwable failure = null;
+
+        private Write(@NotNull final Supplier<T> update) {
+            this.update = update;
+        }
+
+        private void run() {
+            try {
+                this.result = this.update.get();
+                this.failure = null;
+            } catch (Throwable throwable) {
+                this.failure = throwable;
+            }
+        }
+
+        private void complete() {
+            if (this.failure != null) {
+                this.future.completeExceptionally(this.failure);
+            } else {
+                this.future.complete(this.result);
+            }
+        }
+    }
+}
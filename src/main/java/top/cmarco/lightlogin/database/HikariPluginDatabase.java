@@ -21,39 +21,60 @@ package top.cmarco.lightlogin.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
+/**
+ * A database reached through a HikariCP connection pool.
+ * Every operation borrows its own connection and gives it back when done, so concurrent
+ * queries run in parallel up to the pool size, and broken connections are validated
+ * and replaced by the pool instead of failing every later query.
+ * There is no shared connection, so {@link #getConnection()} always returns null.
+ */
 public abstract class HikariPluginDatabase extends CredentialPluginDatabase {
 
     protected final HikariConfig hikariConfig;
-    protected final HikariDataSource hikariDataSource;
+    protected volatile HikariDataSource hikariDataSource = null;
 
     protected HikariPluginDatabase(@NotNull LightLoginPlugin plugin, @NotNull DatabaseType databaseType) {
         super(plugin, databaseType);
+        final LightConfiguration configuration = plugin.getLightConfiguration();
         this.hikariConfig = new HikariConfig();
+        this.hikariConfig.setPoolName("LightLogin-Pool");
         this.hikariConfig.setJdbcUrl(super.createConnectionUrl());
         this.hikariConfig.setUsername(super.username);
         this.hikariConfig.setPassword(super.password);
+        this.hikariConfig.setMaximumPoolSize(Math.max(1, configuration.getDatabasePoolMaxSize()));
+        this.hikariConfig.setMinimumIdle(Math.max(0, Math.min(configuration.getDatabasePoolMinIdle(), configuration.getDatabasePoolMaxSize())));
+        this.hikariConfig.setConnectionTimeout(configuration.getDatabasePoolConnectionTimeoutMillis());
+        this.hikariConfig.setValidationTimeout(configuration.getDatabasePoolValidationTimeoutMillis());
+        this.hikariConfig.setMaxLifetime(configuration.getDatabasePoolMaxLifetimeMillis());
+        this.hikariConfig.setKeepaliveTime(configuration.getDatabasePoolKeepaliveMillis());
+        this.hikariConfig.setLeakDetectionThreshold(configuration.getDatabasePoolLeakDetectionMillis());
         this.hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
         this.hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
         this.hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        this.hikariDataSource = new HikariDataSource(this.hikariConfig);
     }
 
     @Override
     public void connect() {
 
-        if (this.connection != null) {
+        if (this.hikariDataSource != null) {
             return;
         }
 
         try {
-            this.connection = this.hikariDataSource.getConnection();
-        } catch (SQLException exception) {
+            // Fails fast when the first connection cannot be made.
+            this.hikariDataSource = new HikariDataSource(this.hikariConfig);
+        } catch (RuntimeException exception) {
             super.plugin.getLogger().warning("WARNING! Could not connect to the database using HikariCP.");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
             super.plugin.setDisabled(true);
             if (super.plugin.getLightConfiguration().isCrashShutdown()) {
                 super.plugin.getLogger().warning("Shutting the server down!");
@@ -61,4 +82,58 @@ public abstract class HikariPluginDatabase extends CredentialPluginDatabase {
             }
         }
     }
+
+    @Override
+    protected <T> T withConnection(@NotNull ConnectionFunction<T> function) throws SQLException {
+        final HikariDataSource dataSource = this.hikariDataSource;
+        if (dataSource == null) {
+            throw new SQLException("Not connected to the database.");
+        }
+        try (final Connection connection = dataSource.getConnection()) {
+            return function.apply(connection);
+        }
+    }
+
+    /**
+     * One thread per pooled connection, more could only wait for a connection.
+     * Called by the super constructor, so it cannot use the fields of this class.
+     */
+    @Override
+    protected int defaultThreads() {
+        return Math.max(1, super.plugin.getLightConfiguration().getDatabasePoolMaxSize());
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        final HikariDataSource dataSource = this.hikariDataSource;
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Nullable
+    private HikariPoolMXBean getPool() {
+        final HikariDataSource dataSource = this.hikariDataSource;
+        return dataSource == null || dataSource.isClosed() ? null : dataSource.getHikariPoolMXBean();
+    }
+
+    public int getMaximumPoolSize() {
+        return this.hikariConfig.getMaximumPoolSize();
+    }
+
+    public int getActiveConnections() {
+        final HikariPoolMXBean pool = this.getPool();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        final HikariPoolMXBean pool = this.getPool();
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        final HikariPoolMXBean pool = this.getPool();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
 }
@@ -30,8 +30,10 @@ import top.cmarco.lightlogin.data.LightLoginDbRow;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 
 /**
@@ -64,7 +66,8 @@ public interface PluginDatabase {
 
     /**
      * Get the connection to the database.
-     * @return Connection to the database, null if you could not achieve connection.
+     * @return Connection to the database, null if you could not achieve connection
+     * or if the database borrows a pooled connection for every operation instead.
      */
     @Nullable Connection getConnection();
 
@@ -72,12 +75,82 @@ public interface PluginDatabase {
 
     CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row);
 
+    /**
+     * Change one column of a row.
+     *
+     * @return A future completed once the row is updated, exceptionally if the update failed.
+     */
     CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue);
 
+    /**
+     * Change several columns of a row with a single UPDATE statement.
+     *
+     * @param uuid The row uuid.
+     * @param columns The new column values, of the column types.
+     * @return A future completed once the row is updated, exceptionally if the update failed.
+     */
+    CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns);
+
+    /**
+     * Change columns of many rows in a single transaction.
+     *
+     * @param updates The new column values, by row uuid.
+     * @return A future completed once the transaction is over, exceptionally if it was rolled back.
+     */
+    CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates);
+
     CompletableFuture<Boolean> deleteRow(@NotNull String uuid);
 
+    /**
+     * Search rows with an arbitrary Java predicate.
+     * The predicate cannot be translated to SQL, so every row of the table is read:
+     * prefer {@link #searchRows(RowCriteria)} whenever the filter can be expressed with it.
+     *
+     * @return The matching rows, null if the rows could not all be read.
+     */
     CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate);
 
+    /**
+     * Search rows with a filter that is executed by the database.
+     *
+     * @param criteria The filter, order and limit.
+     * @return The matching rows, null if the query failed.
+     */
+    CompletableFuture<List<LightLoginDbRow>> searchRows(@NotNull RowCriteria criteria);
+
+    /**
+     * Walk every row matching the criteria without holding them all in memory.
+     * Rows are read in pages of the configured fetch size, ordered by uuid, and each page
+     * continues after the last uuid of the previous one, so the cost of a page does not
+     * grow with the amount of rows already visited.
+     * Order and limit of the criteria are ignored.
+     *
+     * @param criteria The filter.
+     * @param consumer Called on the database thread for every matching row.
+     * @return The amount of visited rows, null if a query failed.
+     */
+    CompletableFuture<Long> forEachRow(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer);
+
+    /**
+     * Count rows with a filter that is executed by the database.
+     * Order and limit of the criteria are ignored.
+     *
+     * @param criteria The filter.
+     * @return The amount of matching rows, null if the query failed.
+     */
+    CompletableFuture<Integer> countRows(@NotNull RowCriteria criteria);
+
+    /**
+     * Count the accounts whose last login came from the given address.
+     * Backed by an index on last_ipv4, so it does not load any row.
+     *
+     * @param ipv4 The address, as stored in the last_ipv4 column.
+     * @return The amount of matching accounts, null if the query failed.
+     */
+    default CompletableFuture<Integer> countRowsByIp(long ipv4) {
+        return this.countRows(RowCriteria.where().eq(LightLoginColumn.LAST_IPV4, ipv4));
+    }
+
     default void close() {
         try {
             Connection connection = getConnection();
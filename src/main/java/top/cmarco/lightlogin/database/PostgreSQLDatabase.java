@@ -22,29 +22,44 @@ import org.jetbrains.annotations.NotNull;
 import top.cmarco.lightlogin.LightLoginPlugin;
 import top.cmarco.lightlogin.data.LightLoginDbRow;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Predicate;
 
 public class PostgreSQLDatabase extends HikariPluginDatabase {
 
     public PostgreSQLDatabase(@NotNull LightLoginPlugin plugin) {
         super(plugin, DatabaseType.POSTGRESQL);
+        // Use a named server statement from the first execution and keep it per pooled connection.
+        super.hikariConfig.addDataSourceProperty("prepareThreshold", "1");
+        super.hikariConfig.addDataSourceProperty("preparedStatementCacheQueries", "256");
     }
 
-    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS lightlogin (" +
-            "uuid CHAR(36) PRIMARY KEY NOT NULL," +
-            "password TEXT NOT NULL," +
-            "salt TEXT NOT NULL," +
-            "email VARCHAR(64)," +
-            "last_login BIGINT NOT NULL," +
-            "last_ipv4 INTEGER NOT NULL" +
-            ");";
+    @Override
+    protected @NotNull String createTableSql(@NotNull String table, boolean binary) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                (binary ? "uuid BYTEA PRIMARY KEY NOT NULL," : "uuid CHAR(36) PRIMARY KEY NOT NULL,") +
+                (binary ? "password BYTEA NOT NULL," : "password TEXT NOT NULL,") +
+                (binary ? "salt BYTEA NOT NULL," : "salt TEXT NOT NULL,") +
+                "email VARCHAR(64)," +
+                "last_login BIGINT NOT NULL," +
+                "last_ipv4 INTEGER NOT NULL" +
+                ");";
+    }
+
+    /**
+     * PostgreSQL names the primary key index after the table and keeps that name on rename,
+     * so the indexes are renamed with their tables, or the next migration could not create its table.
+     */
+    @Override
+    protected @NotNull List<String> swapTablesSql(@NotNull String migrated, @NotNull String backup) {
+        return List.of("DROP INDEX IF EXISTS idx_lightlogin_last_ipv4;",
+                "ALTER TABLE lightlogin RENAME TO " + backup + ";",
+                "ALTER INDEX IF EXISTS lightlogin_pkey RENAME TO " + backup + "_pkey;",
+                "ALTER TABLE " + migrated + " RENAME TO lightlogin;",
+                "ALTER INDEX IF EXISTS " + migrated + "_pkey RENAME TO lightlogin_pkey;");
+    }
 
     /**
      * Creates the tables necessarily used by this software.
@@ -52,8 +67,14 @@ public class PostgreSQLDatabase extends HikariPluginDatabase {
      */
     @Override
     public void createTables() {
-        try (final Statement statement = super.connection.createStatement()) {
-            statement.execute(CREATE_TABLE);
+        try {
+            this.withConnection(connection -> {
+                try (final Statement statement = connection.createStatement()) {
+                    statement.execute(this.createTableSql("lightlogin", this.binarySchema));
+                }
+                this.migrateSchema(connection);
+                return null;
+            });
         } catch (SQLException exception) {
             super.plugin.setDisabled(true);
             super.plugin.getLogger().warning("WARNING! Error during table creation!");
@@ -63,32 +84,28 @@ public class PostgreSQLDatabase extends HikariPluginDatabase {
                 super.plugin.getServer().shutdown();
             }
         }
+
+        if (!super.plugin.isDisabled()) {
+            this.createIndexes();
+        }
     }
 
-    private final static String SELECT_WHERE = "SELECT * FROM lightlogin WHERE uuid = (?);";
+    private static final String CREATE_IP_INDEX = "CREATE INDEX IF NOT EXISTS idx_lightlogin_last_ipv4 ON lightlogin (last_ipv4);";
 
-    @Override
-    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(SELECT_WHERE)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    final String uuidUnused = resultSet.getString(1);
-                    final String hash = resultSet.getString(2);
-                    final String salt = resultSet.getString(3);
-                    final String email = resultSet.getString(4);
-                    final long lastLogin = resultSet.getLong(5);
-                    final long lastIpv4 = resultSet.getLong(6);
-                    return new LightLoginDbRow(uuid, hash, salt, email, lastLogin, lastIpv4);
+    /**
+     * Creates the last_ipv4 index, also on tables made by older versions.
+     */
+    private void createIndexes() {
+        try {
+            this.withConnection(connection -> {
+                try (final Statement statement = connection.createStatement()) {
+                    return statement.execute(CREATE_IP_INDEX);
                 }
-                resultSet.close();
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database search for " + uuid);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
-            return null;
-        });
+            });
+        } catch (SQLException exception) {
+            super.plugin.getLogger().warning("WARNING! Error during index creation, registrations will be slower!");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
     }
 
     private final static String INSERT_UPDATE = "INSERT INTO lightlogin(uuid, password, salt, email, last_login, last_ipv4) " +
@@ -96,24 +113,16 @@ public class PostgreSQLDatabase extends HikariPluginDatabase {
             "ON CONFLICT (uuid) DO UPDATE SET password=?, salt=?, email=?, last_login=?, last_ipv4=?";
 
 
-
     @Override
     public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(INSERT_UPDATE)) {
-                statement.setString(1, row.getUuid());
-                statement.setString(2, row.getPasswordHash());
-                statement.setString(3, row.getPasswordSalt());
-                statement.setString(4, row.getEmail());
-                statement.setLong(5, row.getLastLogin());
-                statement.setLong(6, row.getLastIpv4());
-                statement.setString(7, row.getPasswordHash());
-                statement.setString(8, row.getPasswordSalt());
-                statement.setString(9, row.getEmail());
-                statement.setLong(10, row.getLastLogin());
-                statement.setLong(11, row.getLastIpv4());
-                statement.execute();
-                return row;
+        return this.supplyWrite(() -> {
+            try {
+                return this.withStatement(INSERT_UPDATE, statement -> {
+                    final int index = bindRow(statement, 1, row, this.binarySchema);
+                    bindRowValues(statement, index, row, this.binarySchema);
+                    statement.execute();
+                    return row;
+                });
             } catch (SQLException exception) {
                 super.plugin.getLogger().warning("WARNING! Error database search for " + row);
                 super.plugin.getLogger().warning(exception.getLocalizedMessage());
@@ -121,90 +130,4 @@ public class PostgreSQLDatabase extends HikariPluginDatabase {
             return null;
         });
     }
-
-    private static final String UPDATE_TABLE = "UPDATE lightlogin SET {COLUMN}=? WHERE uuid=?;";
-
-    @Override
-    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
-
-        if (!column.getColumnType().isInstance(columnValue)) {
-            super.plugin.getLogger().warning("WARNING! Passed illegal value type for " + column + "equal to " + columnValue);
-            return CompletableFuture.completedFuture(null);
-        }
-
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(UPDATE_TABLE.replace("{COLUMN}", column.getName()))) {
-                if (column == LightLoginColumn.LAST_IPV4 || column == LightLoginColumn.LAST_LOGIN) {
-                    statement.setLong(1, (Long) columnValue);
-                } else if (column == LightLoginColumn.EMAIL || column == LightLoginColumn.PASSWORD || column == LightLoginColumn.SALT) {
-                    statement.setString(1, (String) columnValue);
-                } else {
-                    super.plugin.getLogger().warning("WARNING! Illegal lightlogin column value passed.");
-                    return null;
-                }
-
-                statement.setString(2, uuid);
-                statement.executeUpdate();
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database update for ");
-                super.plugin.getLogger().warning("uuid=" + uuid + " column="+column + " value=" + columnValue);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
-            return null;
-        });
-    }
-
-    private static final String DELETE_ROW = "DELETE FROM lightlogin WHERE uuid = (?);";
-
-    @Override
-    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-
-            try (PreparedStatement statement = connection.prepareStatement(DELETE_ROW)) {
-                statement.setString(1, uuid);
-                return statement.executeUpdate() != 0;
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database delete row for " + uuid);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
-
-            return null;
-        });
-    }
-
-    private static final String SEARCH_ALL = "SELECT * FROM lightlogin;";
-
-    @Override
-    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
-        return CompletableFuture.supplyAsync(() -> {
-            final List<LightLoginDbRow> list = new ArrayList<>();
-
-            try (final PreparedStatement statement = connection.prepareStatement(SEARCH_ALL)) {
-                final ResultSet resultSet = statement.executeQuery();
-
-                while (resultSet.next()) {
-                    final String uuid = resultSet.getString(1);
-                    final String hash = resultSet.getString(2);
-                    final String salt = resultSet.getString(3);
-                    final String email = resultSet.getString(4);
-                    final long lastLogin = resultSet.getLong(5);
-                    final long lastIpv4 = resultSet.getLong(6);
-                    final LightLoginDbRow dbRow = new LightLoginDbRow(uuid, hash, salt, email, lastLogin, lastIpv4);
-
-                    if (predicate.test(dbRow)) {
-                        list.add(dbRow);
-
-                    }
-                }
-
-                resultSet.close();
-
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database search with predicate failed!");
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
-
-            return list;
-        });
-    }
 }
@@ -0,0 +1,304 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * A typed filter over the lightlogin table that the databases compile into a prepared
+ * WHERE clause, so that the filtering happens inside the database and can use its indexes.
+ * Conditions are joined with AND, for example:
+ * {@code RowCriteria.where().eq(LightLoginColumn.LAST_IPV4, ip).orderBy(LightLoginColumn.LAST_LOGIN, false).limit(10)}.
+ * The same criteria can also be evaluated against a single row with {@link #test(LightLoginDbRow)}.
+ */
+public final class RowCriteria implements Predicate<LightLoginDbRow> {
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private LightLoginColumn orderColumn = null;
+    private boolean ascending = true;
+    private int limit = -1;
+
+    private RowCriteria() {
+    }
+
+    /**
+     * @return An empty criteria, matching every row.
+     */
+    @NotNull
+    public static RowCriteria where() {
+        return new RowCriteria();
+    }
+
+    /**
+     * Match rows whose column is equal to the given value.
+     */
+    @NotNull
+    public RowCriteria eq(@NotNull final LightLoginColumn column, @NotNull final Object value) {
+        this.conditions.add(new Condition(ConditionType.EQUAL, column, List.of(checkType(column, value))));
+        return this;
+    }
+
+    /**
+     * Match rows whose column is between the two bounds, both inclusive.
+     * A null bound leaves that side open.
+     */
+    @NotNull
+    public RowCriteria range(@NotNull final LightLoginColumn column, @Nullable final Object min, @Nullable final Object max) {
+        if (min != null) {
+            this.conditions.add(new Condition(ConditionType.AT_LEAST, column, List.of(checkType(column, min))));
+        }
+        if (max != null) {
+            this.conditions.add(new Condition(ConditionType.AT_MOST, column, List.of(checkType(column, max))));
+        }
+        return this;
+    }
+
+    /**
+     * Match rows whose column is strictly greater than the given value.
+     */
+    @NotNull
+    public RowCriteria greaterThan(@NotNull final LightLoginColumn column, @NotNull final Object value) {
+        this.conditions.add(new Condition(ConditionType.GREATER, column, List.of(checkType(column, value))));
+        return this;
+    }
+
+    /**
+     * Match rows whose column is equal to any of the given values.
+     */
+    @NotNull
+    public RowCriteria in(@NotNull final LightLoginColumn column, @NotNull final Collection<?> values) {
+        final List<Object> checked = new ArrayList<>(values.size());
+        for (final Object value : values) {
+            checked.add(checkType(column, Objects.requireNonNull(value)));
+        }
+        this.conditions.add(new Condition(ConditionType.IN, column, checked));
+        return this;
+    }
+
+    /**
+     * Match rows whose column has no value.
+     */
+    @NotNull
+    public RowCriteria isNull(@NotNull final LightLoginColumn column) {
+        this.conditions.add(new Condition(ConditionType.NULL, column, List.of()));
+        return this;
+    }
+
+    /**
+     * @return A copy of the conditions of this criteria, without order and limit.
+     */
+    @NotNull
+    public RowCriteria copyConditions() {
+        final RowCriteria copy = new RowCriteria();
+        copy.conditions.addAll(this.conditions);
+        return copy;
+    }
+
+    @NotNull
+    public RowCriteria orderBy(@NotNull final LightLoginColumn column, final boolean ascending) {
+        this.orderColumn = column;
+        this.ascending = ascending;
+        return this;
+    }
+
+    /**
+     * @param limit The maximum amount of rows to return, must be positive.
+     */
+    @NotNull
+    public RowCriteria limit(final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive, got " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return The WHERE, ORDER BY and LIMIT clauses, with a placeholder for every value,
+     * or an empty string when nothing is filtered.
+     */
+    @NotNull
+    public String toSql() {
+        final StringBuilder builder = new StringBuilder(this.toWhereSql());
+
+        if (this.orderColumn != null) {
+            builder.append(" ORDER BY ").append(this.orderColumn.getName()).append(this.ascending ? " ASC" : " DESC");
+        }
+
+        if (this.limit > 0) {
+            builder.append(" LIMIT ").append(this.limit);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return Only the WHERE clause, as used when counting rows.
+     */
+    @NotNull
+    public String toWhereSql() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < this.conditions.size(); i++) {
+            final Condition condition = this.conditions.get(i);
+            builder.append(i == 0 ? " WHERE " : " AND ").append(condition.column.getName());
+
+            switch (condition.type) {
+                case EQUAL: {builder.append("=?"); break;}
+                case AT_LEAST: {builder.append(">=?"); break;}
+                case AT_MOST: {builder.append("<=?"); break;}
+                case GREATER: {builder.append(">?"); break;}
+                case NULL: {builder.append(" IS NULL"); break;}
+                case IN: {
+                    if (condition.values.isEmpty()) {
+                        builder.setLength(builder.length() - condition.column.getName().length());
+                        builder.append("1=0");
+                        break;
+                    }
+                    builder.append(" IN (?");
+                    for (int j = 1; j < condition.values.size(); j++) {
+                        builder.append(",?");
+                    }
+                    builder.append(')');
+                    break;
+                }
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Set the values of the placeholders created by {@link #toSql()} or {@link #toWhereSql()}.
+     *
+     * @param statement The statement to bind.
+     * @param firstIndex The index of the first placeholder of this criteria.
+     * @return The index after the last placeholder of this criteria.
+     * @throws SQLException If the statement refuses a value.
+     */
+    public int bind(@NotNull final PreparedStatement statement, final int firstIndex) throws SQLException {
+        return this.bind(statement, firstIndex, (target, index, column, value) -> {
+            if (value instanceof Long) {
+                target.setLong(index, (Long) value);
+            } else {
+                target.setString(index, (String) value);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #bind(PreparedStatement, int)}, letting the database choose how each value is stored.
+     */
+    public int bind(@NotNull final PreparedStatement statement, final int firstIndex, @NotNull final ValueBinder binder) throws SQLException {
+        int index = firstIndex;
+        for (final Condition condition : this.conditions) {
+            for (final Object value : condition.values) {
+                binder.bind(statement, index++, condition.column, value);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sets the value of a column on a statement placeholder.
+     */
+    @FunctionalInterface
+    public interface ValueBinder {
+        void bind(@NotNull PreparedStatement statement, int index, @NotNull LightLoginColumn column, @NotNull Object value) throws SQLException;
+    }
+
+    /**
+     * Evaluate the conditions of this criteria against a row, ignoring order and limit.
+     */
+    @Override
+    public boolean test(@NotNull final LightLoginDbRow row) {
+        for (final Condition condition : this.conditions) {
+            if (!condition.test(row.get(condition.column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    public LightLoginColumn getOrderColumn() {
+        return orderColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @NotNull
+    private static Object checkType(@NotNull final LightLoginColumn column, @NotNull final Object value) {
+        if (!column.getColumnType().isInstance(value)) {
+            throw new IllegalArgumentException("Illegal value type for " + column + ": " + value.getClass().getSimpleName());
+        }
+        return value;
+    }
+
+    private enum ConditionType {
+        EQUAL, AT_LEAST, AT_MOST, GREATER, IN, NULL
+    }
+
+    private static final class Condition {
+        private final ConditionType type;
+        private final LightLoginColumn column;
+        private final List<Object> values;
+
+        private Condition(@NotNull final ConditionType type, @NotNull final LightLoginColumn column, @NotNull final List<Object> values) {
+            this.type = type;
+            this.column = column;
+            this.values = values;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private boolean test(@Nullable final Object actual) {
+            switch (this.type) {
+                case NULL: return actual == null;
+                case EQUAL: return this.values.get(0).equals(actual);
+                case IN: return actual != null && this.values.contains(actual);
+                case AT_LEAST: return actual != null && ((Comparable) actual).compareTo(this.values.get(0)) >= 0;
+                case AT_MOST: return actual != null && ((Comparable) actual).compareTo(this.values.get(0)) <= 0;
+                case GREATER: return actual != null && ((Comparable) actual).compareTo(this.values.get(0)) > 0;
+                default: return false;
+            }
+        }
+    }
+}
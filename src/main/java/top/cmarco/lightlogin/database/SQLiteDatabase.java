@@ -25,32 +25,150 @@ package top.cmarco.lightlogin.database;
 
 import org.jetbrains.annotations.NotNull;
 import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
 import top.cmarco.lightlogin.data.LightLoginDbRow;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
 
+/**
+ * SQLite database in a single file of the plugin folder.
+ * With WAL journaling readers never wait for the writer, so writes go through one writer
+ * thread that group-commits them, while lookups run in parallel on read-only connections.
+ */
 public final class SQLiteDatabase extends CredentialPluginDatabase {
+    // Criteria queries can produce any amount of distinct SQL, only this many statements stay prepared.
+    private static final int MAX_CACHED_STATEMENTS = 64;
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final Set<String> SYNCHRONOUS_MODES = Set.of("OFF", "NORMAL", "FULL", "EXTRA");
+    // SQLITE_OPEN_READONLY, read by the driver from the connection properties.
+    private static final String READ_ONLY_OPEN_MODE = "1";
+
+    private final Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+
+    private final boolean wal;
+    private final String synchronous;
+    private final long mmapSizeBytes;
+    private final long cacheSizeKb;
+    private final int maxReadConnections;
+    private final int groupCommitMax;
+
+    private volatile GroupCommitWriter writer = null;
+    private volatile boolean walEnabled = false;
+    private volatile boolean readConnectionsEnabled = false;
+    private final BlockingQueue<ReadConnection> idleReadConnections = new LinkedBlockingQueue<>();
+    private final List<ReadConnection> readConnections = new CopyOnWriteArrayList<>();
+
     public SQLiteDatabase(final @NotNull LightLoginPlugin plugin) {
         super(plugin, DatabaseType.SQLITE);
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        final String synchronous = configuration.getSqliteSynchronous().toUpperCase(Locale.ROOT);
+        this.wal = configuration.isSqliteWal();
+        this.synchronous = SYNCHRONOUS_MODES.contains(synchronous) ? synchronous : "NORMAL";
+        this.mmapSizeBytes = Math.max(0L, configuration.getSqliteMmapSizeMb()) * 1024L * 1024L;
+        this.cacheSizeKb = Math.max(0L, configuration.getSqliteCacheSizeMb()) * 1024L;
+        this.maxReadConnections = Math.min(Math.max(0, configuration.getSqliteReadConnections()), super.executor.getThreads());
+        this.groupCommitMax = Math.max(1, configuration.getSqliteGroupCommitMax());
+    }
+
+    /**
+     * Reads run on the database threads, one per read connection.
+     */
+    @Override
+    protected int defaultThreads() {
+        return Math.max(1, super.plugin.getLightConfiguration().getSqliteReadConnections());
+    }
+
+    @Override
+    public void connect() {
+        super.connect();
+
+        final Connection connection = this.getConnection();
+        if (connection == null || this.writer != null) {
+            return;
+        }
+
+        boolean walEnabled = false;
+        try (final Statement statement = connection.createStatement()) {
+            if (this.wal) {
+                try (final ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode=WAL;")) {
+                    walEnabled = resultSet.next() && "wal".equalsIgnoreCase(resultSet.getString(1));
+                }
+            }
+            statement.execute("PRAGMA synchronous=" + this.synchronous + ";");
+            this.applyConnectionPragmas(statement);
+        } catch (SQLException exception) {
+            super.plugin.getLogger().warning("WARNING! Could not tune the SQLite connection, using its defaults.");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
+
+        // Without WAL a reader blocks the writer and the other way around, so reads stay on the writer connection.
+        this.walEnabled = walEnabled;
+        this.readConnectionsEnabled = walEnabled && this.maxReadConnections > 0;
+        this.writer = new GroupCommitWriter("LightLogin-SQLite-Writer", new GroupCommitWriter.Transaction() {
+            @Override
+            public void begin() throws SQLException {
+                connection.setAutoCommit(false);
+            }
+
+            @Override
+            public void commit() throws SQLException {
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+
+            @Override
+            public void rollback() throws SQLException {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }, this.groupCommitMax, super.plugin.getLogger());
+    }
+
+    /**
+     * Set the pragmas that only last for the connection they are run on.
+     */
+    private void applyConnectionPragmas(@NotNull Statement statement) throws SQLException {
+        statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS + ";");
+        statement.execute("PRAGMA mmap_size=" + this.mmapSizeBytes + ";");
+        if (this.cacheSizeKb > 0L) {
+            // A negative cache size is read by SQLite as KiB instead of pages.
+            statement.execute("PRAGMA cache_size=-" + this.cacheSizeKb + ";");
+        }
     }
 
-    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS lightlogin (" +
-            "uuid char(36) primary key not null," +
-            "password text not null," +
-            "salt text not null," +
-            "email varchar(64)," +
-            "last_login integer not null," +
-            "last_ipv4 integer not null" +
-            ");";
+    /**
+     * The binary table has no rowid, its rows are stored in the primary key b-tree itself.
+     */
+    @Override
+    protected @NotNull String createTableSql(@NotNull String table, boolean binary) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                (binary ? "uuid blob primary key not null," : "uuid char(36) primary key not null,") +
+                (binary ? "password blob not null," : "password text not null,") +
+                (binary ? "salt blob not null," : "salt text not null,") +
+                "email varchar(64)," +
+                "last_login integer not null," +
+                "last_ipv4 integer not null" +
+                (binary ? ") WITHOUT ROWID;" : ");");
+    }
 
     @Override
     protected @NotNull String createConnectionUrl() {
@@ -75,8 +193,14 @@ public final class SQLiteDatabase extends CredentialPluginDatabase {
      */
     @Override
     public void createTables() {
-        try (final Statement statement = super.connection.createStatement()) {
-            statement.execute(CREATE_TABLE);
+        try {
+            this.withConnection(connection -> {
+                try (final Statement statement = connection.createStatement()) {
+                    statement.execute(this.createTableSql("lightlogin", this.binarySchema));
+                }
+                this.migrateSchema(connection);
+                return null;
+            });
         } catch (SQLException exception) {
             super.plugin.setDisabled(true);
             super.plugin.getLogger().warning("WARNING! Error during table creation!");
@@ -86,32 +210,28 @@ public final class SQLiteDatabase extends CredentialPluginDatabase {
                 super.plugin.getServer().shutdown();
             }
         }
+
+        if (!super.plugin.isDisabled()) {
+            this.createIndexes();
+        }
     }
 
-    private final static String SELECT_WHERE = "SELECT * FROM lightlogin WHERE uuid=?;";
+    private static final String CREATE_IP_INDEX = "CREATE INDEX IF NOT EXISTS idx_lightlogin_last_ipv4 ON lightlogin (last_ipv4);";
 
-    @Override
-    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(SELECT_WHERE)) {
-                statement.setString(1, uuid);
-                ResultSet resultSet = statement.executeQuery();
-                if (resultSet.next()) {
-                    final String uuidUnused = resultSet.getString(1);
-                    final String hash = resultSet.getString(2);
-                    final String salt = resultSet.getString(3);
-                    final String email = resultSet.getString(4);
-                    final long lastLogin = resultSet.getLong(5);
-                    final long lastIpv4 = resultSet.getLong(6);
-                    return new LightLoginDbRow(uuid, hash, salt, email, lastLogin, lastIpv4);
+    /**
+     * Creates the last_ipv4 index, also on tables made by older versions.
+     */
+    private void createIndexes() {
+        try {
+            this.withConnection(connection -> {
+                try (final Statement statement = connection.createStatement()) {
+                    return statement.execute(CREATE_IP_INDEX);
                 }
-                resultSet.close();
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database search for " + uuid);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
-            return null;
-        });
+            });
+        } catch (SQLException exception) {
+            super.plugin.getLogger().warning("WARNING! Error during index creation, registrations will be slower!");
+            super.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
     }
 
     private final static String INSERT_UPDATE = "INSERT OR REPLACE INTO lightlogin(uuid, password, salt, email, last_login, last_ipv4) " +
@@ -119,16 +239,13 @@ public final class SQLiteDatabase extends CredentialPluginDatabase {
 
     @Override
     public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(INSERT_UPDATE)) {
-                statement.setString(1, row.getUuid());
-                statement.setString(2, row.getPasswordHash());
-                statement.setString(3, row.getPasswordSalt());
-                statement.setString(4, row.getEmail());
-                statement.setLong(5, row.getLastLogin());
-                statement.setLong(6, row.getLastIpv4());
-                statement.execute();
-                return row;
+        return this.supplyWrite(() -> {
+            try {
+                return this.withStatement(INSERT_UPDATE, statement -> {
+                    bindRow(statement, 1, row, this.binarySchema);
+                    statement.execute();
+                    return row;
+                });
             } catch (SQLException exception) {
                 super.plugin.getLogger().warning("WARNING! Error database search for " + row);
                 super.plugin.getLogger().warning(exception.getLocalizedMessage());
@@ -137,89 +254,179 @@ public final class SQLiteDatabase extends CredentialPluginDatabase {
         });
     }
 
-    private static final String UPDATE_TABLE = "UPDATE lightlogin SET {COLUMN}=? WHERE uuid=?;";
+    /**
+     * SQLite keeps a single connection open for the whole plugin lifetime, so the statements
+     * prepared on it are kept and reused instead of being parsed and planned on every call.
+     */
+    @Override
+    protected <T> T withStatement(@NotNull String sql, @NotNull StatementFunction<T> function) throws SQLException {
+        PreparedStatement statement = this.statements.get(sql);
+
+        if (statement == null) {
+            if (this.statements.size() >= MAX_CACHED_STATEMENTS) {
+                return super.withStatement(sql, function);
+            }
+
+            final Connection connection = this.getConnection();
+            if (connection == null) {
+                throw new SQLException("Not connected to the database.");
+            }
+
+            final PreparedStatement prepared = connection.prepareStatement(sql);
+            statement = this.statements.putIfAbsent(sql, prepared);
+            if (statement == null) {
+                statement = prepared;
+            } else {
+                prepared.close();
+            }
+        }
+
+        synchronized (statement) {
+            try {
+                return function.apply(statement);
+            } finally {
+                statement.clearParameters();
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    protected <T> CompletableFuture<T> supplyRead(@NotNull Supplier<T> query) {
+        return this.readConnectionsEnabled ? super.supplyRead(query) : this.supplyWrite(query);
+    }
 
+    @NotNull
     @Override
-    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
-
-        if (!column.getColumnType().isInstance(columnValue)) {
-            super.plugin.getLogger().warning("WARNING! Passed illegal value type for " + column + "equal to " + columnValue);
-            return CompletableFuture.completedFuture(null);
-        }
-
-        return CompletableFuture.supplyAsync(() -> {
-            try (final PreparedStatement statement = connection.prepareStatement(UPDATE_TABLE.replace("{COLUMN}", column.getName()))) {
-                if (column == LightLoginColumn.LAST_IPV4 || column == LightLoginColumn.LAST_LOGIN) {
-                    statement.setLong(1, (Long) columnValue);
-                } else if (column == LightLoginColumn.EMAIL || column == LightLoginColumn.PASSWORD || column == LightLoginColumn.SALT) {
-                    statement.setString(1, (String) columnValue);
-                } else {
-                    super.plugin.getLogger().warning("WARNING! Illegal lightlogin column value passed.");
-                    return null;
+    protected <T> CompletableFuture<T> supplyWrite(@NotNull Supplier<T> update) {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.submit(update) : super.supplyWrite(update);
+    }
+
+    @Override
+    protected <T> T withReadStatement(@NotNull String sql, @NotNull StatementFunction<T> function) throws SQLException {
+        if (!this.readConnectionsEnabled) {
+            return this.withStatement(sql, function);
+        }
+
+        final ReadConnection readConnection = this.borrowReadConnection();
+        try {
+            PreparedStatement statement = readConnection.statements.get(sql);
+            if (statement == null) {
+                if (readConnection.statements.size() >= MAX_CACHED_STATEMENTS) {
+                    try (final PreparedStatement uncached = readConnection.connection.prepareStatement(sql)) {
+                        return function.apply(uncached);
+                    }
                 }
+                statement = readConnection.connection.prepareStatement(sql);
+                readConnection.statements.put(sql, statement);
+            }
 
-                statement.setString(2, uuid);
-                statement.executeUpdate();
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database update for ");
-                super.plugin.getLogger().warning("uuid=" + uuid + " column="+column + " value=" + columnValue);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+            try {
+                return function.apply(statement);
+            } finally {
+                statement.clearParameters();
             }
-            return null;
-        });
+        } finally {
+            this.idleReadConnections.offer(readConnection);
+        }
     }
 
-    private static final String DELETE_ROW = "DELETE FROM lightlogin WHERE uuid=?;";
+    @NotNull
+    private ReadConnection borrowReadConnection() throws SQLException {
+        ReadConnection readConnection = this.idleReadConnections.poll();
+        if (readConnection != null) {
+            return readConnection;
+        }
+
+        synchronized (this.readConnections) {
+            if (this.readConnections.size() < this.maxReadConnections) {
+                final Properties properties = new Properties();
+                properties.setProperty("open_mode", READ_ONLY_OPEN_MODE);
+                final Connection connection = DriverManager.getConnection(this.createConnectionUrl(), properties);
+                try (final Statement statement = connection.createStatement()) {
+                    this.applyConnectionPragmas(statement);
+                }
+                readConnection = new ReadConnection(connection);
+                this.readConnections.add(readConnection);
+                return readConnection;
+            }
+        }
+
+        try {
+            return this.idleReadConnections.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection.");
+        }
+    }
 
     @Override
-    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
-        return CompletableFuture.supplyAsync(() -> {
+    public void close() {
+        final GroupCommitWriter writer = this.writer;
+        if (writer != null) {
+            writer.shutdown();
+        }
 
-            try (final PreparedStatement statement = connection.prepareStatement(DELETE_ROW)) {
-                statement.setString(1, uuid);
-                return statement.executeUpdate() != 0;
+        super.close();
+        for (final PreparedStatement statement : this.statements.values()) {
+            try {
+                statement.close();
             } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database delete row for " + uuid);
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
+                // The connection is already closed, the statement goes with it.
             }
+        }
+        this.statements.clear();
 
-            return null;
-        });
+        this.readConnectionsEnabled = false;
+        for (final ReadConnection readConnection : this.readConnections) {
+            try {
+                readConnection.connection.close();
+            } catch (SQLException exception) {
+                super.plugin.getLogger().warning("WARNING! Error closing a SQLite read connection.");
+            }
+        }
+        this.readConnections.clear();
+        this.idleReadConnections.clear();
     }
 
-    private static final String SEARCH_ALL = "SELECT * FROM lightlogin;";
+    public boolean isWalEnabled() {
+        return this.walEnabled;
+    }
 
-    @Override
-    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
-        return CompletableFuture.supplyAsync(() -> {
-            final List<LightLoginDbRow> list = new ArrayList<>();
+    public int getOpenReadConnections() {
+        return this.readConnections.size();
+    }
 
-            try (final PreparedStatement statement = connection.prepareStatement(SEARCH_ALL)) {
-                final ResultSet resultSet = statement.executeQuery();
+    public int getMaxReadConnections() {
+        return this.readConnectionsEnabled ? this.maxReadConnections : 0;
+    }
 
-                while (resultSet.next()) {
-                    final String uuid = resultSet.getString(1);
-                    final String hash = resultSet.getString(2);
-                    final String salt = resultSet.getString(3);
-                    final String email = resultSet.getString(4);
-                    final long lastLogin = resultSet.getLong(5);
-                    final long lastIpv4 = resultSet.getLong(6);
-                    final LightLoginDbRow dbRow = new LightLoginDbRow(uuid, hash, salt, email, lastLogin, lastIpv4);
+    public int getWriterQueueDepth() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getQueueDepth() : 0;
+    }
 
-                    if (predicate.test(dbRow)) {
-                        list.add(dbRow);
+    public long getWrites() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getWrites() : 0L;
+    }
 
-                    }
-                }
+    public long getCommits() {
+        final GroupCommitWriter writer = this.writer;
+        return writer != null ? writer.getCommits() : 0L;
+    }
 
-                resultSet.close();
+    /**
+     * A read-only connection with the statements prepared on it, used by one read at a time.
+     */
+    private static final class ReadConnection {
 
-            } catch (SQLException exception) {
-                super.plugin.getLogger().warning("WARNING! Error database search with predicate failed!");
-                super.plugin.getLogger().warning(exception.getLocalizedMessage());
-            }
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
 
-            return list;
-        });
+        private ReadConnection(@NotNull Connection connection) {
+            this.connection = connection;
+        }
     }
 }
@@ -0,0 +1,556 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves account lookups from a memory-mapped snapshot of the account table.
+ * Right after a restart every returning player is found in the snapshot, so the first wave
+ * of joins does not hit the database at all.
+ * Accounts written since the snapshot was taken are looked up in the database instead, and
+ * the snapshot is refreshed in the background by merging only those accounts into it.
+ * A snapshot left by a server that did not stop cleanly is thrown away and built again.
+ * Every refresh writes a new numbered file instead of replacing the mapped one, which some
+ * platforms do not allow; older files are deleted once they can be, at the latest on the next start.
+ * Only usable when no other server writes to the database, their changes never mark accounts as changed.
+ */
+public final class SnapshotPluginDatabase extends ForwardingPluginDatabase {
+
+    private static final String FILE_PREFIX = "accounts-";
+    private static final String FILE_SUFFIX = ".snapshot";
+    private static final String UNSORTED_FILE = "accounts.snapshot.unsorted";
+    // The single file written by earlier versions, which replaced it in place.
+    private static final String LEGACY_FILE = "accounts.snapshot";
+    // Present while a server uses the snapshot, a leftover one means the snapshot may be stale.
+    private static final String OPEN_MARKER = "accounts.snapshot.open";
+    private static final int FETCH_CHUNK = 500;
+
+    private final LightLoginPlugin plugin;
+    private final Path folder;
+    private final Path marker;
+    private final long refreshIntervalMillis;
+
+    // Accounts written since the snapshot was taken, with the sequence number of their last write.
+    private final ConcurrentHashMap<String, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile AccountSnapshot snapshot = AccountSnapshot.empty();
+    private volatile boolean built = false;
+    // Number of the file the current snapshot is mapped from, only changed while holding the refresh lock.
+    private long generation = 0L;
+    private BukkitTask refreshTask = null;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    public SnapshotPluginDatabase(@NotNull final LightLoginPlugin plugin, @NotNull final PluginDatabase delegate) {
+        super(delegate);
+        this.plugin = plugin;
+        this.folder = plugin.getDataFolder().toPath();
+        this.marker = plugin.getDataFolder().toPath().resolve(OPEN_MARKER);
+        this.refreshIntervalMillis = Math.max(1L, plugin.getLightConfiguration().getSnapshotRefreshSeconds()) * 1000L;
+    }
+
+    /**
+     * Map the snapshot left by the last clean shutdown and start refreshing it.
+     * Without a usable snapshot, the first refresh builds it from the whole account table.
+     */
+    public void start() {
+        if (this.refreshTask != null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(this.folder.resolve(LEGACY_FILE));
+            if (Files.exists(this.marker)) {
+                this.plugin.getLogger().warning("The server did not stop cleanly, building the account snapshot again.");
+                this.deleteSnapshots(Long.MAX_VALUE);
+            }
+            Files.write(this.marker, new byte[0]);
+        } catch (IOException exception) {
+            this.plugin.getLogger().warning("WARNING! Could not mark the account snapshot as in use, it will not be used.");
+            this.plugin.getLogger().warning(exception.getLocalizedMessage());
+            return;
+        }
+
+        try {
+            this.generation = this.latestGeneration();
+            final AccountSnapshot opened = this.generation == 0L ? null : AccountSnapshot.open(this.snapshotPath(this.generation));
+            if (opened != null) {
+                this.snapshot = opened;
+                this.built = true;
+            }
+            this.deleteSnapshots(this.generation);
+        } catch (IOException exception) {
+            this.plugin.getLogger().warning("WARNING! Could not read the account snapshot, building it again.");
+            this.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
+
+        final long ticks = Math.max(1L, this.refreshIntervalMillis / 50L);
+        this.refreshTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin,
+                this::refresh, this.built ? ticks : 1L, ticks);
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        final AccountSnapshot snapshot = this.snapshot;
+        if (snapshot.size() != 0 && !this.dirty.containsKey(uuid)) {
+            final UUID key = parse(uuid);
+            final int index = key == null ? -1 : snapshot.find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            if (index >= 0) {
+                this.hits.incrementAndGet();
+                return CompletableFuture.completedFuture(snapshot.read(index));
+            }
+        }
+
+        this.misses.incrementAndGet();
+        return super.searchRowFromPK(uuid);
+    }
+
+    /**
+     * Mark an account as changed. It is marked again once the write is done, so a refresh
+     * that read the account before the write landed does not clear the mark.
+     */
+    @NotNull
+    private <T> CompletableFuture<T> track(@NotNull Iterable<String> uuids, @NotNull CompletableFuture<T> write) {
+        return write.whenComplete((result, throwable) -> this.touch(uuids));
+    }
+
+    private void touch(@NotNull Iterable<String> uuids) {
+        for (final String uuid : uuids) {
+            this.dirty.put(uuid, this.sequence.incrementAndGet());
+        }
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
+        final List<String> uuids = List.of(row.getUuid());
+        this.touch(uuids);
+        return this.track(uuids, super.addRow(row));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+        final List<String> uuids = List.of(uuid);
+        this.touch(uuids);
+        return this.track(uuids, super.updateRow(uuid, column, columnValue));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        final List<String> uuids = List.of(uuid);
+        this.touch(uuids);
+        return this.track(uuids, super.updateColumns(uuid, columns));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        final List<String> uuids = new ArrayList<>(updates.keySet());
+        this.touch(uuids);
+        return this.track(uuids, super.updateRows(updates));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        final List<String> uuids = List.of(uuid);
+        this.touch(uuids);
+        return this.track(uuids, super.deleteRow(uuid));
+    }
+
+    /**
+     * Bring the snapshot up to date, building it from scratch the first time.
+     */
+    private void refresh() {
+        if (!this.refreshLock.tryLock()) {
+            return;
+        }
+
+        try {
+            final long refreshedUpTo = this.sequence.get();
+            final Path target = this.snapshotPath(this.generation + 1);
+            final AccountSnapshot refreshed = this.built ? this.merge(target) : this.build(target);
+            if (refreshed == null) {
+                return;
+            }
+
+            this.replaceSnapshot(refreshed);
+            this.built = true;
+            this.refreshes.incrementAndGet();
+            this.dirty.entrySet().removeIf(entry -> entry.getValue() <= refreshedUpTo);
+        } catch (IOException | UncheckedIOException exception) {
+            this.plugin.getLogger().warning("WARNING! Error refreshing the account snapshot.");
+            this.plugin.getLogger().warning(exception.getLocalizedMessage());
+        } finally {
+            this.refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Switch to a snapshot just written to the next numbered file and delete the older files.
+     * Must be called while holding the refresh lock.
+     */
+    private void replaceSnapshot(@NotNull final AccountSnapshot refreshed) {
+        this.snapshot = refreshed;
+        this.generation++;
+        this.deleteSnapshots(this.generation);
+    }
+
+    @NotNull
+    private Path snapshotPath(final long generation) {
+        return this.folder.resolve(FILE_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    /**
+     * @return The number of the newest snapshot file, 0 if there is none.
+     */
+    private long latestGeneration() throws IOException {
+        long latest = 0L;
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(this.folder, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (final Path file : files) {
+                latest = Math.max(latest, generationOf(file));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * @return The number of a snapshot file, 0 if the name is not one of a snapshot file.
+     */
+    private static long generationOf(@NotNull final Path file) {
+        final String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Delete the snapshot files older than the given number. A file that is still mapped cannot be
+     * deleted on some platforms, it is left for a later refresh or the next start.
+     */
+    private void deleteSnapshots(final long before) {
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(this.folder, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (final Path file : files) {
+                final long fileGeneration = generationOf(file);
+                if (fileGeneration != 0L && fileGeneration < before) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException exception) {
+                        // Still mapped, tried again later.
+                    }
+                }
+            }
+        } catch (IOException exception) {
+            this.plugin.getLogger().warning(exception.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Write a snapshot of the whole account table.
+     * Rows arrive in no particular order, so they are first written as they come and only
+     * their uuids are sorted in memory, then read back in uuid order. The unsorted file is read
+     * with plain reads rather than mapped, so it can always be deleted afterwards.
+     *
+     * @param target The file to write the snapshot to.
+     * @return The new snapshot, null if reading the accounts failed.
+     */
+    @Nullable
+    private AccountSnapshot build(@NotNull final Path target) throws IOException {
+        final Path unsorted = this.folder.resolve(UNSORTED_FILE);
+        try (final FileChannel channel = FileChannel.open(unsorted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            final ByteBuffer record = ByteBuffer.allocate(AccountSnapshot.RECORD_BYTES);
+            final long[][] keys = {new long[1024], new long[1024]};
+            final int[] count = new int[1];
+
+            final Long visited = super.delegate.forEachRow(RowCriteria.where(), row -> {
+                if (!row.hasCompactUuid() || !AccountSnapshot.encode(row.getUuidMost(), row.getUuidLeast(), row, record)) {
+                    return;
+                }
+                try {
+                    record.clear();
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+                if (count[0] == keys[0].length) {
+                    keys[0] = Arrays.copyOf(keys[0], count[0] * 2);
+                    keys[1] = Arrays.copyOf(keys[1], count[0] * 2);
+                }
+                keys[0][count[0]] = row.getUuidMost();
+                keys[1][count[0]] = row.getUuidLeast();
+                count[0]++;
+            }).join();
+
+            if (visited == null) {
+                return null;
+            }
+
+            final int[] order = new int[count[0]];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            sort(order, keys[0], keys[1], 0, order.length);
+
+            try (final AccountSnapshot.Writer writer = new AccountSnapshot.Writer(target)) {
+                for (final int index : order) {
+                    record.clear();
+                    long position = (long) index * AccountSnapshot.RECORD_BYTES;
+                    while (record.hasRemaining()) {
+                        final int read = channel.read(record, position);
+                        if (read < 0) {
+                            throw new IOException("Unexpected end of the unsorted snapshot file.");
+                        }
+                        position += read;
+                    }
+                    writer.append(record);
+                }
+                return writer.commit();
+            }
+        } finally {
+            Files.deleteIfExists(unsorted);
+        }
+    }
+
+    /**
+     * Write a new snapshot with the changed accounts read again from the database,
+     * copying every other record from the current snapshot as it is.
+     *
+     * @param target The file to write the snapshot to.
+     * @return The new snapshot, null if nothing changed.
+     */
+    @Nullable
+    private AccountSnapshot merge(@NotNull final Path target) throws IOException {
+        final List<String> changed = new ArrayList<>(this.dirty.keySet());
+        if (changed.isEmpty()) {
+            return null;
+        }
+
+        // Accounts missing from the result were deleted, they are dropped from the snapshot.
+        final Map<String, LightLoginDbRow> rows = new HashMap<>();
+        for (int from = 0; from < changed.size(); from += FETCH_CHUNK) {
+            final List<String> chunk = changed.subList(from, Math.min(changed.size(), from + FETCH_CHUNK));
+            final List<LightLoginDbRow> found = super.delegate.searchRows(RowCriteria.where().in(LightLoginColumn.UUID, chunk)).join();
+            if (found == null) {
+                // The accounts stay dirty, so they are still looked up in the database until the next refresh.
+                throw new IOException("Could not read the changed accounts from the database.");
+            }
+            for (final LightLoginDbRow row : found) {
+                rows.put(row.getUuid(), row);
+            }
+        }
+
+        final List<Change> changes = new ArrayList<>(changed.size());
+        for (final String uuid : changed) {
+            final UUID key = parse(uuid);
+            if (key != null) {
+                changes.add(new Change(key.getMostSignificantBits(), key.getLeastSignificantBits(), rows.get(uuid)));
+            }
+        }
+        changes.sort((first, second) -> AccountSnapshot.compare(first.msb, first.lsb, second.msb, second.lsb));
+
+        final AccountSnapshot current = this.snapshot;
+        final ByteBuffer record = ByteBuffer.allocate(AccountSnapshot.RECORD_BYTES);
+        try (final AccountSnapshot.Writer writer = new AccountSnapshot.Writer(target)) {
+            int index = 0;
+            int change = 0;
+            while (index < current.size() || change < changes.size()) {
+                final int comparison = index == current.size() ? 1 : change == changes.size() ? -1
+                        : AccountSnapshot.compare(current.msb(index), current.lsb(index), changes.get(change).msb, changes.get(change).lsb);
+
+                if (comparison < 0) {
+                    writer.append(current.record(index++));
+                    continue;
+                }
+
+                final Change next = changes.get(change++);
+                if (comparison == 0) {
+                    index++;
+                }
+                if (next.row != null && AccountSnapshot.encode(next.msb, next.lsb, next.row, record)) {
+                    writer.append(record);
+                }
+            }
+            return writer.commit();
+        }
+    }
+
+    private static final class Change {
+        private final long msb;
+        private final long lsb;
+        private final LightLoginDbRow row;
+
+        private Change(final long msb, final long lsb, @Nullable final LightLoginDbRow row) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Sort record numbers by the uuid of their record, without boxing them.
+     */
+    private static void sort(final int[] order, final long[] msb, final long[] lsb, int from, int to) {
+        while (to - from > 16) {
+            final int pivot = order[(from + to) >>> 1];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (AccountSnapshot.compare(msb[order[i]], lsb[order[i]], msb[pivot], lsb[pivot]) < 0) {
+                    i++;
+                }
+                while (AccountSnapshot.compare(msb[order[j]], lsb[order[j]], msb[pivot], lsb[pivot]) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            // Recurse into the smaller side only, so the stack stays shallow.
+            if (j - from < to - i) {
+                sort(order, msb, lsb, from, j + 1);
+                from = i;
+            } else {
+                sort(order, msb, lsb, i, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            final int current = order[i];
+            int j = i - 1;
+            while (j >= from && AccountSnapshot.compare(msb[order[j]], lsb[order[j]], msb[current], lsb[current]) > 0) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    /**
+     * @return The uuid, null unless it is written in the canonical form stored in the snapshot.
+     */
+    @Nullable
+    private static UUID parse(@NotNull String uuid) {
+        return LightLoginDbRow.parseUuid(uuid);
+    }
+
+    /**
+     * Merge the last changes into the snapshot, so the next start can use it right away.
+     */
+    @Override
+    public void close() {
+        if (this.refreshTask != null) {
+            this.refreshTask.cancel();
+            this.refreshTask = null;
+        }
+
+        this.refreshLock.lock();
+        try {
+            boolean clean = true;
+            if (this.built && !this.dirty.isEmpty()) {
+                try {
+                    final AccountSnapshot refreshed = this.merge(this.snapshotPath(this.generation + 1));
+                    if (refreshed != null) {
+                        this.replaceSnapshot(refreshed);
+                    }
+                } catch (IOException | UncheckedIOException exception) {
+                    this.plugin.getLogger().warning("WARNING! Error saving the account snapshot.");
+                    this.plugin.getLogger().warning(exception.getLocalizedMessage());
+                    clean = false;
+                }
+            }
+
+            if (clean) {
+                try {
+                    Files.deleteIfExists(this.marker);
+                } catch (IOException exception) {
+                    this.plugin.getLogger().warning(exception.getLocalizedMessage());
+                }
+            }
+        } finally {
+            this.refreshLock.unlock();
+        }
+
+        super.close();
+    }
+
+    public int getAccounts() {
+        return this.snapshot.size();
+    }
+
+    public int getChangedAccounts() {
+        return this.dirty.size();
+    }
+
+    public long getSnapshotAgeSeconds() {
+        final long createdAt = this.snapshot.getCreatedAt();
+        return createdAt == 0L ? -1L : (System.currentTimeMillis() - createdAt) / 1000L;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getRefreshes() {
+        return this.refreshes.get();
+    }
+}
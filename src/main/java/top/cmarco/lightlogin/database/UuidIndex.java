@@ -0,0 +1,175 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+/**
+ * Open addressing hash table from a uuid, stored as its two halves, to a file offset.
+ * Keys and values live in three primitive arrays, so an entry costs no object
+ * and a lookup touches no pointer but the arrays themselves.
+ * Not thread safe, callers guard it with their own lock.
+ */
+final class UuidIndex {
+
+    // Offsets are never 0 because the log starts with its header, so 0 marks an empty slot.
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mostSignificant;
+    private long[] leastSignificant;
+    private long[] offsets;
+    private int mask;
+    private int size = 0;
+
+    UuidIndex(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4L < expectedSize) {
+            capacity <<= 1;
+        }
+        this.allocate(capacity);
+    }
+
+    private void allocate(final int capacity) {
+        this.mostSignificant = new long[capacity];
+        this.leastSignificant = new long[capacity];
+        this.offsets = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(final long msb, final long lsb) {
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private int slot(final long msb, final long lsb) {
+        int slot = hash(msb, lsb) & this.mask;
+        while (this.offsets[slot] != EMPTY && (this.mostSignificant[slot] != msb || this.leastSignificant[slot] != lsb)) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return The offset of the uuid, -1 if it is not in the index.
+     */
+    long get(final long msb, final long lsb) {
+        final long offset = this.offsets[this.slot(msb, lsb)];
+        return offset == EMPTY ? -1L : offset;
+    }
+
+    /**
+     * @return The previous offset of the uuid, -1 if it was not in the index.
+     */
+    long put(final long msb, final long lsb, final long offset) {
+        final int slot = this.slot(msb, lsb);
+        final long previous = this.offsets[slot];
+        this.offsets[slot] = offset;
+        if (previous != EMPTY) {
+            return previous;
+        }
+
+        this.mostSignificant[slot] = msb;
+        this.leastSignificant[slot] = lsb;
+        if (++this.size > (this.mask + 1) * 3L / 4L) {
+            this.resize();
+        }
+        return -1L;
+    }
+
+    /**
+     * @return The offset the uuid had, -1 if it was not in the index.
+     */
+    long remove(final long msb, final long lsb) {
+        int slot = this.slot(msb, lsb);
+        final long previous = this.offsets[slot];
+        if (previous == EMPTY) {
+            return -1L;
+        }
+
+        this.offsets[slot] = EMPTY;
+        this.size--;
+
+        // Shift the following entries of the probe sequence back, so no lookup stops at the hole.
+        int next = slot;
+        while (true) {
+            next = (next + 1) & this.mask;
+            if (this.offsets[next] == EMPTY) {
+                return previous;
+            }
+            final int home = hash(this.mostSignificant[next], this.leastSignificant[next]) & this.mask;
+            final boolean between = slot <= next ? (slot < home && home <= next) : (slot < home || home <= next);
+            if (!between) {
+                this.mostSignificant[slot] = this.mostSignificant[next];
+                this.leastSignificant[slot] = this.leastSignificant[next];
+                this.offsets[slot] = this.offsets[next];
+                this.offsets[next] = EMPTY;
+                slot = next;
+            }
+        }
+    }
+
+    private void resize() {
+        final long[] oldMostSignificant = this.mostSignificant;
+        final long[] oldLeastSignificant = this.leastSignificant;
+        final long[] oldOffsets = this.offsets;
+        this.allocate(oldOffsets.length << 1);
+
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] != EMPTY) {
+                final int slot = this.slot(oldMostSignificant[i], oldLeastSignificant[i]);
+                this.mostSignificant[slot] = oldMostSignificant[i];
+                this.leastSignificant[slot] = oldLeastSignificant[i];
+                this.offsets[slot] = oldOffsets[i];
+            }
+        }
+    }
+
+    /**
+     * @return A copy of every offset in the index, in no particular order.
+     */
+    long[] offsets() {
+        final long[] offsets = new long[this.size];
+        int count = 0;
+        for (final long offset : this.offsets) {
+            if (offset != EMPTY) {
+                offsets[count++] = offset;
+            }
+        }
+        return offsets;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The memory held by the index arrays.
+     */
+    long getRetainedBytes() {
+        return this.offsets.length * 3L * Long.BYTES;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0.
+ * If a copy of the MPL was not distributed with this file,
+ * You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package top.cmarco.lightlogin.database;
+
+
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Buffers the last login and last address updates in front of another PluginDatabase.
+ * Updates of the same account are merged, and all buffered accounts are written in one
+ * batched transaction every flush interval or once enough accounts are waiting, so a mass
+ * disconnect costs a handful of statements instead of two per player.
+ * Lookups of an account see its buffered values, queries over many rows flush first,
+ * and closing the database writes everything that is still buffered.
+ * A batch that fails to be written goes back in the buffer and is tried again on the next flush.
+ */
+public final class WriteBehindPluginDatabase extends ForwardingPluginDatabase {
+
+    private final LightLoginPlugin plugin;
+    private final long flushIntervalMillis;
+    private final int maxPending;
+
+    private final ConcurrentHashMap<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+    // The batch being written right now, still visible to lookups until its transaction is over.
+    private final ConcurrentHashMap<String, Map<LightLoginColumn, Object>> flushing = new ConcurrentHashMap<>();
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private BukkitTask flushTask = null;
+    private volatile boolean closed = false;
+
+    private final AtomicLong bufferedUpdates = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public WriteBehindPluginDatabase(@NotNull final LightLoginPlugin plugin, @NotNull final PluginDatabase delegate) {
+        super(delegate);
+        this.plugin = plugin;
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        this.flushIntervalMillis = Math.max(50L, configuration.getWriteBehindFlushIntervalMillis());
+        this.maxPending = Math.max(1, configuration.getWriteBehindMaxPending());
+    }
+
+    private static final class PendingUpdate {
+        private final Map<LightLoginColumn, Object> columns = new EnumMap<>(LightLoginColumn.class);
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>(2);
+    }
+
+    /**
+     * @return true if updates of this column are buffered.
+     */
+    private static boolean isBuffered(@NotNull final LightLoginColumn column) {
+        return column == LightLoginColumn.LAST_LOGIN || column == LightLoginColumn.LAST_IPV4;
+    }
+
+    public void start() {
+        if (this.flushTask != null) {
+            return;
+        }
+        final long ticks = Math.max(1L, this.flushIntervalMillis / 50L);
+        this.flushTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::flush, ticks, ticks);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRow(@NotNull String uuid, @NotNull LightLoginColumn column, @NotNull Object columnValue) {
+        if (this.closed || !isBuffered(column) || !column.getColumnType().isInstance(columnValue)) {
+            return super.delegate.updateRow(uuid, column, columnValue);
+        }
+        return this.updateColumns(uuid, Map.of(column, columnValue));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateColumns(@NotNull String uuid, @NotNull Map<LightLoginColumn, Object> columns) {
+        boolean buffered = !this.closed && !columns.isEmpty();
+        for (final Map.Entry<LightLoginColumn, Object> column : columns.entrySet()) {
+            buffered &= isBuffered(column.getKey()) && column.getKey().getColumnType().isInstance(column.getValue());
+        }
+
+        if (!buffered) {
+            this.supersede(uuid, columns.keySet());
+            return super.delegate.updateColumns(uuid, columns);
+        }
+
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+        this.pending.compute(uuid, (key, update) -> {
+            final PendingUpdate merged = update == null ? new PendingUpdate() : update;
+            merged.columns.putAll(columns);
+            merged.waiters.add(written);
+            return merged;
+        });
+        this.bufferedUpdates.incrementAndGet();
+
+        if (this.pending.size() >= this.maxPending) {
+            this.flush();
+        }
+        return written;
+    }
+
+    @Override
+    public CompletableFuture<Void> updateRows(@NotNull Map<String, ? extends Map<LightLoginColumn, Object>> updates) {
+        updates.forEach((uuid, columns) -> this.supersede(uuid, columns.keySet()));
+        return super.delegate.updateRows(updates);
+    }
+
+    /**
+     * Drop buffered values of columns that are being written directly,
+     * so that they cannot be written after the newer value.
+     */
+    private void supersede(@NotNull final String uuid, @NotNull final Set<LightLoginColumn> columns) {
+        this.pending.computeIfPresent(uuid, (key, update) -> {
+            update.columns.keySet().removeAll(columns);
+            if (!update.columns.isEmpty()) {
+                return update;
+            }
+            update.waiters.forEach(waiter -> waiter.complete(null));
+            return null;
+        });
+        // The batch being written keeps its own copy, this only stops a failed batch from bringing them back.
+        this.flushing.computeIfPresent(uuid, (key, inFlight) -> {
+            final Map<LightLoginColumn, Object> remaining = new EnumMap<>(inFlight);
+            remaining.keySet().removeAll(columns);
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+
+    /**
+     * Write every buffered update in a single transaction.
+     * Flushes run one after another, so an older batch can never overwrite a newer one.
+     *
+     * @return A future completed once the buffered updates are written,
+     * exceptionally if they could not be, in which case they are buffered again.
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> flush() {
+        this.lastFlush = this.lastFlush.handle((v, throwable) -> null).thenCompose(v -> this.writePending());
+        return this.lastFlush;
+    }
+
+    @NotNull
+    private CompletableFuture<Void> writePending() {
+        if (this.pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final Map<String, Map<LightLoginColumn, Object>> batch = new HashMap<>();
+        final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        for (final String uuid : this.pending.keySet()) {
+            this.pending.computeIfPresent(uuid, (key, update) -> {
+                // Moved while holding the entry, so a lookup always finds the values in one of the two maps.
+                this.flushing.put(uuid, update.columns);
+                batch.put(uuid, update.columns);
+                waiters.addAll(update.waiters);
+                return null;
+            });
+        }
+
+        this.flushes.incrementAndGet();
+        this.flushedRows.addAndGet(batch.size());
+
+        return super.delegate.updateRows(batch).whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                this.requeueFlushing();
+            }
+            this.flushing.clear();
+            for (final CompletableFuture<Void> waiter : waiters) {
+                if (throwable != null) {
+                    waiter.completeExceptionally(throwable);
+                } else {
+                    waiter.complete(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Put the values of a batch that could not be written back in the buffer,
+     * behind any value buffered for the same column since the batch was taken.
+     */
+    private void requeueFlushing() {
+        this.flushing.forEach((uuid, columns) -> this.pending.compute(uuid, (key, update) -> {
+            final PendingUpdate merged = update == null ? new PendingUpdate() : update;
+            columns.forEach(merged.columns::putIfAbsent);
+            return merged;
+        }));
+        this.plugin.getLogger().warning("WARNING! Could not write " + this.flushing.size() + " buffered account updates, they will be tried again.");
+    }
+
+    /**
+     * Flush before a query, running it even if the flush failed: the updates it could not write stay buffered.
+     */
+    @NotNull
+    private CompletableFuture<Void> flushBefore() {
+        return this.flush().handle((v, throwable) -> null);
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> searchRowFromPK(@NotNull String uuid) {
+        // Taken before the query: whatever the database returns, these values are at least as recent.
+        final Map<LightLoginColumn, Object> buffered = new EnumMap<>(LightLoginColumn.class);
+        this.pending.computeIfPresent(uuid, (key, update) -> {
+            buffered.putAll(update.columns);
+            return update;
+        });
+        final Map<LightLoginColumn, Object> inFlight = this.flushing.get(uuid);
+        if (inFlight != null) {
+            inFlight.forEach(buffered::putIfAbsent);
+        }
+
+        if (buffered.isEmpty()) {
+            return super.delegate.searchRowFromPK(uuid);
+        }
+
+        return super.delegate.searchRowFromPK(uuid).thenApply(row -> {
+            if (row == null) {
+                return null;
+            }
+            LightLoginDbRow updated = row;
+            for (final Map.Entry<LightLoginColumn, Object> column : buffered.entrySet()) {
+                updated = updated.with(column.getKey(), column.getValue());
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public CompletableFuture<LightLoginDbRow> addRow(@NotNull LightLoginDbRow row) {
+        this.discard(row.getUuid());
+        return this.flushBefore().thenCompose(v -> super.delegate.addRow(row));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteRow(@NotNull String uuid) {
+        this.discard(uuid);
+        return this.flushBefore().thenCompose(v -> super.delegate.deleteRow(uuid));
+    }
+
+    /**
+     * Drop the buffered updates of an account that is being replaced or removed.
+     */
+    private void discard(@NotNull final String uuid) {
+        this.flushing.remove(uuid);
+        final PendingUpdate update = this.pending.remove(uuid);
+        if (update != null) {
+            update.waiters.forEach(waiter -> waiter.complete(null));
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRowsPredicate(@NotNull Predicate<? super LightLoginDbRow> predicate) {
+        return this.flushBefore().thenCompose(v -> super.delegate.searchRowsPredicate(predicate));
+    }
+
+    @Override
+    public CompletableFuture<List<LightLoginDbRow>> searchRows(@NotNull RowCriteria criteria) {
+        return this.flushBefore().thenCompose(v -> super.delegate.searchRows(criteria));
+    }
+
+    @Override
+    public CompletableFuture<Long> forEachRow(@NotNull RowCriteria criteria, @NotNull Consumer<? super LightLoginDbRow> consumer) {
+        return this.flushBefore().thenCompose(v -> super.delegate.forEachRow(criteria, consumer));
+    }
+
+    @Override
+    public CompletableFuture<Integer> countRows(@NotNull RowCriteria criteria) {
+        return this.flushBefore().thenCompose(v -> super.delegate.countRows(criteria));
+    }
+
+    /**
+     * Write everything still buffered, waiting for it, then close the database.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.flushTask != null) {
+            this.flushTask.cancel();
+            this.flushTask = null;
+        }
+        try {
+            this.flush().join();
+        } catch (CompletionException exception) {
+            this.plugin.getLogger().warning("WARNING! " + this.pending.size() + " buffered account updates are lost.");
+        }
+        super.close();
+    }
+
+    public int getPendingRows() {
+        return this.pending.size();
+    }
+
+    public long getBufferedUpdates() {
+        return bufferedUpdates.get();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The compression function G of Argon2, which is where almost all of the time of a hash goes.
+ * Every implementation must produce exactly the same blocks.
+ */
+interface Argon2BlockFunction {
+
+    int BLOCK_WORDS = 128;
+
+    /**
+     * next = G(previous, reference), xor-ed with the old content of next when {@code withXor} is set.
+     *
+     * @param memory The memory matrix, blocks are given as word offsets into it.
+     * @param r A scratch block.
+     * @param z A scratch block.
+     */
+    void fillBlock(final long[] memory, final int previous, final int reference, final int next,
+                   final boolean withXor, final long[] r, final long[] z);
+
+    /**
+     * output = G(zero block, input), used to generate the addresses of the data independent slices.
+     * The output may be the same array as the input.
+     *
+     * @param scratch A scratch block.
+     */
+    void compress(final long[] input, final long[] output, final long[] scratch);
+
+    /**
+     * Load the implementation using {@code jdk.incubator.vector}.
+     * The module is only present when the server was started with
+     * {@code --add-modules jdk.incubator.vector}, so the class is only ever loaded by name.
+     *
+     * @return The vector implementation, or null if this JVM cannot run it efficiently.
+     */
+    @Nullable
+    static Argon2BlockFunction loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+
+        try {
+            final Class<?> vectorClass = Class.forName("top.cmarco.lightlogin.encrypt.VectorBlockFunction");
+            return (Argon2BlockFunction) vectorClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException exception) {
+            return null;
+        }
+    }
+
+    @NotNull
+    static Argon2BlockFunction scalar() {
+        return ScalarBlockFunction.INSTANCE;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Chooses the Argon2 parameters for new passwords by benchmarking the machine the server runs on.
+ * The goal is that the configured amount of concurrent logins can be hashed by the hashing
+ * workers within the configured window, while every hash uses as much memory as the budget allows.
+ * The result never goes below the configured parameters, a slow machine only gets the configured ones.
+ * The result is saved in the data folder and only computed again when the machine or the
+ * calibration settings change.
+ */
+public final class Argon2Calibration {
+
+    private static final String FILE_NAME = "calibration.yml";
+    private static final int MIN_MEMORY_KB = 19456;
+    private static final int MAX_MEMORY_KB = 262144;
+    private static final int MIN_ITERATIONS = 2;
+    private static final int MAX_ITERATIONS = 10;
+    private static final int MAX_PARALLELISM = 4;
+    private static final int SAMPLES = 3;
+
+    private final LightLoginPlugin plugin;
+    private final int workers;
+    private final int memoryBudgetKb;
+    private final Argon2Cost minimumCost;
+
+    private Argon2Cost cost = null;
+    private double hashMillis = 0d;
+    private long calibratedAt = 0L;
+
+    public Argon2Calibration(@NotNull final LightLoginPlugin plugin, final int workers, final int memoryBudgetKb,
+                             @NotNull final Argon2Cost minimumCost) {
+        this.plugin = plugin;
+        this.workers = workers;
+        this.memoryBudgetKb = memoryBudgetKb;
+        this.minimumCost = minimumCost;
+    }
+
+    /**
+     * Load the saved calibration for this machine, or benchmark it if there is none.
+     *
+     * @return The Argon2 parameters to use for new passwords.
+     */
+    @NotNull
+    public Argon2Cost loadOrCalibrate() {
+        final File file = new File(this.plugin.getDataFolder(), FILE_NAME);
+        final String fingerprint = this.fingerprint();
+
+        if (file.exists()) {
+            final YamlConfiguration saved = YamlConfiguration.loadConfiguration(file);
+            if (fingerprint.equals(saved.getString("fingerprint"))) {
+                try {
+                    this.cost = this.atLeastMinimum(new Argon2Cost(saved.getInt("iterations"), saved.getInt("memory-kb"),
+                            saved.getInt("parallelism"), Argon2Cost.LEGACY.getHashLength()));
+                    this.hashMillis = saved.getDouble("hash-millis", 0d);
+                    this.calibratedAt = saved.getLong("calibrated-at", 0L);
+                    return this.cost;
+                } catch (IllegalArgumentException exception) {
+                    this.plugin.getLogger().warning("Invalid saved Argon2 calibration, running it again.");
+                }
+            }
+        }
+
+        this.plugin.sendConsoleColoured("&7[ &a&l. . .&r &7] &eCalibrating Argon2 parameters for this machine...");
+        this.calibrate();
+        this.plugin.sendConsoleColoured("&7[ &a&l✔&r &7] &aArgon2 calibrated: &e" + this.cost + " &a(" + Math.round(this.hashMillis) + " ms per hash)");
+
+        final YamlConfiguration result = new YamlConfiguration();
+        result.set("fingerprint", fingerprint);
+        result.set("memory-kb", this.cost.getMemoryKb());
+        result.set("iterations", this.cost.getIterations());
+        result.set("parallelism", this.cost.getParallelism());
+        result.set("hash-millis", this.hashMillis);
+        result.set("calibrated-at", this.calibratedAt);
+        try {
+            result.save(file);
+        } catch (IOException exception) {
+            this.plugin.getLogger().warning("Could not save Argon2 calibration: " + exception.getLocalizedMessage());
+        }
+
+        return this.cost;
+    }
+
+    private void calibrate() {
+        final LightConfiguration configuration = this.plugin.getLightConfiguration();
+        final double targetMillis = this.targetMillis(configuration);
+        final int parallelism = Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() / this.workers));
+
+        // Keep pooled memory matrices out of the live pool, they would stay retained at the largest tried size.
+        final PasswordHasher current = Argon2Utilities.getPasswordHasher();
+        final PasswordHasher hasher = current instanceof PooledArgon2Hasher
+                ? ((PooledArgon2Hasher) current).withMaxPooledEngines(1) : current;
+
+        final int memoryCap = roundMemory(Math.max(MIN_MEMORY_KB, Math.min(MAX_MEMORY_KB, this.memoryBudgetKb / this.workers)), parallelism);
+        final Argon2Cost singlePass = new Argon2Cost(1, memoryCap, parallelism, Argon2Cost.LEGACY.getHashLength());
+
+        measure(hasher, singlePass);
+        double passMillis = Double.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            passMillis = Math.min(passMillis, measure(hasher, singlePass));
+        }
+
+        final int memory;
+        final int iterations;
+        if (passMillis * MIN_ITERATIONS > targetMillis) {
+            memory = roundMemory(Math.max(MIN_MEMORY_KB, (int) (memoryCap * targetMillis / (passMillis * MIN_ITERATIONS))), parallelism);
+            iterations = MIN_ITERATIONS;
+        } else {
+            memory = memoryCap;
+            iterations = Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, (int) (targetMillis / passMillis)));
+        }
+
+        this.cost = this.atLeastMinimum(new Argon2Cost(iterations, memory, parallelism, Argon2Cost.LEGACY.getHashLength()));
+        this.hashMillis = measure(hasher, this.cost);
+        this.calibratedAt = System.currentTimeMillis();
+
+        if (this.hashMillis > targetMillis * 1.5D) {
+            this.plugin.getLogger().warning("This machine cannot reach the configured Argon2 latency target of "
+                    + Math.round(targetMillis) + " ms with the configured argon2 parameters.");
+        }
+    }
+
+    /**
+     * The longest a single hash may take, so that every worker gets through its share
+     * of the concurrent logins within the configured window.
+     */
+    private double targetMillis(@NotNull final LightConfiguration configuration) {
+        final int concurrentLogins = Math.max(1, configuration.getCalibrationConcurrentLogins());
+        final int hashesPerWorker = (concurrentLogins + this.workers - 1) / this.workers;
+        final double windowShare = Math.max(1, configuration.getCalibrationWindowMillis()) / (double) hashesPerWorker;
+        return Math.min(windowShare, Math.max(1, configuration.getCalibrationMaxLatencyMillis()));
+    }
+
+    /**
+     * Raise the memory and iterations of a cost to the configured ones where they are lower.
+     */
+    @NotNull
+    private Argon2Cost atLeastMinimum(@NotNull final Argon2Cost cost) {
+        if (cost.isAtLeast(this.minimumCost)) {
+            return cost;
+        }
+        final int granularity = 4 * cost.getParallelism();
+        final int minimumMemory = (this.minimumCost.getMemoryKb() + granularity - 1) / granularity * granularity;
+        return new Argon2Cost(Math.max(cost.getIterations(), this.minimumCost.getIterations()),
+                Math.max(cost.getMemoryKb(), minimumMemory), cost.getParallelism(),
+                Math.max(cost.getHashLength(), this.minimumCost.getHashLength()));
+    }
+
+    private static double measure(@NotNull final PasswordHasher hasher, @NotNull final Argon2Cost cost) {
+        final byte[] password = "LightLogin-Calibration".getBytes(StandardCharsets.UTF_8);
+        final byte[] salt = Argon2Utilities.generateSaltByte(0x10);
+        final long startTime = System.nanoTime();
+        hasher.hash(password, salt, cost);
+        return (System.nanoTime() - startTime) / 1E6;
+    }
+
+    private static int roundMemory(final int memoryKb, final int parallelism) {
+        final int granularity = 4 * parallelism;
+        return Math.max(2 * granularity, (memoryKb / granularity) * granularity);
+    }
+
+    @NotNull
+    private String fingerprint() {
+        final LightConfiguration configuration = this.plugin.getLightConfiguration();
+        return "cores=" + Runtime.getRuntime().availableProcessors()
+                + ",engine=" + Argon2Utilities.getPasswordHasher().getName()
+                + ",workers=" + this.workers
+                + ",budget=" + this.memoryBudgetKb
+                + ",logins=" + configuration.getCalibrationConcurrentLogins()
+                + ",window=" + configuration.getCalibrationWindowMillis()
+                + ",latency=" + configuration.getCalibrationMaxLatencyMillis();
+    }
+
+    public Argon2Cost getCost() {
+        return cost;
+    }
+
+    public double getHashMillis() {
+        return hashMillis;
+    }
+
+    public long getCalibratedAt() {
+        return calibratedAt;
+    }
+}
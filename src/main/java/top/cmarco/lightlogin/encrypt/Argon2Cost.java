@@ -0,0 +1,125 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+/**
+ * The cost parameters of a single Argon2id computation.
+ */
+public final class Argon2Cost {
+
+    /**
+     * The parameters every password of this software has been hashed with so far.
+     */
+    public static final Argon2Cost LEGACY = new Argon2Cost(4, 65336, 4, 32);
+
+    // Far above any sensible setting, parameters read from the database beyond them are treated as malformed.
+    public static final int MAX_MEMORY_KB = 4 * 1024 * 1024;
+    public static final int MAX_ITERATIONS = 64;
+    public static final int MAX_PARALLELISM = 255;
+    public static final int MAX_HASH_LENGTH = 1024;
+
+    private final int iterations;
+    private final int memoryKb;
+    private final int parallelism;
+    private final int hashLength;
+
+    public Argon2Cost(final int iterations, final int memoryKb, final int parallelism, final int hashLength) {
+        if (iterations < 1 || iterations > MAX_ITERATIONS) {
+            throw new IllegalArgumentException("Argon2 iterations out of range: " + iterations);
+        }
+        if (parallelism < 1 || parallelism > MAX_PARALLELISM) {
+            throw new IllegalArgumentException("Argon2 parallelism out of range: " + parallelism);
+        }
+        if (memoryKb < 8 * parallelism) {
+            throw new IllegalArgumentException("Argon2 memory must be at least 8 KB per lane.");
+        }
+        if (memoryKb > MAX_MEMORY_KB) {
+            throw new IllegalArgumentException("Argon2 memory out of range: " + memoryKb + " KB");
+        }
+        if (hashLength < 4 || hashLength > MAX_HASH_LENGTH) {
+            throw new IllegalArgumentException("Argon2 hash length out of range: " + hashLength);
+        }
+
+        this.iterations = iterations;
+        this.memoryKb = memoryKb;
+        this.parallelism = parallelism;
+        this.hashLength = hashLength;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getMemoryKb() {
+        return memoryKb;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getHashLength() {
+        return hashLength;
+    }
+
+    /**
+     * @return true if these parameters cost at least as much memory, passes and output as the other ones.
+     * Parallelism only changes how the work is split, so it is not compared.
+     */
+    public boolean isAtLeast(final Argon2Cost other) {
+        return this.memoryKb >= other.memoryKb && this.iterations >= other.iterations && this.hashLength >= other.hashLength;
+    }
+
+    /**
+     * @return true if these parameters are at least as strong as the other ones and stronger in one of them.
+     */
+    public boolean isStrongerThan(final Argon2Cost other) {
+        return this.isAtLeast(other) && (this.memoryKb > other.memoryKb || this.iterations > other.iterations || this.hashLength > other.hashLength);
+    }
+
+    /**
+     * @return The amount of 1 KB blocks actually used, the memory rounded down to a multiple of 4 blocks per lane.
+     */
+    public int getMemoryBlocks() {
+        final int segmentLength = this.memoryKb / (this.parallelism * 4);
+        return segmentLength * this.parallelism * 4;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Argon2Cost other)) return false;
+        return iterations == other.iterations && memoryKb == other.memoryKb
+                && parallelism == other.parallelism && hashLength == other.hashLength;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = iterations;
+        result = 31 * result + memoryKb;
+        result = 31 * result + parallelism;
+        result = 31 * result + hashLength;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "m=" + memoryKb + ",t=" + iterations + ",p=" + parallelism;
+    }
+}
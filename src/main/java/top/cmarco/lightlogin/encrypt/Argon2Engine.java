@@ -0,0 +1,432 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Argon2id (RFC 9106, version 0x13) working on a flat memory matrix that is kept between hashes.
+ * The matrix only grows, and is zeroed after every computation so that no password
+ * dependent data outlives the call. Instances are not thread safe.
+ * With a lane pool, the segments of a slice are filled by several threads at once, as the
+ * specification allows: a segment only references blocks of the other lanes outside the current slice.
+ * The compression function itself is pluggable, so that it can use SIMD instructions where available.
+ */
+final class Argon2Engine {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCK_WORDS = Argon2BlockFunction.BLOCK_WORDS;
+    private static final int SYNC_POINTS = 4;
+    private static final int ADDRESSES_IN_BLOCK = 128;
+    private static final int VERSION = 0x13;
+    private static final int TYPE_ID = 2;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Blake2b blake2b = new Blake2b();
+    private final byte[] initialHash = new byte[Blake2b.MAX_DIGEST_LENGTH + 8];
+    private final byte[] digest = new byte[Blake2b.MAX_DIGEST_LENGTH];
+    private final byte[] blockBytes = new byte[BLOCK_SIZE];
+    private final long[] finalBlock = new long[BLOCK_WORDS];
+
+    private long[] memory = new long[0];
+    private LaneScratch[] scratches = new LaneScratch[0];
+    private int lanes;
+    private int segmentLength;
+    private int laneLength;
+    private int blocks;
+    private int iterations;
+
+    private final Argon2BlockFunction blockFunction;
+    @Nullable
+    private final Argon2LanePool lanePool;
+    private final Runnable laneHelper = this::fillClaimedSegments;
+    // The slice being filled in the upper half, the next unclaimed lane in the lower half.
+    private final AtomicLong laneCursor = new AtomicLong(0xFFFFFFFFL);
+    private final AtomicInteger pendingSegments = new AtomicInteger();
+    private long sliceId = 0L;
+    private int currentPass;
+    private int currentSlice;
+    private volatile Thread sliceOwner;
+    private volatile Throwable laneFailure;
+
+    /**
+     * The blocks a thread needs to fill a segment.
+     */
+    private static final class LaneScratch {
+        private final long[] r = new long[BLOCK_WORDS];
+        private final long[] z = new long[BLOCK_WORDS];
+        private final long[] addressBlock = new long[BLOCK_WORDS];
+        private final long[] inputBlock = new long[BLOCK_WORDS];
+
+        private void wipe() {
+            Arrays.fill(this.r, 0L);
+            Arrays.fill(this.z, 0L);
+            Arrays.fill(this.addressBlock, 0L);
+            Arrays.fill(this.inputBlock, 0L);
+        }
+    }
+
+    Argon2Engine() {
+        this(Argon2BlockFunction.scalar(), null);
+    }
+
+    /**
+     * @param blockFunction The implementation of the compression function.
+     * @param lanePool The pool filling the lanes of a hash concurrently, null to fill them one after another.
+     */
+    Argon2Engine(@NotNull final Argon2BlockFunction blockFunction, @Nullable final Argon2LanePool lanePool) {
+        this.blockFunction = blockFunction;
+        this.lanePool = lanePool;
+    }
+
+    /**
+     * @return The bytes currently held by the memory matrix of this engine.
+     */
+    long getRetainedBytes() {
+        return (long) this.memory.length * 8L;
+    }
+
+    @NotNull
+    byte[] hash(final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        return this.hash(password, salt, EMPTY, EMPTY, cost);
+    }
+
+    @NotNull
+    byte[] hash(final byte[] password, final byte[] salt, final byte[] secret,
+                final byte[] associatedData, @NotNull final Argon2Cost cost) {
+        this.lanes = cost.getParallelism();
+        this.blocks = cost.getMemoryBlocks();
+        this.segmentLength = this.blocks / (this.lanes * SYNC_POINTS);
+        this.laneLength = this.segmentLength * SYNC_POINTS;
+        this.iterations = cost.getIterations();
+
+        final int words = this.blocks * BLOCK_WORDS;
+        if (this.memory.length < words) {
+            this.memory = new long[words];
+        }
+        final int scratchCount = this.lanePool == null ? 1 : this.lanes;
+        if (this.scratches.length < scratchCount) {
+            final LaneScratch[] grown = Arrays.copyOf(this.scratches, scratchCount);
+            for (int i = this.scratches.length; i < scratchCount; i++) {
+                grown[i] = new LaneScratch();
+            }
+            this.scratches = grown;
+        }
+
+        try {
+            this.initialize(password, salt, secret, associatedData, cost);
+            this.fillMemory();
+            return this.finish(cost.getHashLength());
+        } finally {
+            this.wipe(words);
+        }
+    }
+
+    private void initialize(final byte[] password, final byte[] salt, final byte[] secret,
+                            final byte[] associatedData, @NotNull final Argon2Cost cost) {
+        final Blake2b blake = this.blake2b;
+        blake.reset(Blake2b.MAX_DIGEST_LENGTH);
+        blake.update(this.lanes);
+        blake.update(cost.getHashLength());
+        blake.update(cost.getMemoryKb());
+        blake.update(this.iterations);
+        blake.update(VERSION);
+        blake.update(TYPE_ID);
+        blake.update(password.length);
+        blake.update(password);
+        blake.update(salt.length);
+        blake.update(salt);
+        blake.update(secret.length);
+        blake.update(secret);
+        blake.update(associatedData.length);
+        blake.update(associatedData);
+        blake.doFinal(this.initialHash, 0);
+
+        for (int lane = 0; lane < this.lanes; lane++) {
+            writeInt(this.initialHash, Blake2b.MAX_DIGEST_LENGTH + 4, lane);
+
+            writeInt(this.initialHash, Blake2b.MAX_DIGEST_LENGTH, 0);
+            this.variableHash(this.initialHash, this.initialHash.length, this.blockBytes, BLOCK_SIZE);
+            this.loadBlock(this.blockBytes, lane * this.laneLength);
+
+            writeInt(this.initialHash, Blake2b.MAX_DIGEST_LENGTH, 1);
+            this.variableHash(this.initialHash, this.initialHash.length, this.blockBytes, BLOCK_SIZE);
+            this.loadBlock(this.blockBytes, lane * this.laneLength + 1);
+        }
+    }
+
+    private void fillMemory() {
+        final boolean concurrent = this.lanePool != null && this.lanes > 1;
+        for (int pass = 0; pass < this.iterations; pass++) {
+            for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                if (concurrent) {
+                    this.fillSliceConcurrently(pass, slice);
+                    continue;
+                }
+                for (int lane = 0; lane < this.lanes; lane++) {
+                    this.fillSegment(pass, slice, lane, this.scratches[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill the segments of a slice with the help of the lane pool.
+     * The calling thread fills segments too, so a busy pool only makes the slice slower, never stuck.
+     * Segments are claimed by moving the lane cursor, which carries the slice it belongs to,
+     * so a helper that starts late can never claim a segment of a slice that is already done.
+     */
+    private void fillSliceConcurrently(final int pass, final int slice) {
+        final Argon2LanePool pool = this.lanePool;
+        this.currentPass = pass;
+        this.currentSlice = slice;
+        this.sliceOwner = Thread.currentThread();
+        this.pendingSegments.set(this.lanes);
+        this.sliceId = (this.sliceId + 1L) & 0x7FFFFFFFL;
+        this.laneCursor.set(this.sliceId << 32);
+
+        final int helpers = Math.min(this.lanes - 1, pool.getThreads());
+        try {
+            for (int i = 0; i < helpers; i++) {
+                pool.execute(this.laneHelper);
+            }
+        } catch (RejectedExecutionException ignored) {
+            // The pool is shutting down, this thread fills the remaining segments.
+        }
+
+        this.fillClaimedSegments();
+        while (this.pendingSegments.get() != 0) {
+            LockSupport.park(this);
+        }
+        this.laneCursor.set((this.sliceId << 32) | 0xFFFFFFFFL);
+
+        final Throwable failure = this.laneFailure;
+        if (failure != null) {
+            this.laneFailure = null;
+            throw new IllegalStateException("Argon2 lane computation failed.", failure);
+        }
+    }
+
+    /**
+     * Fill segments of the current slice until none is left to claim.
+     */
+    private void fillClaimedSegments() {
+        while (true) {
+            final long cursor = this.laneCursor.get();
+            final int lane = (int) cursor;
+            if (lane < 0 || lane >= this.lanes) {
+                return;
+            }
+            if (!this.laneCursor.compareAndSet(cursor, cursor + 1L)) {
+                continue;
+            }
+
+            try {
+                this.fillSegment(this.currentPass, this.currentSlice, lane, this.scratches[lane]);
+            } catch (Throwable throwable) {
+                this.laneFailure = throwable;
+            } finally {
+                if (this.pendingSegments.decrementAndGet() == 0) {
+                    LockSupport.unpark(this.sliceOwner);
+                }
+            }
+        }
+    }
+
+    private void fillSegment(final int pass, final int slice, final int lane, @NotNull final LaneScratch scratch) {
+        final boolean dataIndependent = pass == 0 && slice < SYNC_POINTS / 2;
+        final int startingIndex = (pass == 0 && slice == 0) ? 2 : 0;
+        final boolean withXor = pass != 0;
+
+        int currentBlock = lane * this.laneLength + slice * this.segmentLength + startingIndex;
+        int previousBlock = (currentBlock % this.laneLength == 0) ? currentBlock + this.laneLength - 1 : currentBlock - 1;
+
+        if (dataIndependent) {
+            Arrays.fill(scratch.addressBlock, 0L);
+            Arrays.fill(scratch.inputBlock, 0L);
+            scratch.inputBlock[0] = pass;
+            scratch.inputBlock[1] = lane;
+            scratch.inputBlock[2] = slice;
+            scratch.inputBlock[3] = this.blocks;
+            scratch.inputBlock[4] = this.iterations;
+            scratch.inputBlock[5] = TYPE_ID;
+            if (startingIndex != 0) {
+                nextAddresses(scratch);
+            }
+        }
+
+        for (int index = startingIndex; index < this.segmentLength; index++) {
+            final long pseudoRandom;
+            if (dataIndependent) {
+                final int addressIndex = index % ADDRESSES_IN_BLOCK;
+                if (addressIndex == 0) {
+                    nextAddresses(scratch);
+                }
+                pseudoRandom = scratch.addressBlock[addressIndex];
+            } else {
+                pseudoRandom = this.memory[previousBlock * BLOCK_WORDS];
+            }
+
+            final int refLane = (pass == 0 && slice == 0) ? lane : (int) ((pseudoRandom >>> 32) % this.lanes);
+            final int refColumn = this.referenceColumn(pass, slice, index, pseudoRandom, refLane == lane);
+
+            this.blockFunction.fillBlock(this.memory, previousBlock * BLOCK_WORDS, (refLane * this.laneLength + refColumn) * BLOCK_WORDS,
+                    currentBlock * BLOCK_WORDS, withXor, scratch.r, scratch.z);
+
+            previousBlock = currentBlock;
+            currentBlock++;
+        }
+    }
+
+    private int referenceColumn(final int pass, final int slice, final int index,
+                                final long pseudoRandom, final boolean sameLane) {
+        final int startPosition;
+        final int referenceAreaSize;
+
+        if (pass == 0) {
+            startPosition = 0;
+            referenceAreaSize = sameLane
+                    ? slice * this.segmentLength + index - 1
+                    : slice * this.segmentLength + (index == 0 ? -1 : 0);
+        } else {
+            startPosition = ((slice + 1) * this.segmentLength) % this.laneLength;
+            referenceAreaSize = sameLane
+                    ? this.laneLength - this.segmentLength + index - 1
+                    : this.laneLength - this.segmentLength + (index == 0 ? -1 : 0);
+        }
+
+        long relativePosition = pseudoRandom & 0xFFFFFFFFL;
+        relativePosition = (relativePosition * relativePosition) >>> 32;
+        relativePosition = referenceAreaSize - 1 - ((referenceAreaSize * relativePosition) >>> 32);
+
+        return (int) ((startPosition + relativePosition) % this.laneLength);
+    }
+
+    private void nextAddresses(@NotNull final LaneScratch scratch) {
+        scratch.inputBlock[6]++;
+        this.blockFunction.compress(scratch.inputBlock, scratch.addressBlock, scratch.r);
+        this.blockFunction.compress(scratch.addressBlock, scratch.addressBlock, scratch.r);
+    }
+
+    @NotNull
+    private byte[] finish(final int hashLength) {
+        final long[] memory = this.memory;
+        final long[] finalBlock = this.finalBlock;
+        final int lastColumn = this.laneLength - 1;
+
+        System.arraycopy(memory, lastColumn * BLOCK_WORDS, finalBlock, 0, BLOCK_WORDS);
+        for (int lane = 1; lane < this.lanes; lane++) {
+            final int offset = (lane * this.laneLength + lastColumn) * BLOCK_WORDS;
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                finalBlock[i] ^= memory[offset + i];
+            }
+        }
+
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            writeLong(this.blockBytes, i << 3, finalBlock[i]);
+        }
+
+        final byte[] result = new byte[hashLength];
+        this.variableHash(this.blockBytes, BLOCK_SIZE, result, hashLength);
+        return result;
+    }
+
+    /**
+     * The variable length hash function H' of the specification.
+     */
+    private void variableHash(final byte[] input, final int inputLength, final byte[] output, final int outputLength) {
+        final Blake2b blake = this.blake2b;
+        blake.reset(Math.min(outputLength, Blake2b.MAX_DIGEST_LENGTH));
+        blake.update(outputLength);
+        blake.update(input, 0, inputLength);
+
+        if (outputLength <= Blake2b.MAX_DIGEST_LENGTH) {
+            blake.doFinal(output, 0);
+            return;
+        }
+
+        blake.doFinal(this.digest, 0);
+        System.arraycopy(this.digest, 0, output, 0, 32);
+        int position = 32;
+        int remaining = outputLength - 32;
+
+        while (remaining > Blake2b.MAX_DIGEST_LENGTH) {
+            blake.reset(Blake2b.MAX_DIGEST_LENGTH);
+            blake.update(this.digest);
+            blake.doFinal(this.digest, 0);
+            System.arraycopy(this.digest, 0, output, position, 32);
+            position += 32;
+            remaining -= 32;
+        }
+
+        blake.reset(remaining);
+        blake.update(this.digest);
+        blake.doFinal(output, position);
+    }
+
+    private void loadBlock(final byte[] bytes, final int block) {
+        final int offset = block * BLOCK_WORDS;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            this.memory[offset + i] = readLong(bytes, i << 3);
+        }
+    }
+
+    private void wipe(final int words) {
+        Arrays.fill(this.memory, 0, Math.min(words, this.memory.length), 0L);
+        for (final LaneScratch scratch : this.scratches) {
+            scratch.wipe();
+        }
+        Arrays.fill(this.finalBlock, 0L);
+        Arrays.fill(this.blockBytes, (byte) 0);
+        Arrays.fill(this.initialHash, (byte) 0);
+        Arrays.fill(this.digest, (byte) 0);
+    }
+
+    static long readLong(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24
+                | (bytes[offset + 4] & 0xFFL) << 32
+                | (bytes[offset + 5] & 0xFFL) << 40
+                | (bytes[offset + 6] & 0xFFL) << 48
+                | (bytes[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static void writeLong(final byte[] bytes, final int offset, final long value) {
+        for (int i = 0; i < 8; i++) {
+            bytes[offset + i] = (byte) (value >>> (i << 3));
+        }
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
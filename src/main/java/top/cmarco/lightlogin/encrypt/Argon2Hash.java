@@ -0,0 +1,269 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A stored password hash together with the salt and parameters it was computed with.
+ * New hashes are stored in the PHC string format, for example:
+ * {@code $argon2id$v=19$m=65536,t=3,p=4$<salt>$<hash>}.
+ * Rows written before this format existed only hold the Base64 hash, their salt lives
+ * in its own column and their parameters are always {@link Argon2Cost#LEGACY}.
+ * Both columns also have a compact binary form, holding the decoded bytes instead of their text,
+ * which is what accounts are kept in memory with and what the binary database schema stores.
+ */
+public final class Argon2Hash {
+
+    private static final String PHC_PREFIX = "$argon2id$v=19$";
+
+    // The first byte of a binary column tells how the rest of it is encoded.
+    private static final byte BINARY_TEXT = 0;
+    private static final byte BINARY_PHC = 1;
+    private static final byte BINARY_BASE64 = 2;
+    private static final int PHC_HEADER_BYTES = 14;
+
+    private final Argon2Cost cost;
+    private final byte[] salt;
+    private final byte[] hash;
+    private final boolean legacy;
+
+    public Argon2Hash(@NotNull final Argon2Cost cost, final byte[] salt, final byte[] hash, final boolean legacy) {
+        this.cost = cost;
+        this.salt = salt;
+        this.hash = hash;
+        this.legacy = legacy;
+    }
+
+    /**
+     * Read a stored password.
+     *
+     * @param storedPassword The content of the password column.
+     * @param storedSalt The content of the salt column, only used by legacy rows.
+     * @return The parsed hash, or null if the stored data is malformed.
+     */
+    @Nullable
+    public static Argon2Hash parse(@NotNull final String storedPassword, @Nullable final String storedSalt) {
+        try {
+            if (!storedPassword.startsWith(PHC_PREFIX)) {
+                if (storedSalt == null) {
+                    return null;
+                }
+                final Base64.Decoder decoder = Base64.getDecoder();
+                return new Argon2Hash(Argon2Cost.LEGACY, decoder.decode(storedSalt), decoder.decode(storedPassword), true);
+            }
+
+            final String[] parts = storedPassword.substring(PHC_PREFIX.length()).split("\\$");
+            if (parts.length != 3) {
+                return null;
+            }
+
+            int memory = -1, iterations = -1, parallelism = -1;
+            for (final String parameter : parts[0].split(",")) {
+                final int separator = parameter.indexOf('=');
+                if (separator < 0) {
+                    return null;
+                }
+                final int value = Integer.parseInt(parameter.substring(separator + 1));
+                switch (parameter.substring(0, separator)) {
+                    case "m": {memory = value; break;}
+                    case "t": {iterations = value; break;}
+                    case "p": {parallelism = value; break;}
+                    default: {return null;}
+                }
+            }
+
+            final Base64.Decoder decoder = Base64.getDecoder();
+            final byte[] salt = decoder.decode(parts[1]);
+            final byte[] hash = decoder.decode(parts[2]);
+            return new Argon2Hash(new Argon2Cost(iterations, memory, parallelism, hash.length), salt, hash, false);
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert the content of the password column into its binary form.
+     * PHC strings and legacy Base64 hashes are stored decoded, anything else is kept as text,
+     * so that {@link #passwordText(byte[])} always gives back exactly the same column content.
+     */
+    public static byte[] toBinaryPassword(@NotNull final String storedPassword) {
+        if (!storedPassword.startsWith(PHC_PREFIX)) {
+            return toBinaryBase64(storedPassword);
+        }
+
+        final Argon2Hash parsed = parse(storedPassword, null);
+        if (parsed == null || parsed.salt.length > 0xFF || !parsed.encode().equals(storedPassword)) {
+            return toBinaryText(storedPassword);
+        }
+
+        return ByteBuffer.allocate(PHC_HEADER_BYTES + parsed.salt.length + parsed.hash.length)
+                .put(BINARY_PHC)
+                .putInt(parsed.cost.getMemoryKb())
+                .putInt(parsed.cost.getIterations())
+                .putInt(parsed.cost.getParallelism())
+                .put((byte) parsed.salt.length)
+                .put(parsed.salt)
+                .put(parsed.hash)
+                .array();
+    }
+
+    /**
+     * Convert the content of the salt column into its binary form.
+     */
+    public static byte[] toBinarySalt(@NotNull final String storedSalt) {
+        return toBinaryBase64(storedSalt);
+    }
+
+    private static byte[] toBinaryBase64(@NotNull final String value) {
+        try {
+            final byte[] decoded = Base64.getDecoder().decode(value);
+            if (Base64.getEncoder().encodeToString(decoded).equals(value)) {
+                final byte[] binary = new byte[decoded.length + 1];
+                binary[0] = BINARY_BASE64;
+                System.arraycopy(decoded, 0, binary, 1, decoded.length);
+                return binary;
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        return toBinaryText(value);
+    }
+
+    private static byte[] toBinaryText(@NotNull final String value) {
+        final byte[] text = value.getBytes(StandardCharsets.UTF_8);
+        final byte[] binary = new byte[text.length + 1];
+        binary[0] = BINARY_TEXT;
+        System.arraycopy(text, 0, binary, 1, text.length);
+        return binary;
+    }
+
+    /**
+     * @return The content of the password column a binary password was made from.
+     */
+    @NotNull
+    public static String passwordText(final byte[] binaryPassword) {
+        if (binaryPassword[0] == BINARY_PHC) {
+            final Argon2Hash hash = fromBinaryPhc(binaryPassword);
+            if (hash != null) {
+                return hash.encode();
+            }
+        }
+        return saltText(binaryPassword);
+    }
+
+    /**
+     * @return The content of the salt column a binary salt was made from.
+     */
+    @NotNull
+    public static String saltText(final byte[] binarySalt) {
+        if (binarySalt[0] == BINARY_BASE64) {
+            return Base64.getEncoder().encodeToString(Arrays.copyOfRange(binarySalt, 1, binarySalt.length));
+        }
+        return new String(binarySalt, 1, binarySalt.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a stored password from the binary form of its columns, without any text decoding
+     * for passwords written by this software.
+     *
+     * @return The hash, or null if the stored data is malformed.
+     * @see #parse(String, String)
+     */
+    @Nullable
+    public static Argon2Hash fromBinary(final byte[] binaryPassword, final byte[] binarySalt) {
+        switch (binaryPassword[0]) {
+            case BINARY_PHC: {
+                return fromBinaryPhc(binaryPassword);
+            }
+            case BINARY_BASE64: {
+                if (binarySalt[0] != BINARY_BASE64) {
+                    return parse(passwordText(binaryPassword), saltText(binarySalt));
+                }
+                return new Argon2Hash(Argon2Cost.LEGACY, Arrays.copyOfRange(binarySalt, 1, binarySalt.length),
+                        Arrays.copyOfRange(binaryPassword, 1, binaryPassword.length), true);
+            }
+            default: {
+                return parse(passwordText(binaryPassword), saltText(binarySalt));
+            }
+        }
+    }
+
+    @Nullable
+    private static Argon2Hash fromBinaryPhc(final byte[] binaryPassword) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(binaryPassword, 1, binaryPassword.length - 1);
+            final int memory = buffer.getInt();
+            final int iterations = buffer.getInt();
+            final int parallelism = buffer.getInt();
+            final byte[] salt = new byte[Byte.toUnsignedInt(buffer.get())];
+            buffer.get(salt);
+            final byte[] hash = new byte[buffer.remaining()];
+            buffer.get(hash);
+            return new Argon2Hash(new Argon2Cost(iterations, memory, parallelism, hash.length), salt, hash, false);
+        } catch (IllegalArgumentException | BufferUnderflowException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The PHC string representation of this hash.
+     */
+    @NotNull
+    public String encode() {
+        final Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PHC_PREFIX + "m=" + this.cost.getMemoryKb() + ",t=" + this.cost.getIterations() + ",p=" + this.cost.getParallelism()
+                + "$" + encoder.encodeToString(this.salt) + "$" + encoder.encodeToString(this.hash);
+    }
+
+    /**
+     * Compare a freshly computed hash with this one, in constant time.
+     *
+     * @param computed The hash computed from the password attempt.
+     * @return true if they are equal.
+     */
+    public boolean matches(final byte[] computed) {
+        return MessageDigest.isEqual(this.hash, computed);
+    }
+
+    @NotNull
+    public Argon2Cost getCost() {
+        return cost;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    @NotNull
+    public String getSaltBase64() {
+        return Base64.getEncoder().encodeToString(this.salt);
+    }
+
+    public boolean isLegacy() {
+        return legacy;
+    }
+}
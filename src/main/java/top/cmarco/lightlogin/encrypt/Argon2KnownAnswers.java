@@ -0,0 +1,84 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Known answer checks run when hashing starts, so that a broken Argon2 implementation is noticed
+ * before it stores or rejects a single password. The vectors are the Argon2id example of RFC 9106
+ * and the output of the legacy parameters, which every older password was hashed with.
+ */
+final class Argon2KnownAnswers {
+
+    // RFC 9106 section 5.3: password 32 x 0x01, salt 16 x 0x02, secret 8 x 0x03, associated data 12 x 0x04.
+    private static final Argon2Cost RFC_9106_COST = new Argon2Cost(3, 32, 4, 32);
+    private static final String RFC_9106_TAG = "0d640df58d78766c08c037a34a8b53c9d01ef0452d75b65eb52520e96b01e659";
+
+    // Argon2Utilities.encryptArgon2("LightLogin", "LightLoginSalt16") before any engine change.
+    private static final String LEGACY_PASSWORD = "LightLogin";
+    private static final String LEGACY_SALT = "LightLoginSalt16";
+    private static final String LEGACY_TAG = "ccc79f82b1d0ba2c8f038bc006cb3fb474350ea4e4348fb50fc7ce3f0f6b2310";
+
+    private Argon2KnownAnswers() {
+        throw new RuntimeException("You may not instantiate this utility class.");
+    }
+
+    /**
+     * @param hasher The implementation to check.
+     * @return The name of the first failed check, or null if the implementation passed all of them.
+     */
+    @Nullable
+    static String check(@NotNull final PasswordHasher hasher) {
+        try {
+            if (hasher instanceof PooledArgon2Hasher) {
+                // The RFC vector needs a secret and associated data, which only the engine itself accepts.
+                final Argon2Engine engine = ((PooledArgon2Hasher) hasher).newEngine();
+                final byte[] tag = engine.hash(filled(32, 0x01), filled(16, 0x02), filled(8, 0x03), filled(12, 0x04), RFC_9106_COST);
+                if (!Arrays.equals(tag, hex(RFC_9106_TAG))) {
+                    return "RFC 9106";
+                }
+            }
+
+            final byte[] tag = hasher.hash(LEGACY_PASSWORD.getBytes(StandardCharsets.UTF_8),
+                    LEGACY_SALT.getBytes(StandardCharsets.UTF_8), Argon2Cost.LEGACY);
+            return Arrays.equals(tag, hex(LEGACY_TAG)) ? null : "legacy parameters";
+        } catch (RuntimeException exception) {
+            return exception.getClass().getSimpleName();
+        }
+    }
+
+    private static byte[] filled(final int length, final int value) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static byte[] hex(@NotNull final String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
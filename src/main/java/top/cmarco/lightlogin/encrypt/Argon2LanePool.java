@@ -0,0 +1,64 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by every hash to fill Argon2 lanes concurrently.
+ * Helping is best effort: a hash whose helpers are busy fills its lanes on its own thread,
+ * so this pool only ever runs short lane tasks and never waits for anything.
+ */
+public final class Argon2LanePool {
+
+    private final ExecutorService executor;
+    private final int threads;
+
+    public Argon2LanePool(final int threads) {
+        this.threads = Math.max(1, threads);
+        final AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "LightLogin-Argon2-Lane-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+    }
+
+    void execute(@NotNull final Runnable task) {
+        this.executor.execute(task);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
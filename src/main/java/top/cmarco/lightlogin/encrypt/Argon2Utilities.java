@@ -18,10 +18,7 @@
 
 package top.cmarco.lightlogin.encrypt;
 
-import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
-import org.bouncycastle.crypto.params.Argon2Parameters;
 import org.jetbrains.annotations.NotNull;
-import top.cmarco.lightlogin.LightLoginPlugin;
 
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
@@ -53,10 +50,33 @@ public final class Argon2Utilities {
         return salt;
     }
 
-    private static final int ITERATIONS = 4; // 16
-    private static final int MEMORY_LIMIT = 65336;
-    private static final int HASH_LENGTH = 32; // 64
-    private static final int PARALLELISM = 4;
+    private static volatile PasswordHasher passwordHasher = new BouncyCastleArgon2Hasher();
+
+    /**
+     * Change the Argon2 implementation used by this utility class.
+     *
+     * @param hasher The new implementation.
+     */
+    public static void setPasswordHasher(@NotNull final PasswordHasher hasher) {
+        passwordHasher = hasher;
+    }
+
+    @NotNull
+    public static PasswordHasher getPasswordHasher() {
+        return passwordHasher;
+    }
+
+    /**
+     * Compute the raw Argon2id hash of a password with the given parameters.
+     *
+     * @param password The plaintext password input.
+     * @param salt The salt to use.
+     * @param cost The Argon2 parameters.
+     * @return The raw hash.
+     */
+    public static byte[] hashArgon2(@NotNull final String password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        return passwordHasher.hash(password.getBytes(StandardCharsets.UTF_8), salt, cost);
+    }
 
     /**
      * A function to encrypt a string in Argon2 and encode it using Base64.
@@ -70,17 +90,7 @@ public final class Argon2Utilities {
     @NotNull
     public static String encryptArgon2(@NotNull final String password, final byte[] salt) {
         final long startTime = System.currentTimeMillis();
-        final Argon2Parameters.Builder builder = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
-                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
-                .withIterations(ITERATIONS)
-                .withMemoryAsKB(MEMORY_LIMIT)
-                .withParallelism(PARALLELISM)
-                .withSalt(salt);
-        final Argon2BytesGenerator generator = new Argon2BytesGenerator();
-
-        generator.init(builder.build());
-        final byte[] result = new byte[HASH_LENGTH];
-        generator.generateBytes(password.getBytes(StandardCharsets.UTF_8), result, 0x00, result.length);
+        final byte[] result = hashArgon2(password, salt, Argon2Cost.LEGACY);
         final long endTime = System.currentTimeMillis();
         if (debug) {
             System.out.printf("HASH IMPACT (ms) = %.3f%n", ((double) (endTime - startTime)) / 1E3);
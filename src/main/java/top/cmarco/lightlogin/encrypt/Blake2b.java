@@ -0,0 +1,170 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Minimal unkeyed BLAKE2b (RFC 7693) used by the Argon2 engine of this software.
+ * Instances are reusable through {@link #reset(int)} and are not thread safe.
+ */
+final class Blake2b {
+
+    static final int MAX_DIGEST_LENGTH = 64;
+    private static final int BLOCK_LENGTH = 128;
+
+    private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+
+    private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0},
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3}
+    };
+
+    private final long[] h = new long[8];
+    private final long[] v = new long[16];
+    private final long[] m = new long[16];
+    private final byte[] buffer = new byte[BLOCK_LENGTH];
+    private int bufferLength;
+    private long counter;
+    private int digestLength;
+
+    Blake2b() {
+        this.reset(MAX_DIGEST_LENGTH);
+    }
+
+    void reset(final int digestLength) {
+        if (digestLength < 1 || digestLength > MAX_DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Invalid BLAKE2b digest length: " + digestLength);
+        }
+
+        this.digestLength = digestLength;
+        System.arraycopy(IV, 0, this.h, 0, 8);
+        this.h[0] ^= 0x01010000L ^ digestLength;
+        this.bufferLength = 0;
+        this.counter = 0L;
+    }
+
+    void update(final int value) {
+        this.update((byte) value);
+        this.update((byte) (value >>> 8));
+        this.update((byte) (value >>> 16));
+        this.update((byte) (value >>> 24));
+    }
+
+    void update(final byte value) {
+        if (this.bufferLength == BLOCK_LENGTH) {
+            this.counter += BLOCK_LENGTH;
+            this.compress(this.buffer, 0, false);
+            this.bufferLength = 0;
+        }
+        this.buffer[this.bufferLength++] = value;
+    }
+
+    void update(@NotNull final byte[] input) {
+        this.update(input, 0, input.length);
+    }
+
+    void update(@NotNull final byte[] input, int offset, int length) {
+        while (length > 0) {
+            if (this.bufferLength == BLOCK_LENGTH) {
+                this.counter += BLOCK_LENGTH;
+                this.compress(this.buffer, 0, false);
+                this.bufferLength = 0;
+            }
+
+            final int chunk = Math.min(length, BLOCK_LENGTH - this.bufferLength);
+            System.arraycopy(input, offset, this.buffer, this.bufferLength, chunk);
+            this.bufferLength += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    void doFinal(@NotNull final byte[] output, final int offset) {
+        this.counter += this.bufferLength;
+        Arrays.fill(this.buffer, this.bufferLength, BLOCK_LENGTH, (byte) 0);
+        this.compress(this.buffer, 0, true);
+
+        for (int i = 0; i < this.digestLength; i++) {
+            output[offset + i] = (byte) (this.h[i >>> 3] >>> ((i & 7) << 3));
+        }
+
+        Arrays.fill(this.buffer, (byte) 0);
+        Arrays.fill(this.m, 0L);
+        Arrays.fill(this.v, 0L);
+    }
+
+    private void compress(@NotNull final byte[] block, final int offset, final boolean last) {
+        final long[] v = this.v;
+        final long[] m = this.m;
+
+        for (int i = 0; i < 16; i++) {
+            m[i] = Argon2Engine.readLong(block, offset + (i << 3));
+        }
+
+        System.arraycopy(this.h, 0, v, 0, 8);
+        System.arraycopy(IV, 0, v, 8, 8);
+        v[12] ^= this.counter;
+        if (last) {
+            v[14] = ~v[14];
+        }
+
+        for (int round = 0; round < 12; round++) {
+            final byte[] s = SIGMA[round];
+            g(v, 0, 4, 8, 12, m[s[0]], m[s[1]]);
+            g(v, 1, 5, 9, 13, m[s[2]], m[s[3]]);
+            g(v, 2, 6, 10, 14, m[s[4]], m[s[5]]);
+            g(v, 3, 7, 11, 15, m[s[6]], m[s[7]]);
+            g(v, 0, 5, 10, 15, m[s[8]], m[s[9]]);
+            g(v, 1, 6, 11, 12, m[s[10]], m[s[11]]);
+            g(v, 2, 7, 8, 13, m[s[12]], m[s[13]]);
+            g(v, 3, 4, 9, 14, m[s[14]], m[s[15]]);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            this.h[i] ^= v[i] ^ v[i + 8];
+        }
+    }
+
+    private static void g(final long[] v, final int a, final int b, final int c, final int d, final long x, final long y) {
+        v[a] = v[a] + v[b] + x;
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = v[c] + v[d];
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = v[a] + v[b] + y;
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = v[c] + v[d];
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Argon2id through the BouncyCastle generator, which allocates a new memory matrix on every call.
+ */
+public final class BouncyCastleArgon2Hasher implements PasswordHasher {
+
+    @Override
+    public byte[] hash(final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        final Argon2Parameters.Builder builder = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                .withIterations(cost.getIterations())
+                .withMemoryAsKB(cost.getMemoryKb())
+                .withParallelism(cost.getParallelism())
+                .withSalt(salt);
+        final Argon2BytesGenerator generator = new Argon2BytesGenerator();
+
+        generator.init(builder.build());
+        final byte[] result = new byte[cost.getHashLength()];
+        generator.generateBytes(password, result, 0x00, result.length);
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "BOUNCYCASTLE";
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.configuration.LightConfiguration;
+import top.cmarco.lightlogin.encrypt.worker.WorkerProcessHasher;
+import top.cmarco.lightlogin.thread.VirtualThreads;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor that runs every Argon2 computation of this software.
+ * A fixed amount of workers pulls from a bounded queue, new requests are rejected
+ * once the queue is full, and the memory held by running hashes is accounted
+ * against a configurable budget so that a login storm cannot exhaust the heap.
+ */
+public final class HashingManager {
+
+    private static final int SALT_LENGTH = 0x10;
+
+    private final LightLoginPlugin plugin;
+    private volatile Argon2Cost targetCost;
+    private Argon2Calibration calibration = null;
+    private final int workers;
+    private final int queueSize;
+    private final int memoryBudgetKb;
+    private final Semaphore memoryPermits;
+    private ThreadPoolExecutor executor = null;
+    private ExecutorService callbackExecutor = null;
+    private Argon2LanePool lanePool = null;
+    private WorkerProcessHasher workerProcess = null;
+
+    private final AtomicLong submittedHashes = new AtomicLong();
+    private final AtomicLong completedHashes = new AtomicLong();
+    private final AtomicLong rejectedHashes = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public HashingManager(@NotNull final LightLoginPlugin plugin) {
+        this.plugin = plugin;
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        final int configuredWorkers = configuration.getHashingThreads();
+        this.workers = configuredWorkers > 0 ? configuredWorkers : defaultWorkers();
+        this.queueSize = Math.max(1, configuration.getHashingQueueSize());
+        this.targetCost = readTargetCost(plugin);
+        final int configuredBudgetKb = Math.max(1, configuration.getHashingMaxMemoryMb()) * 1024;
+        // The budget must always fit at least a single hash, or nothing would ever run.
+        this.memoryBudgetKb = Math.max(configuredBudgetKb, Math.max(this.targetCost.getMemoryKb(), Argon2Cost.LEGACY.getMemoryKb()));
+        this.memoryPermits = new Semaphore(this.memoryBudgetKb, true);
+    }
+
+    @NotNull
+    private static Argon2Cost readTargetCost(@NotNull final LightLoginPlugin plugin) {
+        final LightConfiguration configuration = plugin.getLightConfiguration();
+        try {
+            return new Argon2Cost(configuration.getArgon2Iterations(), configuration.getArgon2MemoryKb(),
+                    configuration.getArgon2Parallelism(), Argon2Cost.LEGACY.getHashLength());
+        } catch (IllegalArgumentException exception) {
+            plugin.getLogger().warning("Invalid Argon2 parameters in the configuration, using the defaults: " + exception.getMessage());
+            return Argon2Cost.LEGACY;
+        }
+    }
+
+    private static int defaultWorkers() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public void start() {
+        if (this.executor != null) {
+            return;
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "LightLogin-Hashing-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+
+        final String engine = this.plugin.getLightConfiguration().getHashingEngine();
+        if (engine.equalsIgnoreCase("BOUNCYCASTLE")) {
+            Argon2Utilities.setPasswordHasher(new BouncyCastleArgon2Hasher());
+        } else {
+            if (this.plugin.getLightConfiguration().getHashingLaneScheduling().equalsIgnoreCase("LATENCY")) {
+                this.lanePool = new Argon2LanePool(Runtime.getRuntime().availableProcessors());
+            }
+            // One retained memory matrix per worker, every hash runs on one of them.
+            PooledArgon2Hasher hasher = null;
+            if (engine.equalsIgnoreCase("VECTOR")) {
+                hasher = PooledArgon2Hasher.withVectorInstructions(this.workers, this.lanePool);
+                if (hasher == null) {
+                    this.plugin.getLogger().warning("WARNING! The VECTOR engine needs the JVM flag --add-modules jdk.incubator.vector and a CPU with 256 bit vectors, using POOLED instead.");
+                }
+            }
+            Argon2Utilities.setPasswordHasher(hasher != null ? hasher : new PooledArgon2Hasher(this.workers, this.lanePool));
+        }
+        this.checkKnownAnswers();
+
+        if (this.plugin.getLightConfiguration().isHashingWorkerProcessEnabled()) {
+            this.startWorkerProcess();
+        }
+
+        if (this.plugin.getLightConfiguration().isHashingCalibrationEnabled()) {
+            this.calibration = new Argon2Calibration(this.plugin, this.workers, this.memoryBudgetKb, this.targetCost);
+            this.targetCost = this.calibration.loadOrCalibrate();
+        }
+
+        if (this.plugin.getLightConfiguration().isVirtualThreadsEnabled()) {
+            this.callbackExecutor = VirtualThreads.newThreadPerTaskExecutor("LightLogin-Auth-");
+        }
+
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueSize),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Make sure the selected Argon2 implementation computes the expected hashes,
+     * falling back to BouncyCastle if it does not.
+     */
+    private void checkKnownAnswers() {
+        final PasswordHasher hasher = Argon2Utilities.getPasswordHasher();
+        final String failed = Argon2KnownAnswers.check(hasher);
+        if (failed == null) {
+            return;
+        }
+
+        this.plugin.getLogger().warning("WARNING! The " + hasher.getName() + " Argon2 engine failed the " + failed + " known answer check!");
+        if (hasher instanceof BouncyCastleArgon2Hasher) {
+            return;
+        }
+
+        this.plugin.getLogger().warning("Using the BOUNCYCASTLE engine instead.");
+        Argon2Utilities.setPasswordHasher(new BouncyCastleArgon2Hasher());
+        if (this.lanePool != null) {
+            this.lanePool.shutdown();
+            this.lanePool = null;
+        }
+    }
+
+    /**
+     * Move hashing to a separate process, keeping the in-server implementation as its fallback.
+     */
+    private void startWorkerProcess() {
+        final PasswordHasher hasher = Argon2Utilities.getPasswordHasher();
+        if (hasher instanceof BouncyCastleArgon2Hasher) {
+            this.plugin.getLogger().warning("WARNING! The hashing worker process only runs the POOLED and VECTOR engines, hashing in the server.");
+            return;
+        }
+
+        // Every running hash plus the matrices the idle engines keep.
+        final int workerMemoryKb = this.memoryBudgetKb + this.workers * Math.max(this.targetCost.getMemoryKb(), Argon2Cost.LEGACY.getMemoryKb());
+        final WorkerProcessHasher worker = new WorkerProcessHasher(this.plugin, hasher, this.workers, workerMemoryKb);
+        if (!worker.start()) {
+            worker.close();
+            return;
+        }
+
+        final String failed = Argon2KnownAnswers.check(worker);
+        if (failed != null) {
+            this.plugin.getLogger().warning("WARNING! The hashing worker process failed the " + failed + " known answer check, hashing in the server.");
+            worker.close();
+            return;
+        }
+
+        this.workerProcess = worker;
+        Argon2Utilities.setPasswordHasher(worker);
+        this.plugin.sendConsoleColoured("&7[ &a&l✔&r &7] &aHashing in worker process &e" + worker.getPid());
+    }
+
+    public void shutdown() {
+        if (this.executor == null) {
+            return;
+        }
+
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(5L, TimeUnit.SECONDS)) {
+                this.executor.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        this.executor = null;
+
+        if (this.callbackExecutor != null) {
+            this.callbackExecutor.shutdown();
+            this.callbackExecutor = null;
+        }
+
+        if (this.workerProcess != null) {
+            this.workerProcess.close();
+            Argon2Utilities.setPasswordHasher(this.workerProcess.getFallback());
+            this.workerProcess = null;
+        }
+
+        if (this.lanePool != null) {
+            this.lanePool.shutdown();
+            this.lanePool = null;
+        }
+    }
+
+    /**
+     * Hash a new password with a random salt and the current target parameters.
+     *
+     * @param password The plaintext password input.
+     * @return A future completed with the new hash, or completed exceptionally
+     *         with a {@link RejectedExecutionException} when the hashing queue is full.
+     */
+    @NotNull
+    public CompletableFuture<Argon2Hash> hash(@NotNull final String password) {
+        final Argon2Cost cost = this.targetCost;
+        final byte[] salt = Argon2Utilities.generateSaltByte(SALT_LENGTH);
+        return this.submit(cost, () -> new Argon2Hash(cost, salt, Argon2Utilities.hashArgon2(password, salt, cost), false));
+    }
+
+    /**
+     * Check a password attempt against a stored hash, using the parameters it was stored with.
+     *
+     * @param password The plaintext password attempt.
+     * @param storedHash The stored hash.
+     * @return A future completed with true if the password matches, or completed exceptionally
+     *         with a {@link RejectedExecutionException} when the hashing queue is full, or with an
+     *         {@link IllegalArgumentException} when the stored hash needs more memory than the budget.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> verify(@NotNull final String password, @NotNull final Argon2Hash storedHash) {
+        final Argon2Cost cost = storedHash.getCost();
+        if (cost.getMemoryKb() > this.memoryBudgetKb) {
+            final CompletableFuture<Boolean> result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalArgumentException("Stored password hash needs " + cost.getMemoryKb()
+                    + " KB, more than the hashing memory budget of " + this.memoryBudgetKb + " KB."));
+            return result;
+        }
+        return this.submit(cost, () -> storedHash.matches(Argon2Utilities.hashArgon2(password, storedHash.getSalt(), cost)));
+    }
+
+    /**
+     * A hash is only ever recomputed with stronger parameters, never with weaker ones,
+     * so lowering the target cannot weaken passwords that are already stored.
+     * Legacy hashes are also moved to the PHC format when the target is as strong as them.
+     *
+     * @param storedHash A stored hash.
+     * @return true if the hash should be recomputed with the current target parameters.
+     */
+    public boolean needsRehash(@NotNull final Argon2Hash storedHash) {
+        final Argon2Cost cost = this.targetCost;
+        return cost.isStrongerThan(storedHash.getCost()) || (storedHash.isLegacy() && cost.isAtLeast(storedHash.getCost()));
+    }
+
+    @NotNull
+    private <T> CompletableFuture<T> submit(@NotNull final Argon2Cost cost, @NotNull final Callable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final ThreadPoolExecutor currentExecutor = this.executor;
+
+        if (currentExecutor == null) {
+            result.completeExceptionally(new RejectedExecutionException("Hashing manager is not running."));
+            return result;
+        }
+
+        final long queuedAt = System.nanoTime();
+        try {
+            currentExecutor.execute(() -> this.runHash(cost, task, queuedAt, result));
+            this.submittedHashes.incrementAndGet();
+        } catch (RejectedExecutionException exception) {
+            this.rejectedHashes.incrementAndGet();
+            result.completeExceptionally(exception);
+        }
+
+        return result;
+    }
+
+    private <T> void runHash(@NotNull final Argon2Cost cost, @NotNull final Callable<T> task,
+                             final long queuedAt, @NotNull final CompletableFuture<T> result) {
+        final int memoryKb = Math.min(cost.getMemoryKb(), this.memoryBudgetKb);
+        boolean acquired = false;
+        try {
+            this.memoryPermits.acquire(memoryKb);
+            acquired = true;
+
+            final long startTime = System.nanoTime();
+            this.totalWaitNanos.addAndGet(startTime - queuedAt);
+            final T value = task.call();
+            final long elapsed = System.nanoTime() - startTime;
+
+            this.totalHashNanos.addAndGet(elapsed);
+            this.maxHashNanos.accumulateAndGet(elapsed, Math::max);
+            this.completedHashes.incrementAndGet();
+            this.complete(result, value, null);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            this.complete(result, null, exception);
+        } catch (Throwable throwable) {
+            this.complete(result, null, throwable);
+        } finally {
+            if (acquired) {
+                this.memoryPermits.release(memoryKb);
+            }
+        }
+    }
+
+    /**
+     * Complete a hash request. With virtual threads available the completion happens on one of them,
+     * so whatever the caller chained on the result (database writes, events) never holds a hashing worker.
+     */
+    private <T> void complete(@NotNull final CompletableFuture<T> result, @Nullable final T value, @Nullable final Throwable throwable) {
+        final Runnable completion = () -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        };
+
+        final ExecutorService callbacks = this.callbackExecutor;
+        if (callbacks != null) {
+            try {
+                callbacks.execute(completion);
+                return;
+            } catch (RejectedExecutionException ignored) {
+                // Shutting down, complete on this thread.
+            }
+        }
+        completion.run();
+    }
+
+    /**
+     * Check whether a throwable received from {@link #hash(String)} or {@link #verify(String, Argon2Hash)}
+     * means that the request was refused because the hashing queue was full.
+     *
+     * @param throwable The throwable to check.
+     * @return true if the hash request has been rejected.
+     */
+    public static boolean isRejected(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RejectedExecutionException;
+    }
+
+    @NotNull
+    public Argon2Cost getTargetCost() {
+        return targetCost;
+    }
+
+    /**
+     * @return The calibration the target parameters come from, or null if they come from the configuration.
+     */
+    @Nullable
+    public Argon2Calibration getCalibration() {
+        return calibration;
+    }
+
+    /**
+     * @return The hashing worker process, or null if hashes are computed in the server.
+     */
+    @Nullable
+    public WorkerProcessHasher getWorkerProcess() {
+        return workerProcess;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueueDepth() {
+        final ThreadPoolExecutor currentExecutor = this.executor;
+        return currentExecutor == null ? 0 : currentExecutor.getQueue().size();
+    }
+
+    public int getActiveHashes() {
+        final ThreadPoolExecutor currentExecutor = this.executor;
+        return currentExecutor == null ? 0 : currentExecutor.getActiveCount();
+    }
+
+    public int getMemoryBudgetKb() {
+        return memoryBudgetKb;
+    }
+
+    public int getMemoryInUseKb() {
+        return this.memoryBudgetKb - this.memoryPermits.availablePermits();
+    }
+
+    public long getSubmittedHashes() {
+        return submittedHashes.get();
+    }
+
+    public long getCompletedHashes() {
+        return completedHashes.get();
+    }
+
+    public long getRejectedHashes() {
+        return rejectedHashes.get();
+    }
+
+    public double getAverageHashMillis() {
+        final long completed = this.completedHashes.get();
+        return completed == 0 ? 0d : (this.totalHashNanos.get() / (double) completed) / 1E6;
+    }
+
+    public double getMaxHashMillis() {
+        return this.maxHashNanos.get() / 1E6;
+    }
+
+    public double getAverageWaitMillis() {
+        final long completed = this.completedHashes.get();
+        return completed == 0 ? 0d : (this.totalWaitNanos.get() / (double) completed) / 1E6;
+    }
+}
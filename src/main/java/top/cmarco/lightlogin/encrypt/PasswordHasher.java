@@ -0,0 +1,43 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An Argon2id implementation, every implementation must produce the same output for the same input.
+ */
+public interface PasswordHasher {
+
+    /**
+     * Compute the raw Argon2id (version 0x13) hash of a password.
+     *
+     * @param password The password bytes.
+     * @param salt The salt to use.
+     * @param cost The cost parameters.
+     * @return The raw hash, {@link Argon2Cost#getHashLength()} bytes long.
+     */
+    byte[] hash(final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost);
+
+    /**
+     * @return A short name of this implementation.
+     */
+    @NotNull
+    String getName();
+}
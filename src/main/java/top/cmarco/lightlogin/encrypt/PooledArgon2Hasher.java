@@ -0,0 +1,134 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Argon2id with pooled memory matrices.
+ * Instead of allocating a new 64 MB matrix per hash, engines are borrowed from a pool
+ * and returned zeroed, so that steady state logins do not allocate at all.
+ * At most {@code maxPooledEngines} engines are retained, any extra engine created
+ * under contention is dropped after use.
+ * With a lane pool, the lanes of every hash are filled concurrently: a single hash finishes
+ * sooner, while the total work stays the same.
+ * The engines can compute the compression function with SIMD instructions, see {@link #withVectorInstructions(int, Argon2LanePool)}.
+ */
+public final class PooledArgon2Hasher implements PasswordHasher {
+
+    private final ConcurrentLinkedQueue<Argon2Engine> engines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledEngines = new AtomicInteger();
+    private final int maxPooledEngines;
+    private final Argon2BlockFunction blockFunction;
+    @Nullable
+    private final Argon2LanePool lanePool;
+
+    public PooledArgon2Hasher(final int maxPooledEngines) {
+        this(maxPooledEngines, null);
+    }
+
+    /**
+     * @param lanePool The pool filling lanes concurrently, null to fill the lanes of a hash on its own thread.
+     */
+    public PooledArgon2Hasher(final int maxPooledEngines, @Nullable final Argon2LanePool lanePool) {
+        this(maxPooledEngines, Argon2BlockFunction.scalar(), lanePool);
+    }
+
+    PooledArgon2Hasher(final int maxPooledEngines, @NotNull final Argon2BlockFunction blockFunction,
+                       @Nullable final Argon2LanePool lanePool) {
+        this.maxPooledEngines = Math.max(1, maxPooledEngines);
+        this.blockFunction = blockFunction;
+        this.lanePool = lanePool;
+    }
+
+    /**
+     * Create a hasher whose engines use the Vector API, which is only available when the server
+     * runs with {@code --add-modules jdk.incubator.vector} on a CPU with 256 bit vectors.
+     *
+     * @return The hasher, or null if the Vector API cannot be used on this JVM.
+     */
+    @Nullable
+    public static PooledArgon2Hasher withVectorInstructions(final int maxPooledEngines, @Nullable final Argon2LanePool lanePool) {
+        final Argon2BlockFunction vector = Argon2BlockFunction.loadVector();
+        return vector == null ? null : new PooledArgon2Hasher(maxPooledEngines, vector, lanePool);
+    }
+
+    @Override
+    public byte[] hash(final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        Argon2Engine engine = this.engines.poll();
+        if (engine != null) {
+            this.pooledEngines.decrementAndGet();
+        } else {
+            engine = this.newEngine();
+        }
+
+        try {
+            return engine.hash(password, salt, cost);
+        } finally {
+            if (this.pooledEngines.incrementAndGet() <= this.maxPooledEngines) {
+                this.engines.offer(engine);
+            } else {
+                this.pooledEngines.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return A new, empty pool whose engines are configured like the ones of this pool.
+     */
+    @NotNull
+    PooledArgon2Hasher withMaxPooledEngines(final int maxPooledEngines) {
+        return new PooledArgon2Hasher(maxPooledEngines, this.blockFunction, this.lanePool);
+    }
+
+    /**
+     * @return A new engine configured like the pooled ones.
+     */
+    @NotNull
+    Argon2Engine newEngine() {
+        return new Argon2Engine(this.blockFunction, this.lanePool);
+    }
+
+    /**
+     * @return The memory currently retained by the idle engines of this pool.
+     */
+    public long getRetainedBytes() {
+        long retained = 0L;
+        for (final Argon2Engine engine : this.engines) {
+            retained += engine.getRetainedBytes();
+        }
+        return retained;
+    }
+
+    @Nullable
+    public Argon2LanePool getLanePool() {
+        return lanePool;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        final String name = this.blockFunction instanceof ScalarBlockFunction ? "POOLED" : "VECTOR";
+        return this.lanePool == null ? name : name + "-PARALLEL";
+    }
+}
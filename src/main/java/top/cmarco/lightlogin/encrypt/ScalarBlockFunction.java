@@ -0,0 +1,104 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt;
+
+/**
+ * The compression function computed one 64 bit word at a time, as written in RFC 9106.
+ */
+final class ScalarBlockFunction implements Argon2BlockFunction {
+
+    static final ScalarBlockFunction INSTANCE = new ScalarBlockFunction();
+
+    private ScalarBlockFunction() {
+    }
+
+    @Override
+    public void fillBlock(final long[] memory, final int previous, final int reference, final int next,
+                          final boolean withXor, final long[] r, final long[] z) {
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            r[i] = memory[previous + i] ^ memory[reference + i];
+        }
+
+        if (withXor) {
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                z[i] = r[i] ^ memory[next + i];
+            }
+        } else {
+            System.arraycopy(r, 0, z, 0, BLOCK_WORDS);
+        }
+
+        permute(r);
+
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            memory[next + i] = z[i] ^ r[i];
+        }
+    }
+
+    @Override
+    public void compress(final long[] input, final long[] output, final long[] scratch) {
+        System.arraycopy(input, 0, scratch, 0, BLOCK_WORDS);
+        permute(scratch);
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            output[i] = input[i] ^ scratch[i];
+        }
+    }
+
+    private static void permute(final long[] v) {
+        for (int i = 0; i < 8; i++) {
+            final int i16 = 16 * i;
+            round(v, i16, i16 + 1, i16 + 2, i16 + 3, i16 + 4, i16 + 5, i16 + 6, i16 + 7,
+                    i16 + 8, i16 + 9, i16 + 10, i16 + 11, i16 + 12, i16 + 13, i16 + 14, i16 + 15);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            final int i2 = 2 * i;
+            round(v, i2, i2 + 1, i2 + 16, i2 + 17, i2 + 32, i2 + 33, i2 + 48, i2 + 49,
+                    i2 + 64, i2 + 65, i2 + 80, i2 + 81, i2 + 96, i2 + 97, i2 + 112, i2 + 113);
+        }
+    }
+
+    private static void round(final long[] v, final int v0, final int v1, final int v2, final int v3,
+                              final int v4, final int v5, final int v6, final int v7,
+                              final int v8, final int v9, final int v10, final int v11,
+                              final int v12, final int v13, final int v14, final int v15) {
+        mix(v, v0, v4, v8, v12);
+        mix(v, v1, v5, v9, v13);
+        mix(v, v2, v6, v10, v14);
+        mix(v, v3, v7, v11, v15);
+        mix(v, v0, v5, v10, v15);
+        mix(v, v1, v6, v11, v12);
+        mix(v, v2, v7, v8, v13);
+        mix(v, v3, v4, v9, v14);
+    }
+
+    private static void mix(final long[] v, final int a, final int b, final int c, final int d) {
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+
+    private static long blaMka(final long x, final long y) {
+        return x + y + 2L * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt.worker;
+
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.encrypt.Argon2Cost;
+import top.cmarco.lightlogin.encrypt.Argon2LanePool;
+import top.cmarco.lightlogin.encrypt.PasswordHasher;
+import top.cmarco.lightlogin.encrypt.PooledArgon2Hasher;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entry point of the hashing worker process, started by {@link WorkerProcessHasher} from the plugin jar.
+ * It serves a single connection, the one of the server that started it, hashing requests on a fixed
+ * amount of threads, and exits as soon as that connection closes or the server process is gone.
+ * Only the hashing classes of this software are available here, no server API.
+ * <p>
+ * Arguments: socket path, threads, engine name as reported by {@link PasswordHasher#getName()}.
+ */
+public final class HashingWorker {
+
+    private final SocketChannel channel;
+    private final PasswordHasher hasher;
+    private final ExecutorService executor;
+    private final Object writeLock = new Object();
+
+    private HashingWorker(@NotNull final SocketChannel channel, @NotNull final PasswordHasher hasher, @NotNull final ExecutorService executor) {
+        this.channel = channel;
+        this.hasher = hasher;
+        this.executor = executor;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: HashingWorker <socket> <threads> <engine>");
+            System.exit(2);
+        }
+
+        final Path socket = Path.of(args[0]);
+        final int threads = Math.max(1, Integer.parseInt(args[1]));
+        final String engine = args[2];
+
+        // Never outlive the server, even if it was killed without closing the connection.
+        ProcessHandle.current().parent().ifPresent(parent -> parent.onExit().thenRun(() -> System.exit(0)));
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        final ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "LightLogin-Worker-Hashing-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            try (SocketChannel channel = server.accept()) {
+                new HashingWorker(channel, createHasher(engine, threads), executor).serve();
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+        System.exit(0);
+    }
+
+    @NotNull
+    private static PasswordHasher createHasher(@NotNull final String engine, final int threads) {
+        final Argon2LanePool lanePool = engine.endsWith("-PARALLEL") ? new Argon2LanePool(Runtime.getRuntime().availableProcessors()) : null;
+        if (engine.startsWith("VECTOR")) {
+            final PooledArgon2Hasher vectorHasher = PooledArgon2Hasher.withVectorInstructions(threads, lanePool);
+            if (vectorHasher != null) {
+                return vectorHasher;
+            }
+            System.err.println("The Vector API is not available, using POOLED instead.");
+        }
+        return new PooledArgon2Hasher(threads, lanePool);
+    }
+
+    private void serve() {
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                final ByteBuffer frame = WorkerProtocol.readFrame(this.channel, header);
+                final long id = frame.getLong();
+                this.executor.execute(() -> this.hash(id, frame));
+            }
+        } catch (IOException exception) {
+            // The server closed the connection, or is gone.
+        }
+    }
+
+    private void hash(final long id, @NotNull final ByteBuffer frame) {
+        ByteBuffer response;
+        try {
+            final Argon2Cost cost = new Argon2Cost(frame.getInt(), frame.getInt(), frame.getInt(), frame.getInt());
+            final byte[] password = WorkerProtocol.readBytes(frame);
+            final byte[] salt = WorkerProtocol.readBytes(frame);
+            response = WorkerProtocol.response(id, WorkerProtocol.STATUS_OK, this.hasher.hash(password, salt, cost));
+        } catch (RuntimeException exception) {
+            final String message = String.valueOf(exception.getMessage());
+            response = WorkerProtocol.response(id, WorkerProtocol.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            synchronized (this.writeLock) {
+                WorkerProtocol.writeFully(this.channel, response);
+            }
+        } catch (IOException exception) {
+            // The connection is gone, serve() ends as well.
+        }
+    }
+}
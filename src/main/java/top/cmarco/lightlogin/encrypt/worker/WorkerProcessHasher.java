@@ -0,0 +1,359 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt.worker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.cmarco.lightlogin.LightLoginPlugin;
+import top.cmarco.lightlogin.encrypt.Argon2Cost;
+import top.cmarco.lightlogin.encrypt.PasswordHasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes hashes in a separate Java process, so that the Argon2 memory matrices never
+ * live in the heap of the server and cannot cause garbage collection pauses there.
+ * The process is spawned from the plugin jar and reached over a Unix domain socket,
+ * every hashing thread of the server can have a request in flight on the same connection.
+ * If the process dies it is started again in the background, and until it is back
+ * hashes are computed in the server with the fallback implementation.
+ */
+public final class WorkerProcessHasher implements PasswordHasher {
+
+    private static final long START_TIMEOUT_MILLIS = 10_000L;
+    private static final long HASH_TIMEOUT_SECONDS = 60L;
+    private static final int MAX_RESTART_DELAY_SECONDS = 60;
+    // Room for the worker's own classes and buffers, on top of the hashing memory.
+    private static final int HEAP_OVERHEAD_MB = 64;
+
+    private final LightLoginPlugin plugin;
+    private final PasswordHasher fallback;
+    private final int threads;
+    private final int heapMb;
+
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService restarter;
+
+    private Path socketDirectory = null;
+    private volatile Process process = null;
+    private volatile SocketChannel channel = null;
+    private volatile boolean closed = false;
+    private int failedStarts = 0;
+
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong fallbackHashes = new AtomicLong();
+
+    /**
+     * @param fallback The implementation used in this process while the worker is unavailable,
+     *                 its name also tells the worker which implementation to use.
+     * @param threads The amount of hashing threads of the worker.
+     * @param hashingMemoryKb The most memory the worker may need for hashing.
+     */
+    public WorkerProcessHasher(@NotNull final LightLoginPlugin plugin, @NotNull final PasswordHasher fallback,
+                               final int threads, final int hashingMemoryKb) {
+        this.plugin = plugin;
+        this.fallback = fallback;
+        this.threads = threads;
+        this.heapMb = hashingMemoryKb / 1024 + HEAP_OVERHEAD_MB;
+        this.restarter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "LightLogin-Worker-Restart");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start the worker process and wait until it accepts requests.
+     *
+     * @return true if the worker is running.
+     */
+    public synchronized boolean start() {
+        try {
+            this.launch();
+            return true;
+        } catch (IOException exception) {
+            this.plugin.getLogger().warning("WARNING! Could not start the hashing worker process: " + exception.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized void launch() throws IOException {
+        if (this.socketDirectory == null) {
+            // A private temporary directory, socket paths must stay short and only this user may connect.
+            this.socketDirectory = Files.createTempDirectory("lightlogin-");
+        }
+        final Path socket = this.socketDirectory.resolve("worker.sock");
+        Files.deleteIfExists(socket);
+
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + this.heapMb + "m");
+        command.add("-XX:+UseSerialGC");
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        if (this.fallback.getName().startsWith("VECTOR")) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(pluginJar());
+        command.add(HashingWorker.class.getName());
+        command.add(socket.toString());
+        command.add(String.valueOf(this.threads));
+        command.add(this.fallback.getName());
+
+        final Process started = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(this.plugin.getDataFolder(), "hashing-worker.log")))
+                .start();
+
+        final long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        SocketChannel connected = null;
+        while (connected == null) {
+            if (!started.isAlive()) {
+                throw new IOException("The worker exited with code " + started.exitValue() + ", see hashing-worker.log");
+            }
+            try {
+                connected = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            } catch (IOException exception) {
+                if (System.currentTimeMillis() > deadline) {
+                    started.destroyForcibly();
+                    throw new IOException("The worker did not open its socket in time.", exception);
+                }
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException interruptedException) {
+                    started.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while starting the worker.", interruptedException);
+                }
+            }
+        }
+
+        this.process = started;
+        this.channel = connected;
+        this.failedStarts = 0;
+
+        final SocketChannel readChannel = connected;
+        final Thread reader = new Thread(() -> this.readResponses(readChannel), "LightLogin-Worker-Reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @NotNull
+    private static String pluginJar() throws IOException {
+        try {
+            return Path.of(HashingWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException | SecurityException | NullPointerException exception) {
+            throw new IOException("Could not locate the plugin jar.", exception);
+        }
+    }
+
+    private void readResponses(@NotNull final SocketChannel readChannel) {
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            while (true) {
+                final ByteBuffer frame = WorkerProtocol.readFrame(readChannel, header);
+                final CompletableFuture<byte[]> request = this.pending.remove(frame.getLong());
+                if (request == null) {
+                    continue;
+                }
+
+                final byte status = frame.get();
+                final byte[] content = new byte[frame.remaining()];
+                frame.get(content);
+                if (status == WorkerProtocol.STATUS_OK) {
+                    request.complete(content);
+                } else {
+                    request.completeExceptionally(new IllegalArgumentException(new String(content, StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (IOException exception) {
+            this.connectionLost(readChannel, exception);
+        }
+    }
+
+    @Override
+    public byte[] hash(final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        final SocketChannel current = this.channel;
+        if (current == null) {
+            this.fallbackHashes.incrementAndGet();
+            return this.fallback.hash(password, salt, cost);
+        }
+
+        final long id = this.requestIds.incrementAndGet();
+        final CompletableFuture<byte[]> request = new CompletableFuture<>();
+        this.pending.put(id, request);
+        try {
+            synchronized (this.writeLock) {
+                WorkerProtocol.writeFully(current, WorkerProtocol.request(id, password, salt, cost));
+            }
+            return request.get(HASH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IllegalArgumentException) {
+                // The worker refused the request itself, computing it here would fail the same way.
+                throw (IllegalArgumentException) exception.getCause();
+            }
+        } catch (IOException | TimeoutException exception) {
+            this.connectionLost(current, exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the hashing worker.", exception);
+        } finally {
+            this.pending.remove(id);
+        }
+
+        this.fallbackHashes.incrementAndGet();
+        return this.fallback.hash(password, salt, cost);
+    }
+
+    /**
+     * Drop a broken connection: kill its process, send the requests waiting on it
+     * to the fallback implementation and schedule a restart.
+     */
+    private synchronized void connectionLost(@NotNull final SocketChannel lostChannel, @NotNull final Exception cause) {
+        if (this.channel != lostChannel) {
+            return;
+        }
+
+        this.channel = null;
+        this.stopProcess(lostChannel);
+        for (final CompletableFuture<byte[]> request : this.pending.values()) {
+            request.completeExceptionally(cause);
+        }
+
+        if (!this.closed) {
+            this.plugin.getLogger().warning("WARNING! Lost the hashing worker process (" + cause.getMessage() + "), hashing in the server until it is back.");
+            this.scheduleRestart();
+        }
+    }
+
+    private void scheduleRestart() {
+        final int delay = Math.min(MAX_RESTART_DELAY_SECONDS, 1 << Math.min(this.failedStarts, 6));
+        this.restarter.schedule(this::restart, delay, TimeUnit.SECONDS);
+    }
+
+    private synchronized void restart() {
+        if (this.closed || this.channel != null) {
+            return;
+        }
+
+        try {
+            this.launch();
+            this.restarts.incrementAndGet();
+            this.plugin.getLogger().info("The hashing worker process is running again.");
+        } catch (IOException exception) {
+            this.failedStarts++;
+            this.plugin.getLogger().warning("WARNING! Could not restart the hashing worker process: " + exception.getMessage());
+            this.scheduleRestart();
+        }
+    }
+
+    private void stopProcess(@Nullable final SocketChannel openChannel) {
+        if (openChannel != null) {
+            try {
+                openChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        final Process current = this.process;
+        this.process = null;
+        if (current == null) {
+            return;
+        }
+        // Closing the connection makes the worker exit by itself, only force it if it does not.
+        try {
+            if (!current.waitFor(2L, TimeUnit.SECONDS)) {
+                current.destroyForcibly();
+            }
+        } catch (InterruptedException exception) {
+            current.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the worker process for good, requests still made afterwards use the fallback implementation.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        this.restarter.shutdownNow();
+
+        final SocketChannel current = this.channel;
+        this.channel = null;
+        this.stopProcess(current);
+
+        if (this.socketDirectory != null) {
+            try {
+                Files.deleteIfExists(this.socketDirectory.resolve("worker.sock"));
+                Files.deleteIfExists(this.socketDirectory);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return this.channel != null;
+    }
+
+    public long getPid() {
+        final Process current = this.process;
+        return current == null ? -1L : current.pid();
+    }
+
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    public long getFallbackHashes() {
+        return fallbackHashes.get();
+    }
+
+    @NotNull
+    public PasswordHasher getFallback() {
+        return fallback;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "WORKER-" + this.fallback.getName();
+    }
+}
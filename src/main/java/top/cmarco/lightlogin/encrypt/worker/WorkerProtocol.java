@@ -0,0 +1,121 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.encrypt.worker;
+
+import org.jetbrains.annotations.NotNull;
+import top.cmarco.lightlogin.encrypt.Argon2Cost;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The messages exchanged with the hashing worker process over its socket.
+ * Every message is a frame made of its length followed by its content, requests carry an id
+ * that the matching response repeats, so that many requests can be in flight at once and
+ * answered in any order.
+ * <p>
+ * Request: id, iterations, memory, parallelism, hash length, password, salt.
+ * Response: id, status, then the raw hash or an error message.
+ */
+final class WorkerProtocol {
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    // Passwords, salts and hashes are tiny, anything bigger means the stream is corrupted.
+    private static final int MAX_FRAME_BYTES = 0x10000;
+
+    private WorkerProtocol() {
+        throw new RuntimeException("You may not instantiate this utility class.");
+    }
+
+    @NotNull
+    static ByteBuffer request(final long id, final byte[] password, final byte[] salt, @NotNull final Argon2Cost cost) {
+        final int length = 8 + 4 * 4 + 4 + password.length + 4 + salt.length;
+        final ByteBuffer frame = ByteBuffer.allocate(4 + length)
+                .putInt(length)
+                .putLong(id)
+                .putInt(cost.getIterations())
+                .putInt(cost.getMemoryKb())
+                .putInt(cost.getParallelism())
+                .putInt(cost.getHashLength())
+                .putInt(password.length)
+                .put(password)
+                .putInt(salt.length)
+                .put(salt);
+        return frame.flip();
+    }
+
+    @NotNull
+    static ByteBuffer response(final long id, final byte status, final byte[] content) {
+        final int length = 8 + 1 + content.length;
+        return ByteBuffer.allocate(4 + length)
+                .putInt(length)
+                .putLong(id)
+                .put(status)
+                .put(content)
+                .flip();
+    }
+
+    static byte[] readBytes(@NotNull final ByteBuffer frame) {
+        final int length = frame.getInt();
+        if (length < 0 || length > frame.remaining()) {
+            throw new IllegalArgumentException("Invalid field length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read the next frame of a blocking channel.
+     *
+     * @return The content of the frame.
+     * @throws EOFException If the other side closed the connection.
+     */
+    @NotNull
+    static ByteBuffer readFrame(@NotNull final SocketChannel channel, @NotNull final ByteBuffer header) throws IOException {
+        header.clear();
+        readFully(channel, header);
+        final int length = header.flip().getInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+
+        final ByteBuffer frame = ByteBuffer.allocate(length);
+        readFully(channel, frame);
+        return frame.flip();
+    }
+
+    static void writeFully(@NotNull final SocketChannel channel, @NotNull final ByteBuffer frame) throws IOException {
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    private static void readFully(@NotNull final SocketChannel channel, @NotNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed.");
+            }
+        }
+    }
+}
@@ -55,6 +55,7 @@ public class AuthenticationListener extends NamedListener {
                 .forEach(p -> p.showPlayer(plugin, player));
 
         runSync(plugin, () -> {
+            plugin.getAutoKickManager().cleanPlayerData(player);
             player.removePotionEffect(PotionEffectType.BLINDNESS);
 
             if (plugin.getLightConfiguration().isSoundsEnabled()) {
@@ -76,7 +77,8 @@ public class AuthenticationListener extends NamedListener {
     public final void onUnauth(@NotNull final PlayerUnauthenticateEvent event) {
         Player player = event.getPlayer();
         runSync(plugin, () -> {
-            plugin.getAutoKickManager().cleanPlayerData(player);
+            // Logging out starts the time to log in again.
+            plugin.getAutoKickManager().addEntered(player);
             giveBlindness(player, plugin);
         });
         AuthLogs authLogs = plugin.getAuthLogs();
@@ -20,6 +20,7 @@ package top.cmarco.lightlogin.listeners;
 
 import org.bukkit.plugin.PluginManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import top.cmarco.lightlogin.LightLoginPlugin;
 
 import java.util.HashMap;
@@ -46,6 +47,11 @@ public final class ListenerManager {
         this.registeredListeners.put(passwordObfuscationListener.getName(), passwordObfuscationListener);
     }
 
+    @Nullable
+    public NamedListener getListener(@NotNull String name) {
+        return this.registeredListeners.get(name);
+    }
+
     public void registerAllAddedListeners() {
         PluginManager pluginManager = this.plugin.getServer().getPluginManager();
         this.registeredListeners.values().forEach(listener -> pluginManager.registerEvents(listener, this.plugin));
@@ -33,6 +33,7 @@ import top.cmarco.lightlogin.command.LightLoginCommand;
 import top.cmarco.lightlogin.configuration.LightConfiguration;
 import top.cmarco.lightlogin.data.AuthenticationManager;
 import top.cmarco.lightlogin.data.AutoKickManager;
+import top.cmarco.lightlogin.data.LightLoginDbRow;
 import top.cmarco.lightlogin.data.StartupLoginsManager;
 import top.cmarco.lightlogin.data.VoidLoginManager;
 import top.cmarco.lightlogin.database.LightLoginColumn;
@@ -40,21 +41,49 @@ import top.cmarco.lightlogin.database.PluginDatabase;
 import top.cmarco.lightlogin.network.NetworkUtilities;
 
 import java.net.InetAddress;
+import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static top.cmarco.lightlogin.api.LoginUtils.whenOnline;
 import static top.cmarco.lightlogin.api.LoginUtils.whenOnlineOrElse;
 
 public final class LoginAuthenticatorListener extends NamedListener {
 
+    public static final String NAME = "login_authenticator_listener";
+
+    /**
+     * How long a lookup started before joining is kept, in case the join never happens.
+     */
+    private static final long PREFETCH_TTL_NANOS = 30_000_000_000L;
+
     private final LightLoginPlugin plugin;
     private final StartupLoginsManager startupLoginsManager;
     private final AuthenticationManager authManager;
     private final PluginDatabase database;
     private final LightConfiguration configuration;
 
+    private final ConcurrentHashMap<UUID, PrefetchedAccount> prefetchedAccounts = new ConcurrentHashMap<>();
+    private final AtomicLong prefetchedJoins = new AtomicLong();
+    private final AtomicLong unprefetchedJoins = new AtomicLong();
+    private final AtomicLong totalLookupWaitNanos = new AtomicLong();
+    private final AtomicLong maxLookupWaitNanos = new AtomicLong();
+
+    private static final class PrefetchedAccount {
+        private final CompletableFuture<LightLoginDbRow> row;
+        private final long startedAt;
+
+        private PrefetchedAccount(@NotNull final CompletableFuture<LightLoginDbRow> row, final long startedAt) {
+            this.row = row;
+            this.startedAt = startedAt;
+        }
+    }
+
     public LoginAuthenticatorListener(@NotNull final LightLoginPlugin plugin) {
-        super("login_authenticator_listener");
+        super(NAME);
         this.plugin = plugin;
         this.startupLoginsManager = plugin.getStartupLoginsManager();
         this.authManager = this.plugin.getAuthenticationManager();
@@ -77,6 +106,7 @@ public final class LoginAuthenticatorListener extends NamedListener {
         final LightConfiguration lightConfiguration = this.plugin.getLightConfiguration();
 
         if (inetMatchResult < lightConfiguration.getPlayersSameIp()) {
+            this.prefetchAccount(event);
             return;
         }
 
@@ -103,8 +133,11 @@ public final class LoginAuthenticatorListener extends NamedListener {
 
         final boolean requireLogin = !startupLoginsManager.contains(player);
 
-        this.database.searchRowFromPK(player.getUniqueId().toString())
+        final long joinedAt = System.nanoTime();
+
+        this.takeAccountLookup(player.getUniqueId())
                 .handle((row, throwable) -> {
+                    this.recordLookupWait(System.nanoTime() - joinedAt);
                     if (throwable != null) {
                         this.plugin.getLogger().warning(throwable.getLocalizedMessage());
                         return null;
@@ -112,6 +145,11 @@ public final class LoginAuthenticatorListener extends NamedListener {
                     return row;
                 })
                 .thenAcceptAsync(row -> {
+                    // The player may have logged in or registered with a command before the lookup completed.
+                    if (authManager.isAuthenticated(player)) {
+                        return;
+                    }
+
                     if (row == null) {
                         whenOnline(player, p -> {
                             authManager.addUnregistered(p);
@@ -161,7 +199,13 @@ public final class LoginAuthenticatorListener extends NamedListener {
                             runSync(plugin, () -> giveBlindness(player, plugin));
                         }
 
-                    }, authManager::addUnloginned);
+                    }, authManager::forget);
+                })
+                .whenComplete((unused, throwable) -> {
+                    // The player may have quit while the state was being set, do not keep it around.
+                    if (!player.isOnline()) {
+                        authManager.forget(player);
+                    }
                 })
                 .exceptionally(throwable -> {
                     this.plugin.getLogger().warning(throwable.getLocalizedMessage());
@@ -169,20 +213,77 @@ public final class LoginAuthenticatorListener extends NamedListener {
                 });
     }
 
+    /**
+     * Start the account lookup while the player is still connecting, so that it is
+     * usually complete by the time the join event fires.
+     */
+    private void prefetchAccount(@NotNull final AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        this.prefetchedAccounts.values().removeIf(account -> now - account.startedAt > PREFETCH_TTL_NANOS);
+
+        final UUID uuid = event.getUniqueId();
+        this.prefetchedAccounts.put(uuid, new PrefetchedAccount(this.database.searchRowFromPK(uuid.toString()), now));
+    }
+
+    @NotNull
+    private CompletableFuture<LightLoginDbRow> takeAccountLookup(@NotNull final UUID uuid) {
+        final PrefetchedAccount prefetched = this.prefetchedAccounts.remove(uuid);
+
+        if (prefetched != null && System.nanoTime() - prefetched.startedAt <= PREFETCH_TTL_NANOS) {
+            this.prefetchedJoins.incrementAndGet();
+            return prefetched.row;
+        }
+
+        this.unprefetchedJoins.incrementAndGet();
+        return this.database.searchRowFromPK(uuid.toString());
+    }
+
+    private void recordLookupWait(final long waitNanos) {
+        this.totalLookupWaitNanos.addAndGet(waitNanos);
+        this.maxLookupWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    public long getPrefetchedJoins() {
+        return prefetchedJoins.get();
+    }
+
+    public long getUnprefetchedJoins() {
+        return unprefetchedJoins.get();
+    }
+
+    /**
+     * @return The average time between the join event and the account row being available.
+     */
+    public double getAverageLookupWaitMillis() {
+        final long joins = this.prefetchedJoins.get() + this.unprefetchedJoins.get();
+        return joins == 0L ? 0d : (this.totalLookupWaitNanos.get() / (double) joins) / 1E6;
+    }
+
+    public double getMaxLookupWaitMillis() {
+        return this.maxLookupWaitNanos.get() / 1E6;
+    }
+
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onLeave(final PlayerQuitEvent event) {
         final Player player = event.getPlayer();
+        this.plugin.getAutoKickManager().cleanPlayerData(player);
 
         if (!authManager.isAuthenticated(player)) {
+            authManager.forget(player);
             return;
         }
 
-        this.database.updateRow(player.getUniqueId().toString(), LightLoginColumn.LAST_LOGIN, System.currentTimeMillis());
-        this.database.updateRow(player.getUniqueId().toString(), LightLoginColumn.LAST_IPV4, NetworkUtilities.convertInetSocketAddressToLong(player.getAddress()));
+        this.database.updateColumns(player.getUniqueId().toString(), Map.of(
+                LightLoginColumn.LAST_LOGIN, System.currentTimeMillis(),
+                LightLoginColumn.LAST_IPV4, NetworkUtilities.convertInetSocketAddressToLong(player.getAddress())));
 
         PlayerUnauthenticateEvent playerAuthenticateEvent = new PlayerUnauthenticateEvent(player, AuthenticationCause.AUTOMATIC);
         this.plugin.getServer().getPluginManager().callEvent(playerAuthenticateEvent);
 
-        authManager.unauthenticate(player);
+        authManager.forget(player);
     }
 }
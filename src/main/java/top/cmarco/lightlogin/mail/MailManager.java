@@ -28,14 +28,20 @@ import top.cmarco.lightlogin.LightLoginPlugin;
 import top.cmarco.lightlogin.configuration.LightConfiguration;
 import top.cmarco.lightlogin.database.LightLoginColumn;
 import top.cmarco.lightlogin.database.PluginDatabase;
-import top.cmarco.lightlogin.encrypt.Argon2Utilities;
+import top.cmarco.lightlogin.encrypt.HashingManager;
 import top.cmarco.lightlogin.encrypt.PasswordGenerator;
+import top.cmarco.lightlogin.thread.VirtualThreads;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public final class MailManager {
@@ -43,6 +49,7 @@ public final class MailManager {
     private final Properties properties;
     private final LightConfiguration config;
     private final LightLoginPlugin plugin;
+    private final ExecutorService mailExecutor;
     // -------
     private Session session = null;
 
@@ -60,6 +67,42 @@ public final class MailManager {
         this.plugin = plugin;
         this.config = plugin.getLightConfiguration();
         this.properties = this.generateProperties();
+        this.mailExecutor = createMailExecutor(plugin);
+    }
+
+    /**
+     * SMTP sends block for seconds, they get virtual threads when available and
+     * their own platform threads otherwise, never the common pool.
+     */
+    @NotNull
+    private static ExecutorService createMailExecutor(@NotNull final LightLoginPlugin plugin) {
+        final ExecutorService virtualExecutor = plugin.getLightConfiguration().isVirtualThreadsEnabled()
+                ? VirtualThreads.newThreadPerTaskExecutor("LightLogin-Mail-") : null;
+        if (virtualExecutor != null) {
+            return virtualExecutor;
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "LightLogin-Mail-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Let the emails already being sent finish, then stop the mail threads.
+     */
+    public void shutdown() {
+        this.mailExecutor.shutdown();
+        try {
+            if (!this.mailExecutor.awaitTermination(5L, TimeUnit.SECONDS)) {
+                this.mailExecutor.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            this.mailExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void startSession() {
@@ -82,64 +125,56 @@ public final class MailManager {
 
         PluginDatabase db = this.plugin.getDatabase();
 
-        final byte[] salt = Argon2Utilities.generateSaltByte(0x10);
-        final String basedPassword = Argon2Utilities.encryptArgon2(newPassword, salt);
-
-        db.updateRow(uuid.toString(), LightLoginColumn.PASSWORD, basedPassword).whenCompleteAsync((v, t) -> {
+        this.plugin.getHashingManager().hash(newPassword)
+                .thenCompose(newHash -> db.updateColumns(uuid.toString(), Map.of(
+                        LightLoginColumn.PASSWORD, newHash.encode(),
+                        LightLoginColumn.SALT, newHash.getSaltBase64())))
+                .whenCompleteAsync((v, t) -> {
 
             if (t != null) {
-                plugin.getLogger().warning("Something went wrong when updating password from email request.");
+                plugin.getLogger().warning(HashingManager.isRejected(t)
+                        ? "Hashing queue is full, could not reset password from email request."
+                        : "Something went wrong when updating password from email request.");
                 plugin.getLogger().warning(t.getLocalizedMessage());
                 result.complete(false);
                 return;
             }
 
-            db.updateRow(uuid.toString(), LightLoginColumn.SALT, basedPassword).whenCompleteAsync((v2, t2) -> {
-
-                if (t2 != null) {
-                    plugin.getLogger().warning("Something went wrong when updating salt from email request.");
-                    plugin.getLogger().warning(t2.getLocalizedMessage());
-                    result.complete(false);
-                    return;
-                }
-
-                Message message = new MimeMessage(session);
-                try {
-                    message.setFrom(new InternetAddress(this.config.getEmailAccount()));
-                    message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(emailDestination));
-                    message.setSubject(this.config.getEmailSubject());
+            Message message = new MimeMessage(session);
+            try {
+                message.setFrom(new InternetAddress(this.config.getEmailAccount()));
+                message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(emailDestination));
+                message.setSubject(this.config.getEmailSubject());
 
 
-                    List<String> mailContent = this.config.getEmailTextContent()
-                            .stream()
-                            .map(s -> s.replace("{PASSWORD}", newPassword)
-                                    .replace("{PLAYER}", username)
-                            ).collect(Collectors.toList());
+                List<String> mailContent = this.config.getEmailTextContent()
+                        .stream()
+                        .map(s -> s.replace("{PASSWORD}", newPassword)
+                                .replace("{PLAYER}", username)
+                        ).collect(Collectors.toList());
 
 
-                    StringBuilder splitNewlineBuilder = new StringBuilder();
-                    mailContent.forEach(s -> splitNewlineBuilder.append(s).append('\n'));
+                StringBuilder splitNewlineBuilder = new StringBuilder();
+                mailContent.forEach(s -> splitNewlineBuilder.append(s).append('\n'));
 
-                    MimeBodyPart mimeBodyPart = new MimeBodyPart();
-                    mimeBodyPart.setContent(splitNewlineBuilder.toString(), "text/html; charset=utf-8");
+                MimeBodyPart mimeBodyPart = new MimeBodyPart();
+                mimeBodyPart.setContent(splitNewlineBuilder.toString(), "text/html; charset=utf-8");
 
-                    Multipart multipart = new MimeMultipart();
-                    multipart.addBodyPart(mimeBodyPart);
+                Multipart multipart = new MimeMultipart();
+                multipart.addBodyPart(mimeBodyPart);
 
-                    message.setContent(multipart);
+                message.setContent(multipart);
 
-                    Transport.send(message);
-                    plugin.getAuthLogs().add("Sent new recovery password to email " + emailDestination);
-                    result.complete(true);
-                } catch (final MessagingException exception) {
-                    plugin.sendConsoleColoured("&7[&c&lX&r&7] &cSomething went wrong while sending email!");
-                    plugin.getLogger().warning(exception.getLocalizedMessage());
-                    result.complete(false);
-                }
-
-            });
+                Transport.send(message);
+                plugin.getAuthLogs().add("Sent new recovery password to email " + emailDestination);
+                result.complete(true);
+            } catch (final MessagingException exception) {
+                plugin.sendConsoleColoured("&7[&c&lX&r&7] &cSomething went wrong while sending email!");
+                plugin.getLogger().warning(exception.getLocalizedMessage());
+                result.complete(false);
+            }
 
-        });
+        }, this.mailExecutor);
 
         return result;
     }
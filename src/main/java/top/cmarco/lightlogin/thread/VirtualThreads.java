@@ -0,0 +1,89 @@
+/*
+ * LightLogin - Optimised and Safe SpigotMC Software for Authentication
+ *     Copyright © 2024  CMarco
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package top.cmarco.lightlogin.thread;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and newer.
+ * This software is compiled for Java 16, so the API is looked up by reflection
+ * once, and everything here reports it as unavailable on older runtimes.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null, builderName = null, builderFactory = null, newThreadPerTaskExecutor = null;
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException ignored) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+        throw new RuntimeException("Cannot instantiate utility class.");
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads.
+     */
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for every task.
+     *
+     * @param namePrefix The thread name prefix, followed by a counter.
+     * @return The executor, or null if virtual threads are not available.
+     */
+    @Nullable
+    public static ExecutorService newThreadPerTaskExecutor(@NotNull final String namePrefix) {
+        if (!isAvailable()) {
+            return null;
+        }
+
+        try {
+            final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            final ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException | ClassCastException exception) {
+            return null;
+        }
+    }
+}